@@ -49,7 +49,9 @@ import net.sourceforge.pmd.util.database.DBMSMetadata;
 import net.sourceforge.pmd.util.database.DBURI;
 import net.sourceforge.pmd.util.database.SourceObject;
 import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.FileDataSource;
 import net.sourceforge.pmd.util.datasource.ReaderDataSource;
+import net.sourceforge.pmd.util.datasource.ZipDataSource;
 import net.sourceforge.pmd.util.log.ScopedLogHandlersManager;
 
 /**
@@ -337,6 +339,22 @@ public class PMD {
         if (configuration.isStressTest()) {
             // randomize processing order
             Collections.shuffle(files);
+        } else if (configuration.isBoundedScheduling()) {
+            // largest files first, so that no huge file is left for the end
+            final boolean useShortNames = configuration.isReportShortNames();
+            final String inputPaths = configuration.getInputPaths();
+            Collections.sort(files, new Comparator<DataSource>() {
+                @Override
+                public int compare(DataSource left, DataSource right) {
+                    int bySize = Long.compare(estimateSize(right), estimateSize(left));
+                    if (bySize != 0) {
+                        return bySize;
+                    }
+                    String leftString = left.getNiceFileName(useShortNames, inputPaths);
+                    String rightString = right.getNiceFileName(useShortNames, inputPaths);
+                    return leftString.compareTo(rightString);
+                }
+            });
         } else {
             final boolean useShortNames = configuration.isReportShortNames();
             final String inputPaths = configuration.getInputPaths();
@@ -351,6 +369,16 @@ public class PMD {
         }
     }
 
+    private static long estimateSize(final DataSource dataSource) {
+        if (dataSource instanceof FileDataSource) {
+            return ((FileDataSource) dataSource).length();
+        } else if (dataSource instanceof ZipDataSource) {
+            return ((ZipDataSource) dataSource).length();
+        }
+        // unknown size, schedule after all the files we know about
+        return -1;
+    }
+
     /**
      * Determines all the files, that should be analyzed by PMD.
      *
@@ -415,7 +443,8 @@ public class PMD {
                     throw new RuntimeException("Problem with Ignore File Path: " + ignoreFilePath);
                 } else {
                     String filePaths = FileUtil.readFilelist(new File(ignoreFilePath));
-                    files.removeAll(FileUtil.collectFiles(filePaths, fileSelector));
+                    // a set, so that each file is looked up in constant time
+                    files.removeAll(new HashSet<>(FileUtil.collectFiles(filePaths, fileSelector)));
                 }
             } catch (IOException ex) {
                 LOG.log(Level.SEVERE, "Problem with Ignore File", ex);
@@ -104,6 +104,7 @@ public class PMDConfiguration extends AbstractConfiguration {
     private boolean failOnViolation = true;
 
     private boolean stressTest;
+    private boolean boundedScheduling;
     private boolean benchmark;
     private AnalysisCache analysisCache = new NoopAnalysisCache();
     private boolean ignoreIncrementalAnalysis;
@@ -511,6 +512,32 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.stressTest = stressTest;
     }
 
+    /**
+     * Return the bounded scheduling indicator. If this value is
+     * <code>true</code> then PMD will process the largest files first and
+     * will only queue a limited number of files ahead of the analysis
+     * threads. Reports of finished files are rendered while the remaining
+     * files are still being submitted, so that they don't pile up in memory.
+     * This only has an effect if more than one thread is used.
+     *
+     * @return <code>true</code> if bounded scheduling is enabled,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isBoundedScheduling() {
+        return boundedScheduling;
+    }
+
+    /**
+     * Set the bounded scheduling indicator.
+     *
+     * @param boundedScheduling
+     *            The bounded scheduling indicator to set.
+     * @see #isBoundedScheduling()
+     */
+    public void setBoundedScheduling(boolean boundedScheduling) {
+        this.boundedScheduling = boundedScheduling;
+    }
+
     /**
      * Return the benchmark indicator. If this value is <code>true</code> then
      * PMD will log benchmark information.
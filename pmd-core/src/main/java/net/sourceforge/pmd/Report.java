@@ -31,19 +31,23 @@ import net.sourceforge.pmd.util.NumericConstants;
  * A {@link Report} collects all informations during a PMD execution. This
  * includes violations, suppressed violations, metrics, error during processing
  * and configuration errors.
+ *
+ * <p>A report is not thread-safe, and reading it may modify it: the
+ * violations are sorted when they are first iterated, and the violation tree
+ * is built when it is first requested. A report is thus confined to the thread
+ * filling it. Once its violations have been sorted with {@link #sortViolations()},
+ * it may be handed to another thread, which must be the only one to read it.
  */
 public class Report implements Iterable<RuleViolation> {
 
     /*
-     * The idea is to store the violations in a tree instead of a list, to do
-     * better and faster sort and filter mechanism and to visualize the result
-     * as tree. (ide plugins).
+     * The violations are appended as they are reported, and only sorted when
+     * they are iterated. The tree of the violations is only built when it is
+     * requested: after that, it is maintained along with the list.
      */
-    private final ReportTree violationTree = new ReportTree();
-
-    // Note that this and the above data structure are both being maintained for
-    // a bit
+    private ReportTree violationTree;
     private final List<RuleViolation> violations = new ArrayList<>();
+    private boolean violationsSorted = true;
     private final Set<Metric> metrics = new HashSet<>();
     private final List<ThreadSafeReportListener> listeners = new ArrayList<>();
     private List<ProcessingError> errors;
@@ -263,7 +267,7 @@ public class Report implements Iterable<RuleViolation> {
      */
     public Map<String, Integer> getCountSummary() {
         Map<String, Integer> summary = new HashMap<>();
-        for (RuleViolation rv : violationTree) {
+        for (RuleViolation rv : getViolationTree()) {
             String key = keyFor(rv);
             Integer o = summary.get(key);
             summary.put(key, o == null ? NumericConstants.ONE : o + 1);
@@ -272,7 +276,13 @@ public class Report implements Iterable<RuleViolation> {
     }
 
     public ReportTree getViolationTree() {
-        return this.violationTree;
+        if (violationTree == null) {
+            violationTree = new ReportTree();
+            for (RuleViolation violation : violations) {
+                violationTree.addRuleViolation(violation);
+            }
+        }
+        return violationTree;
     }
 
     /**
@@ -328,14 +338,44 @@ public class Report implements Iterable<RuleViolation> {
             return;
         }
 
-        int index = Collections.binarySearch(violations, violation, RuleViolationComparator.INSTANCE);
-        violations.add(index < 0 ? -index - 1 : index, violation);
-        violationTree.addRuleViolation(violation);
+        addViolation(violation);
         for (ThreadSafeReportListener listener : listeners) {
             listener.ruleViolationAdded(violation);
         }
     }
 
+    private void addViolation(RuleViolation violation) {
+        if (violationsSorted && !violations.isEmpty()
+                && RuleViolationComparator.INSTANCE.compare(violations.get(violations.size() - 1), violation) > 0) {
+            violationsSorted = false;
+        }
+        violations.add(violation);
+        if (violationTree != null) {
+            violationTree.addRuleViolation(violation);
+        }
+    }
+
+    /**
+     * Sorts the violations with the {@link RuleViolationComparator}, if they
+     * haven't been reported in that order. Iterating the violations doesn't
+     * modify the report anymore afterwards, until new violations are added.
+     */
+    public void sortViolations() {
+        getSortedViolations();
+    }
+
+    /**
+     * Returns the violations, sorted with the {@link RuleViolationComparator}.
+     */
+    private List<RuleViolation> getSortedViolations() {
+        if (!violationsSorted) {
+            // the sort is stable, and fast on the runs of violations already sorted
+            Collections.sort(violations, RuleViolationComparator.INSTANCE);
+            violationsSorted = true;
+        }
+        return violations;
+    }
+
     /**
      * Adds a new metric to the report and notify the listeners
      *
@@ -400,12 +440,8 @@ public class Report implements Iterable<RuleViolation> {
         while (m.hasNext()) {
             addMetric(m.next());
         }
-        Iterator<RuleViolation> v = r.iterator();
-        while (v.hasNext()) {
-            RuleViolation violation = v.next();
-            int index = Collections.binarySearch(violations, violation, RuleViolationComparator.INSTANCE);
-            violations.add(index < 0 ? -index - 1 : index, violation);
-            violationTree.addRuleViolation(violation);
+        for (RuleViolation violation : r.getSortedViolations()) {
+            addViolation(violation);
         }
         Iterator<SuppressedViolation> s = r.getSuppressedRuleViolations().iterator();
         while (s.hasNext()) {
@@ -433,7 +469,7 @@ public class Report implements Iterable<RuleViolation> {
     }
 
     public boolean isEmpty() {
-        return !violations.iterator().hasNext() && !hasErrors();
+        return violations.isEmpty() && !hasErrors();
     }
 
     /**
@@ -463,7 +499,7 @@ public class Report implements Iterable<RuleViolation> {
      *         <code>false</code> otherwise
      */
     public boolean treeIsEmpty() {
-        return !violationTree.iterator().hasNext();
+        return !getViolationTree().iterator().hasNext();
     }
 
     /**
@@ -472,12 +508,12 @@ public class Report implements Iterable<RuleViolation> {
      * @return an iterator
      */
     public Iterator<RuleViolation> treeIterator() {
-        return violationTree.iterator();
+        return getViolationTree().iterator();
     }
 
     @Override
     public Iterator<RuleViolation> iterator() {
-        return violations.iterator();
+        return getSortedViolations().iterator();
     }
 
     /**
@@ -504,7 +540,7 @@ public class Report implements Iterable<RuleViolation> {
      * @return number of violations.
      */
     public int treeSize() {
-        return violationTree.size();
+        return getViolationTree().size();
     }
 
     /**
@@ -14,14 +14,15 @@ import java.util.List;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.DependencyTracker;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
-import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.Parser;
 import net.sourceforge.pmd.lang.VisitorStarter;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.ParseException;
 import net.sourceforge.pmd.lang.xpath.Initializer;
+import net.sourceforge.pmd.processor.AnalysisSession;
 
 public class SourceCodeProcessor {
 
@@ -31,6 +32,15 @@ public class SourceCodeProcessor {
         this.configuration = configuration;
     }
 
+    /**
+     * Returns the configuration this processor has been created with.
+     *
+     * @return the configuration
+     */
+    public PMDConfiguration getConfiguration() {
+        return configuration;
+    }
+
     /**
      * Processes the input stream against a rule set using the given input
      * encoding.
@@ -47,8 +57,31 @@ public class SourceCodeProcessor {
      * @see #processSourceCode(Reader, RuleSets, RuleContext)
      */
     public void processSourceCode(InputStream sourceCode, RuleSets ruleSets, RuleContext ctx) throws PMDException {
+        processSourceCode(sourceCode, ruleSets, ctx, new AnalysisSession(configuration));
+    }
+
+    /**
+     * Processes the input stream against a rule set using the given input
+     * encoding. Parsers and visitor facades are taken from the given session,
+     * which must not be shared with other threads.
+     *
+     * @param sourceCode
+     *            The InputStream to analyze.
+     * @param ruleSets
+     *            The collection of rules to process against the file.
+     * @param ctx
+     *            The context in which PMD is operating.
+     * @param session
+     *            The analysis session of the current thread.
+     * @throws PMDException
+     *             if the input encoding is unsupported, the input stream could
+     *             not be parsed, or other error is encountered.
+     * @see #processSourceCode(InputStream, RuleSets, RuleContext)
+     */
+    public void processSourceCode(InputStream sourceCode, RuleSets ruleSets, RuleContext ctx,
+            AnalysisSession session) throws PMDException {
         try (Reader streamReader = new InputStreamReader(sourceCode, configuration.getSourceEncoding())) {
-            processSourceCode(streamReader, ruleSets, ctx);
+            processSourceCode(streamReader, ruleSets, ctx, session);
         } catch (IOException e) {
             throw new PMDException("IO exception: " + e.getMessage(), e);
         }
@@ -76,6 +109,29 @@ public class SourceCodeProcessor {
      *             not be parsed, or other error is encountered.
      */
     public void processSourceCode(Reader sourceCode, RuleSets ruleSets, RuleContext ctx) throws PMDException {
+        processSourceCode(sourceCode, ruleSets, ctx, new AnalysisSession(configuration));
+    }
+
+    /**
+     * Processes the reader against a rule set, taking parsers and visitor
+     * facades from the given session, which must not be shared with other
+     * threads.
+     *
+     * @param sourceCode
+     *            The Reader to analyze.
+     * @param ruleSets
+     *            The collection of rules to process against the file.
+     * @param ctx
+     *            The context in which PMD is operating.
+     * @param session
+     *            The analysis session of the current thread.
+     * @throws PMDException
+     *             if the input encoding is unsupported, the input stream could
+     *             not be parsed, or other error is encountered.
+     * @see #processSourceCode(Reader, RuleSets, RuleContext)
+     */
+    public void processSourceCode(Reader sourceCode, RuleSets ruleSets, RuleContext ctx,
+            AnalysisSession session) throws PMDException {
         determineLanguage(ctx);
 
         // make sure custom XPath functions are initialized
@@ -83,17 +139,26 @@ public class SourceCodeProcessor {
 
         // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
         if (ruleSets.applies(ctx.getSourceCodeFile())) {
+            RuleSets rulesToApply = ruleSets;
+
             // Is the cache up to date?
             if (configuration.getAnalysisCache().isUpToDate(ctx.getSourceCodeFile())) {
                 for (final RuleViolation rv : configuration.getAnalysisCache().getCachedViolations(ctx.getSourceCodeFile())) {
                     ctx.getReport().addRuleViolation(rv);
                 }
-                return;
+
+                // Only the rules which changed since the previous analysis need to be applied
+                rulesToApply = session.getOutdatedRules(ruleSets, configuration.getAnalysisCache(),
+                        ctx.getLanguageVersion());
+                if (rulesToApply == null || !rulesToApply.applies(ctx.getSourceCodeFile())) {
+                    DependencyTracker.stopRecording();
+                    return;
+                }
             }
 
             try {
-                ruleSets.start(ctx);
-                processSource(sourceCode, ruleSets, ctx);
+                rulesToApply.start(ctx);
+                processSource(sourceCode, rulesToApply, ctx, session);
             } catch (ParseException pe) {
                 configuration.getAnalysisCache().analysisFailed(ctx.getSourceCodeFile());
                 throw new PMDException("Error while parsing " + ctx.getSourceCodeFilename(), pe);
@@ -101,7 +166,8 @@ public class SourceCodeProcessor {
                 configuration.getAnalysisCache().analysisFailed(ctx.getSourceCodeFile());
                 throw new PMDException("Error while processing " + ctx.getSourceCodeFilename(), e);
             } finally {
-                ruleSets.end(ctx);
+                rulesToApply.end(ctx);
+                DependencyTracker.stopRecording();
             }
         }
     }
@@ -114,15 +180,15 @@ public class SourceCodeProcessor {
         }
     }
 
-    private void symbolFacade(Node rootNode, LanguageVersionHandler languageVersionHandler) {
+    private void symbolFacade(Node rootNode, LanguageVersion languageVersion, AnalysisSession session) {
         try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.SYMBOL_TABLE)) {
-            languageVersionHandler.getSymbolFacade(configuration.getClassLoader()).start(rootNode);
+            session.getSymbolFacade(languageVersion).start(rootNode);
         }
     }
 
-    private void resolveQualifiedNames(Node rootNode, LanguageVersionHandler handler) {
+    private void resolveQualifiedNames(Node rootNode, LanguageVersion languageVersion, AnalysisSession session) {
         try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.QUALIFIED_NAME_RESOLUTION)) {
-            handler.getQualifiedNameResolutionFacade(configuration.getClassLoader()).start(rootNode);
+            session.getQualifiedNameResolutionFacade(languageVersion).start(rootNode);
         }
     }
 
@@ -135,50 +201,49 @@ public class SourceCodeProcessor {
     // return parserOptions;
     // }
 
-    private void usesDFA(LanguageVersion languageVersion, Node rootNode, RuleSets ruleSets, Language language) {
+    private void usesDFA(LanguageVersion languageVersion, Node rootNode, RuleSets ruleSets, Language language,
+            AnalysisSession session) {
         if (ruleSets.usesDFA(language)) {
             try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.DFA)) {
-                VisitorStarter dataFlowFacade = languageVersion.getLanguageVersionHandler().getDataFlowFacade();
+                VisitorStarter dataFlowFacade = session.getDataFlowFacade(languageVersion);
                 dataFlowFacade.start(rootNode);
             }
         }
     }
 
     private void usesTypeResolution(LanguageVersion languageVersion, Node rootNode, RuleSets ruleSets,
-            Language language) {
+            Language language, AnalysisSession session) {
 
         if (ruleSets.usesTypeResolution(language)) {
             try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.TYPE_RESOLUTION)) {
-                languageVersion.getLanguageVersionHandler().getTypeResolutionFacade(configuration.getClassLoader())
-                        .start(rootNode);
+                session.getTypeResolutionFacade(languageVersion).start(rootNode);
             }
         }
     }
 
 
-    private void usesMultifile(Node rootNode, LanguageVersionHandler languageVersionHandler, RuleSets ruleSets,
-                               Language language) {
+    private void usesMultifile(LanguageVersion languageVersion, Node rootNode, RuleSets ruleSets,
+                               Language language, AnalysisSession session) {
 
         if (ruleSets.usesMultifile(language)) {
             try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.MULTIFILE_ANALYSIS)) {
-                languageVersionHandler.getMultifileFacade().start(rootNode);
+                session.getMultifileFacade(languageVersion).start(rootNode);
             }
         }
     }
 
 
-    private void processSource(Reader sourceCode, RuleSets ruleSets, RuleContext ctx) {
+    private void processSource(Reader sourceCode, RuleSets ruleSets, RuleContext ctx, AnalysisSession session) {
         LanguageVersion languageVersion = ctx.getLanguageVersion();
-        LanguageVersionHandler languageVersionHandler = languageVersion.getLanguageVersionHandler();
-        Parser parser = PMD.parserFor(languageVersion, configuration);
+        Parser parser = session.getParser(languageVersion);
 
         Node rootNode = parse(ctx, sourceCode, parser);
-        resolveQualifiedNames(rootNode, languageVersionHandler);
-        symbolFacade(rootNode, languageVersionHandler);
+        resolveQualifiedNames(rootNode, languageVersion, session);
+        symbolFacade(rootNode, languageVersion, session);
         Language language = languageVersion.getLanguage();
-        usesDFA(languageVersion, rootNode, ruleSets, language);
-        usesTypeResolution(languageVersion, rootNode, ruleSets, language);
-        usesMultifile(rootNode, languageVersionHandler, ruleSets, language);
+        usesDFA(languageVersion, rootNode, ruleSets, language, session);
+        usesTypeResolution(languageVersion, rootNode, ruleSets, language, session);
+        usesMultifile(languageVersion, rootNode, ruleSets, language, session);
 
         List<Node> acus = Collections.singletonList(rootNode);
         ruleSets.apply(acus, ctx, language);
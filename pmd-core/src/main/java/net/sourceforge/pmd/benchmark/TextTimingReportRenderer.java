@@ -24,16 +24,18 @@ import net.sourceforge.pmd.benchmark.TimeTracker.TimedResult;
 public class TextTimingReportRenderer implements TimingReportRenderer {
     
     private static final String TIME_FORMAT = "{0,number,0.0000}";
+    private static final String PERCENTILE_FORMAT = "{0,number,0.000}";
     private static final String CUSTOM_COUNTER_FORMAT = "{0,number,###,###,###}";
     
     private static final int LABEL_COLUMN_WIDTH = 50;
     private static final int TIME_COLUMN_WIDTH = 12;
     private static final int SELF_TIME_COLUMN_WIDTH = 17;
     private static final int CALL_COLUMN_WIDTH = 9;
+    private static final int PERCENTILE_COLUMN_WIDTH = 11;
     private static final int COUNTER_COLUMN_WIDTH = 12;
     
     private static final int COLUMNS = LABEL_COLUMN_WIDTH + TIME_COLUMN_WIDTH
-            + SELF_TIME_COLUMN_WIDTH + CALL_COLUMN_WIDTH + COUNTER_COLUMN_WIDTH;
+            + SELF_TIME_COLUMN_WIDTH + CALL_COLUMN_WIDTH + 3 * PERCENTILE_COLUMN_WIDTH + COUNTER_COLUMN_WIDTH;
 
     @Override
     public void render(final TimingReport report, final Writer writer) throws IOException {
@@ -77,6 +79,10 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         if (timedResult.callCount.get() > 0) {
             final String callCount = MessageFormat.format(CUSTOM_COUNTER_FORMAT, timedResult.callCount.get());
             writer.write(StringUtils.leftPad(callCount, CALL_COLUMN_WIDTH));
+
+            renderPercentile(timedResult.getPercentileNanos(50), writer);
+            renderPercentile(timedResult.getPercentileNanos(99), writer);
+            renderPercentile(timedResult.maxTimeNanos, writer);
             
             if (timedResult.extraDataCounter.get() > 0) {
                 final String counter = MessageFormat.format(CUSTOM_COUNTER_FORMAT, timedResult.extraDataCounter.get());
@@ -87,6 +93,11 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         writer.write(PMD.EOL);
     }
 
+    private void renderPercentile(final long nanos, final Writer writer) throws IOException {
+        final String percentile = MessageFormat.format(PERCENTILE_FORMAT, nanos / 1000000.0);
+        writer.write(StringUtils.leftPad(percentile, PERCENTILE_COLUMN_WIDTH));
+    }
+
     private void renderCategoryMeasurements(final TimedOperationCategory category,
             final Map<String, TimedResult> labeledMeasurements, final Writer writer) throws IOException {
         renderHeader(category.displayName(), writer);
@@ -136,6 +147,9 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         writer.write(StringUtils.leftPad("Time (secs)", TIME_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("Self Time (secs)", SELF_TIME_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("# Calls", CALL_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad("p50 (ms)", PERCENTILE_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad("p99 (ms)", PERCENTILE_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad("Max (ms)", PERCENTILE_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("Counter", COUNTER_COLUMN_WIDTH));
         writer.write(PMD.EOL);
         writer.write(PMD.EOL);
@@ -4,18 +4,25 @@
 
 package net.sourceforge.pmd.benchmark;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A time tracker class to measure time spent on different sections of PMD analysis.
  * The class is thread-aware, allowing to differentiate CPU and wall clock time.
+ *
+ * <p>Each thread measures its operations on its own, without any synchronization:
+ * the open operations are kept on a preallocated stack, and the measures of each
+ * category and label are accumulated in a {@link Measure} of the thread, along with
+ * a histogram of their durations. The measures of all the threads are only merged
+ * by {@link #stopGlobalTracking()}, once the analysis is over.
  * 
  * @author Juan Martín Sotuyo Dodero
  */
@@ -23,8 +30,11 @@ public final class TimeTracker {
 
     private static boolean trackTime = false;
     private static long wallClockStartMillis = -1;
-    private static final ThreadLocal<Queue<TimerEntry>> TIMER_ENTRIES;
-    private static final ConcurrentMap<TimedOperationKey, TimedResult> ACCUMULATED_RESULTS = new ConcurrentHashMap<>();
+    /** Incremented on each start of the tracking, so that the threads don't reuse stale trackers. */
+    private static volatile int generation = 0;
+    private static final ThreadLocal<ThreadTracker> THREAD_TRACKER = new ThreadLocal<>();
+    /** The trackers of all the threads which measured operations since the tracking started. */
+    private static final Queue<ThreadTracker> THREAD_TRACKERS = new ConcurrentLinkedQueue<>();
     private static final TimedOperation NOOP_TIMED_OPERATION = new TimedOperation() {
 
         @Override
@@ -38,15 +48,6 @@ public final class TimeTracker {
         }
     };
     
-    static {
-        TIMER_ENTRIES = new ThreadLocal<Queue<TimerEntry>>() {
-            @Override
-            protected Queue<TimerEntry> initialValue() {
-                return Collections.asLifoQueue(new LinkedList<TimerEntry>());
-            }
-        };
-    }
-    
     private TimeTracker() {
         throw new AssertionError("Can't instantiate utility class");
     }
@@ -57,13 +58,15 @@ public final class TimeTracker {
      */
     public static void startGlobalTracking() {
         wallClockStartMillis = System.currentTimeMillis();
+        THREAD_TRACKERS.clear(); // just in case
+        generation++;
         trackTime = true;
-        ACCUMULATED_RESULTS.clear(); // just in case
         initThread(); // init main thread
     }
     
     /**
      * Stops global tracking. Stops the wall clock. All further operations will be treated as NOOP.
+     * The operations of the other threads must be finished, e.g. their tasks must be done.
      * @return The timed data obtained through the run.
      */
     public static TimingReport stopGlobalTracking() {
@@ -73,14 +76,21 @@ public final class TimeTracker {
         
         finishThread(); // finish the main thread
         trackTime = false;
+        THREAD_TRACKER.remove();
+
+        final Map<TimedOperationKey, TimedResult> results = new HashMap<>();
+        for (final ThreadTracker tracker : THREAD_TRACKERS) {
+            tracker.mergeInto(results);
+        }
+        THREAD_TRACKERS.clear();
         
         // Fix UNACCOUNTED metric (total time is meaningless as is call count)
-        final TimedResult unaccountedResult = ACCUMULATED_RESULTS.get(
+        final TimedResult unaccountedResult = results.get(
                 new TimedOperationKey(TimedOperationCategory.UNACCOUNTED, null));
         unaccountedResult.totalTimeNanos.set(unaccountedResult.selfTimeNanos.get());
         unaccountedResult.callCount.set(0);
         
-        return new TimingReport(System.currentTimeMillis() - wallClockStartMillis, ACCUMULATED_RESULTS);
+        return new TimingReport(System.currentTimeMillis() - wallClockStartMillis, results);
     }
     
     /**
@@ -102,12 +112,8 @@ public final class TimeTracker {
             return;
         }
         
+        // the tracker is kept along with its measures, for the next tasks run on the thread
         finishOperation(0);
-        
-        // clean up thread-locals in multithread analysis
-        if (TIMER_ENTRIES.get().isEmpty()) {
-            TIMER_ENTRIES.remove();
-        }
     }
     
     /**
@@ -123,15 +129,15 @@ public final class TimeTracker {
      * Starts tracking an operation.
      * @param category The category under which to track the operation.
      * @param label A label to be added to the category. Allows to differentiate measures within a single category.
-     * @return The current timed operation being tracked.
+     * @return The current timed operation being tracked. It must be closed before the next
+     *         operation of the thread starts, and mustn't be used once closed.
      */
     public static TimedOperation startOperation(final TimedOperationCategory category, final String label) {
         if (!trackTime) {
             return NOOP_TIMED_OPERATION;
         }
         
-        TIMER_ENTRIES.get().add(new TimerEntry(category, label));
-        return new TimedOperationImpl();
+        return getThreadTracker().start(category, label);
     }
     
     /**
@@ -145,39 +151,190 @@ public final class TimeTracker {
             return;
         }
 
-        final Queue<TimerEntry> queue = TIMER_ENTRIES.get();
-        final TimerEntry timerEntry = queue.remove();
+        getThreadTracker().finish(extraDataCounter);
+    }
+
+    private static ThreadTracker getThreadTracker() {
+        ThreadTracker tracker = THREAD_TRACKER.get();
+        if (tracker == null || tracker.generation != generation) {
+            tracker = new ThreadTracker(generation);
+            THREAD_TRACKER.set(tracker);
+            THREAD_TRACKERS.add(tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * The operations measured by a single thread. It's only accessed by its thread
+     * until the tracking stops.
+     */
+    private static final class ThreadTracker {
+        private static final int INITIAL_DEPTH = 16;
+
+        /* default */ final int generation;
+        private final Map<TimedOperationCategory, Measure> unlabeledMeasures =
+                new EnumMap<>(TimedOperationCategory.class);
+        private final Map<TimedOperationCategory, Map<String, Measure>> labeledMeasures =
+                new EnumMap<>(TimedOperationCategory.class);
+        /** The open operations, reused from one operation to the next. */
+        private TimerEntry[] stack = new TimerEntry[INITIAL_DEPTH];
+        private int depth = 0;
+
+        /* default */ ThreadTracker(final int generation) {
+            this.generation = generation;
+            for (int i = 0; i < stack.length; i++) {
+                stack[i] = new TimerEntry();
+            }
+        }
 
-        // Compute if absent
-        TimedResult result = ACCUMULATED_RESULTS.get(timerEntry.operation);
-        if (result == null) {
-            ACCUMULATED_RESULTS.putIfAbsent(timerEntry.operation, new TimedResult());
-            result = ACCUMULATED_RESULTS.get(timerEntry.operation);
+        /* default */ TimedOperation start(final TimedOperationCategory category, final String label) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+                for (int i = depth; i < stack.length; i++) {
+                    stack[i] = new TimerEntry();
+                }
+            }
+            final TimerEntry entry = stack[depth++];
+            entry.measure = getMeasure(category, label);
+            entry.inNestedOperationsNanos = 0;
+            entry.closed = false;
+            entry.start = System.nanoTime();
+            return entry;
         }
 
-        // Update counters and let next element on the stack ignore the time we spent
-        final long delta = result.accumulate(timerEntry, extraDataCounter);
-        if (!queue.isEmpty()) { 
-            queue.peek().inNestedOperationsNanos += delta;
+        /* default */ void finish(final long extraDataCounter) {
+            final TimerEntry entry = stack[--depth];
+            final long delta = System.nanoTime() - entry.start;
+            entry.measure.record(delta, delta - entry.inNestedOperationsNanos, extraDataCounter);
+
+            // let next element on the stack ignore the time we spent
+            if (depth > 0) {
+                stack[depth - 1].inNestedOperationsNanos += delta;
+            }
+        }
+
+        private Measure getMeasure(final TimedOperationCategory category, final String label) {
+            if (label == null) {
+                Measure measure = unlabeledMeasures.get(category);
+                if (measure == null) {
+                    measure = new Measure();
+                    unlabeledMeasures.put(category, measure);
+                }
+                return measure;
+            }
+
+            Map<String, Measure> measures = labeledMeasures.get(category);
+            if (measures == null) {
+                measures = new HashMap<>();
+                labeledMeasures.put(category, measures);
+            }
+            Measure measure = measures.get(label);
+            if (measure == null) {
+                measure = new Measure();
+                measures.put(label, measure);
+            }
+            return measure;
+        }
+
+        /* default */ void mergeInto(final Map<TimedOperationKey, TimedResult> results) {
+            for (final Map.Entry<TimedOperationCategory, Measure> entry : unlabeledMeasures.entrySet()) {
+                getResult(results, new TimedOperationKey(entry.getKey(), null)).merge(entry.getValue());
+            }
+            for (final Map.Entry<TimedOperationCategory, Map<String, Measure>> category : labeledMeasures.entrySet()) {
+                for (final Map.Entry<String, Measure> entry : category.getValue().entrySet()) {
+                    getResult(results, new TimedOperationKey(category.getKey(), entry.getKey())).merge(entry.getValue());
+                }
+            }
+        }
+
+        private static TimedResult getResult(final Map<TimedOperationKey, TimedResult> results,
+                final TimedOperationKey key) {
+            TimedResult result = results.get(key);
+            if (result == null) {
+                result = new TimedResult();
+                results.put(key, result);
+            }
+            return result;
         }
     }
-    
+
     /**
-     * An entry in the open timers queue. Defines an operation that has started and hasn't finished yet.
+     * An entry in the open timers stack. Defines an operation that has started and hasn't finished yet.
+     * The entries are reused, so a closed operation doesn't hold any state.
      */
-    private static class TimerEntry {
-        /* package */ final TimedOperationKey operation;
-        /* package */ final long start;
-        /* package */ long inNestedOperationsNanos = 0;
-        
-        /* package */ TimerEntry(final TimedOperationCategory category, final String label) {
-            this.operation = new TimedOperationKey(category, label);
-            this.start = System.nanoTime();
+    private static final class TimerEntry implements TimedOperation {
+        /* default */ Measure measure;
+        /* default */ long start;
+        /* default */ long inNestedOperationsNanos;
+        /* default */ boolean closed = true;
+
+        @Override
+        public void close() {
+            close(0);
         }
 
         @Override
-        public String toString() {
-            return "TimerEntry for " + operation;
+        public void close(final int extraDataCounter) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            TimeTracker.finishOperation(extraDataCounter);
+        }
+    }
+
+    /**
+     * The measures of a category + label taken by a single thread.
+     */
+    private static final class Measure {
+        /* default */ long totalTimeNanos;
+        /* default */ long selfTimeNanos;
+        /* default */ int callCount;
+        /* default */ long extraDataCounter;
+        /* default */ long maxTimeNanos;
+        /* default */ final long[] histogram = new long[Histogram.BUCKET_COUNT];
+
+        /* default */ void record(final long totalNanos, final long selfNanos, final long extraData) {
+            totalTimeNanos += totalNanos;
+            selfTimeNanos += selfNanos;
+            callCount++;
+            extraDataCounter += extraData;
+            maxTimeNanos = Math.max(maxTimeNanos, totalNanos);
+            histogram[Histogram.bucketOf(totalNanos)]++;
+        }
+    }
+
+    /**
+     * A log-linear histogram of durations, in the manner of HDR histograms: each power
+     * of two is split into {@value #SUB_BUCKET_COUNT} buckets of the same width, so that
+     * the durations are recorded with a relative error below 1 / {@value #SUB_BUCKET_COUNT},
+     * whatever their magnitude.
+     */
+    /* package */ static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        /* package */ static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+        private Histogram() {
+        }
+
+        /* package */ static int bucketOf(final long value) {
+            if (value < 2 * SUB_BUCKET_COUNT) {
+                // the first buckets have a width of 1
+                return (int) Math.max(0, value);
+            }
+            final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+        }
+
+        /* package */ static long highestValueOf(final int bucket) {
+            if (bucket < 2 * SUB_BUCKET_COUNT) {
+                return bucket;
+            }
+            final int shift = bucket / SUB_BUCKET_COUNT - 1;
+            final long lowest = (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+            return lowest + (1L << shift) - 1;
         }
     }
     
@@ -189,22 +346,22 @@ public final class TimeTracker {
         /* package */ AtomicLong selfTimeNanos = new AtomicLong();
         /* package */ AtomicInteger callCount = new AtomicInteger();
         /* package */ AtomicLong extraDataCounter = new AtomicLong();
+        /* package */ long maxTimeNanos;
+        /* package */ final long[] histogram = new long[Histogram.BUCKET_COUNT];
         
         /**
-         * Adds a new {@link TimerEntry} to the results.
-         * @param timerEntry The entry to be added
-         * @param extraData Any extra data counter to be added
-         * @return The delta time transcurred since the {@link TimerEntry} began in nanos.
+         * Adds the measures of a thread to the results.
+         * @param measure The measures to be added
          */
-        /* package */ long accumulate(final TimerEntry timerEntry, final long extraData) {
-            final long delta = System.nanoTime() - timerEntry.start;
-            
-            totalTimeNanos.getAndAdd(delta);
-            selfTimeNanos.getAndAdd(delta - timerEntry.inNestedOperationsNanos);
-            callCount.getAndIncrement();
-            extraDataCounter.getAndAdd(extraData);
-            
-            return delta;
+        /* package */ void merge(final Measure measure) {
+            totalTimeNanos.getAndAdd(measure.totalTimeNanos);
+            selfTimeNanos.getAndAdd(measure.selfTimeNanos);
+            callCount.getAndAdd(measure.callCount);
+            extraDataCounter.getAndAdd(measure.extraDataCounter);
+            maxTimeNanos = Math.max(maxTimeNanos, measure.maxTimeNanos);
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += measure.histogram[i];
+            }
         }
         
         /**
@@ -215,6 +372,28 @@ public final class TimeTracker {
             totalTimeNanos.getAndAdd(timedResult.totalTimeNanos.get());
             selfTimeNanos.getAndAdd(timedResult.selfTimeNanos.get());
         }
+
+        /**
+         * Returns the duration of the calls below which the given percentage of the calls
+         * took, with the precision of the histogram.
+         * @param percentile The percentage of the calls, between 0 and 100
+         * @return The duration in nanos, or 0 if there were no calls
+         */
+        /* package */ long getPercentileNanos(final double percentile) {
+            long total = 0;
+            for (final long count : histogram) {
+                total += count;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return Math.min(Histogram.highestValueOf(i), maxTimeNanos);
+                }
+            }
+            return 0;
+        }
     }
     
     /**
@@ -261,26 +440,4 @@ public final class TimeTracker {
             return "TimedOperationKey [category=" + category + ", label=" + label + "]";
         }
     }
-
-    /**
-     * A standard timed operation implementation.
-     */
-    private static class TimedOperationImpl implements TimedOperation {
-        private boolean closed = false;
-
-        @Override
-        public void close() {
-            close(0);
-        }
-
-        @Override
-        public void close(int extraDataCounter) {
-            if (closed) {
-                return;
-            }
-
-            closed = true;
-            TimeTracker.finishOperation(extraDataCounter);
-        }
-    }
 }
@@ -5,35 +5,28 @@
 package net.sourceforge.pmd.cache;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.URL;
 import java.net.URLClassLoader;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.Adler32;
-import java.util.zip.CheckedInputStream;
-
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.stat.Metric;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
 
 /**
  * Abstract implementation of the analysis cache. Handles all operations, except for persistence.
@@ -48,6 +41,21 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     protected long rulesetChecksum;
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
+    protected Map<String, Long> ruleChecksums = Collections.emptyMap();
+
+    /** Keys of the rules which changed since the previous analysis. */
+    private final Set<String> outdatedRules = new HashSet<>();
+    private boolean rulesChanged;
+
+    /**
+     * Changes of the auxclasspath, if only files depending on them need to be
+     * analyzed again. Null if the auxclasspath didn't change, or if all the
+     * previous results are discarded anyway.
+     */
+    private ClassPathChanges auxClassPathChanges;
+
+    /** Checksums the classpath entries, reusing the checksums of the previous analysis when possible. */
+    /* default */ final ClassPathFingerprinter classPathFingerprinter = new ClassPathFingerprinter();
 
     /**
      * Creates a new empty cache
@@ -60,39 +68,102 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
 
     @Override
     public boolean isUpToDate(final File sourceFile) {
+        final AnalysisResult analysisResult = getPreviousResult(sourceFile.getPath());
+
         // There is a new file being analyzed, prepare entry in updated cache
-        final AnalysisResult updatedResult = new AnalysisResult(sourceFile);
+        final AnalysisResult updatedResult = newAnalysisResult(sourceFile, analysisResult);
         updatedResultsCache.put(sourceFile.getPath(), updatedResult);
 
-        // Now check the old cache
-        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getPath());
-
         // is this a known file? has it changed?
-        final boolean result = analysisResult != null
+        final boolean fileUnchanged = analysisResult != null
                 && analysisResult.getFileChecksum() == updatedResult.getFileChecksum();
 
+        // did the types it depends on change?
+        final boolean result = fileUnchanged
+                && (auxClassPathChanges == null || !auxClassPathChanges.affects(analysisResult));
+
         if (LOG.isLoggable(Level.FINE)) {
             if (result) {
                 LOG.fine("Incremental Analysis cache HIT");
+            } else if (fileUnchanged) {
+                LOG.fine("Incremental Analysis cache MISS - dependencies changed");
             } else {
                 LOG.fine("Incremental Analysis cache MISS - "
                         + (analysisResult != null ? "file changed" : "no previous result found"));
             }
         }
 
+        if (result) {
+            // the analysis may be partially rerun, and won't find everything again
+            updatedResult.inheritDependencies(analysisResult);
+        }
+        DependencyTracker.startRecording(updatedResult);
+
         return result;
     }
 
+    /**
+     * Creates the result for a new analysis of the given file. If the size and
+     * the last modification time of the file didn't change since the previous
+     * analysis, the checksum of the previous analysis is reused, and the file
+     * is not read at all.
+     */
+    private AnalysisResult newAnalysisResult(final File sourceFile, final AnalysisResult previousResult) {
+        if (previousResult != null) {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(sourceFile.toPath(),
+                        BasicFileAttributes.class);
+                final long fileSize = attributes.size();
+                final long lastModified = attributes.lastModifiedTime().toMillis();
+
+                if (previousResult.hasSameAttributes(fileSize, lastModified)) {
+                    return new AnalysisResult(previousResult.getFileChecksum(), fileSize, lastModified,
+                            new ArrayList<RuleViolation>());
+                }
+            } catch (final IOException ignored) {
+                // compute the checksum, which will fail the same way
+            }
+        }
+
+        return new AnalysisResult(sourceFile);
+    }
+
     @Override
     public List<RuleViolation> getCachedViolations(final File sourceFile) {
-        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getPath());
+        final AnalysisResult analysisResult = getPreviousResult(sourceFile.getPath());
 
         if (analysisResult == null) {
             // new file, avoid nulls
             return Collections.emptyList();
         }
 
-        return analysisResult.getViolations();
+        if (!rulesChanged) {
+            return analysisResult.getViolations();
+        }
+
+        final List<RuleViolation> violations = new ArrayList<>();
+        for (final RuleViolation violation : analysisResult.getViolations()) {
+            // the rule may have been removed
+            final Rule rule = violation.getRule();
+            if (rule != null && isUpToDate(rule)) {
+                violations.add(violation);
+            }
+        }
+        return violations;
+    }
+
+    @Override
+    public boolean isUpToDate(final Rule rule) {
+        return outdatedRules.isEmpty() || !outdatedRules.contains(CachedRuleMapper.getRuleKey(rule));
+    }
+
+    /**
+     * Returns true if rules have been added, removed or changed since the
+     * previous analysis. The previous results of files which are up to date
+     * don't hold the right violations in that case.
+     */
+    protected boolean hasChangedRules() {
+        return rulesChanged;
     }
 
     @Override
@@ -101,6 +172,23 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     }
 
 
+    /**
+     * Returns the result of the previous analysis of the given file.
+     *
+     * @param fileName The path of the analyzed file
+     * @return The previous result, or <code>null</code> if the file is unknown
+     */
+    protected AnalysisResult getPreviousResult(final String fileName) {
+        return fileResultsCache.get(fileName);
+    }
+
+    /**
+     * Forgets all results of the previous analysis, as they are no longer valid.
+     */
+    protected void invalidatePreviousResults() {
+        fileResultsCache.clear();
+    }
+
     /**
      * Returns true if the cache exists. If so, normal cache validity checks
      * will be performed. Otherwise, the cache is necessarily invalid (e.g. on a first run).
@@ -112,117 +200,73 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     public void checkValidity(final RuleSets ruleSets, final ClassLoader auxclassPathClassLoader) {
         boolean cacheIsValid = cacheExists();
 
-        if (cacheIsValid && ruleSets.getChecksum() != rulesetChecksum) {
-            LOG.info("Analysis cache invalidated, rulesets changed.");
-            cacheIsValid = false;
+        ruleMapper.initialize(ruleSets);
+        final Map<String, Long> currentRuleChecksums = new HashMap<>(ruleMapper.getRuleChecksums());
+        outdatedRules.clear();
+        rulesChanged = false;
+
+        if (cacheIsValid && !currentRuleChecksums.equals(ruleChecksums)) {
+            // only the rules which changed need to be applied again
+            for (final Map.Entry<String, Long> entry : currentRuleChecksums.entrySet()) {
+                if (!entry.getValue().equals(ruleChecksums.get(entry.getKey()))) {
+                    outdatedRules.add(entry.getKey());
+                }
+            }
+            rulesChanged = true;
+            LOG.info("Analysis cache partially invalidated, " + outdatedRules.size() + " of "
+                    + currentRuleChecksums.size() + " rules changed.");
         }
 
         final long currentAuxClassPathChecksum;
         if (auxclassPathClassLoader instanceof URLClassLoader) {
             final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
-            currentAuxClassPathChecksum = computeClassPathHash(urlClassLoader.getURLs());
-
-            if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
-                // Do we even care?
-                for (final Rule r : ruleSets.getAllRules()) {
-                    if (r.isDfa() || r.isTypeResolution()) {
-                        LOG.info("Analysis cache invalidated, auxclasspath changed.");
-                        cacheIsValid = false;
-                        break;
-                    }
-                }
-            }
+            currentAuxClassPathChecksum = classPathFingerprinter.computeClassPathHash(urlClassLoader.getURLs());
+
         } else {
             currentAuxClassPathChecksum = 0;
         }
 
-        final long currentExecutionClassPathChecksum = computeClassPathHash(getClassPathEntries());
+        final long currentExecutionClassPathChecksum = classPathFingerprinter.computeExecutionClassPathHash(
+                System.getProperty("java.class.path").split(File.pathSeparator));
         if (cacheIsValid && currentExecutionClassPathChecksum != executionClassPathChecksum) {
             LOG.info("Analysis cache invalidated, execution classpath changed.");
             cacheIsValid = false;
         }
 
+        auxClassPathChanges = null;
+        if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum && usesTypes(ruleSets)) {
+            // only the files which depend on changed types need to be analyzed again, but the types
+            // referenced by loaded classes are only reported by the class loaders of PMD
+            auxClassPathChanges = auxclassPathClassLoader instanceof ClasspathClassLoader
+                    ? classPathFingerprinter.getClassPathChanges() : null;
+            if (auxClassPathChanges == null) {
+                LOG.info("Analysis cache invalidated, auxclasspath changed.");
+                cacheIsValid = false;
+            } else {
+                LOG.info("Analysis cache partially invalidated, " + auxClassPathChanges.getChangedFileCount()
+                        + " auxclasspath files changed.");
+            }
+        }
+
         if (!cacheIsValid) {
             // Clear the cache
-            fileResultsCache.clear();
+            invalidatePreviousResults();
         }
 
         // Update the local checksums
         rulesetChecksum = ruleSets.getChecksum();
         auxClassPathChecksum = currentAuxClassPathChecksum;
         executionClassPathChecksum = currentExecutionClassPathChecksum;
-        ruleMapper.initialize(ruleSets);
-    }
-
-    private static boolean isClassPathWildcard(String entry) {
-        return entry.endsWith("/*") || entry.endsWith("\\*");
+        ruleChecksums = currentRuleChecksums;
     }
 
-    private URL[] getClassPathEntries() {
-        final String classpath = System.getProperty("java.class.path");
-        final String[] classpathEntries = classpath.split(File.pathSeparator);
-        final List<URL> entries = new ArrayList<>();
-
-        final SimpleFileVisitor<Path> fileVisitor = new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(final Path file,
-                    final BasicFileAttributes attrs) throws IOException {
-                if (!attrs.isSymbolicLink()) { // Broken link that can't be followed
-                    entries.add(file.toUri().toURL());
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        };
-        final SimpleFileVisitor<Path> jarFileVisitor = new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(final Path file,
-                    final BasicFileAttributes attrs) throws IOException {
-                String extension = FilenameUtils.getExtension(file.toString());
-                if ("jar".equalsIgnoreCase(extension)) {
-                    fileVisitor.visitFile(file, attrs);
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        };
-
-        try {
-            for (final String entry : classpathEntries) {
-                final File f = new File(entry);
-                if (isClassPathWildcard(entry)) {
-                    Files.walkFileTree(new File(entry.substring(0, entry.length() - 1)).toPath(),
-                            EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, jarFileVisitor);
-                } else if (f.isFile()) {
-                    entries.add(f.toURI().toURL());
-                } else {
-                    Files.walkFileTree(f.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
-                            fileVisitor);
-                }
-            }
-        } catch (final IOException e) {
-            LOG.log(Level.SEVERE, "Incremental analysis can't check execution classpath contents", e);
-            throw new RuntimeException(e);
-        }
-
-        return entries.toArray(new URL[0]);
-    }
-
-    private long computeClassPathHash(final URL... classpathEntry) {
-        final Adler32 adler32 = new Adler32();
-        for (final URL url : classpathEntry) {
-            try (CheckedInputStream inputStream = new CheckedInputStream(url.openStream(), adler32)) {
-                // Just read it, the CheckedInputStream will update the checksum on it's own
-                while (IOUtils.skip(inputStream, Long.MAX_VALUE) == Long.MAX_VALUE) {
-                    // just loop
-                }
-            } catch (final FileNotFoundException ignored) {
-                LOG.warning("Auxclasspath entry " + url.toString() + " doesn't exist, ignoring it");
-            } catch (final IOException e) {
-                // Can this even happen?
-                LOG.log(Level.SEVERE, "Incremental analysis can't check auxclasspath contents", e);
-                throw new RuntimeException(e);
+    private static boolean usesTypes(final RuleSets ruleSets) {
+        for (final Rule r : ruleSets.getAllRules()) {
+            if (r.isDfa() || r.isTypeResolution()) {
+                return true;
             }
         }
-        return adler32.getValue();
+        return false;
     }
 
     @Override
@@ -7,6 +7,7 @@ package net.sourceforge.pmd.cache;
 import java.io.File;
 import java.util.List;
 
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.ThreadSafeReportListener;
@@ -29,13 +30,27 @@ public interface AnalysisCache extends ThreadSafeReportListener {
      * updated cache, which allows {@link #ruleViolationAdded(RuleViolation)} to add a rule
      * violation to the file. TODO is this really best behaviour? This side-effects seems counter-intuitive.
      *
+     * <p>A file which is up to date may still need to be analyzed by the rules which
+     * changed since the previous analysis, see {@link #isUpToDate(Rule)}.
+     *
      * @param sourceFile The file to check in the cache
      * @return True if the cache is a hit, false otherwise
      */
     boolean isUpToDate(File sourceFile);
 
+    /**
+     * Checks if the cached violations of the given rule are still valid for files which
+     * are up to date. This is not the case for rules which have been added or reconfigured
+     * since the previous analysis, those need to be applied to all files.
+     *
+     * @param rule The rule to check in the cache
+     * @return True if the cached violations of the rule can be used, false otherwise
+     */
+    boolean isUpToDate(Rule rule);
+
     /**
      * Retrieves cached violations for the given file. Make sure to call {@link #isUpToDate(File)} first.
+     * Only violations of rules which are up to date are returned.
      * @param sourceFile The file to check in the cache
      * @return The list of cached violations.
      */
@@ -9,7 +9,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedInputStream;
 
@@ -20,19 +22,54 @@ import net.sourceforge.pmd.RuleViolation;
 /**
  * The result of a single file analysis.
  * Includes a checksum of the file and the complete list of violations detected.
+ * The size and last modification time of the file are kept as well, so that
+ * unchanged files can be recognized without computing the checksum again.
+ * Finally, the types the analysis looked up on the auxclasspath are recorded,
+ * so that the result can be invalidated when these types change.
  */
 public class AnalysisResult {
 
+    /** Value of the size or last modification time of a file, when it is not known. */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * Files modified less than this many milliseconds before their checksum
+     * is computed may be modified again without the modification time
+     * changing, so their modification time is not trusted.
+     */
+    private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
     private final long fileChecksum;
+    private final long fileSize;
+    private final long lastModified;
     private final List<RuleViolation> violations;
+    private final Set<String> classPathDependencies = new HashSet<>();
+    private final Set<String> typeDependencies = new HashSet<>();
+    private AnalysisResult inheritedDependencies;
 
     public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations) {
+        this(fileChecksum, UNKNOWN, UNKNOWN, violations);
+    }
+
+    public AnalysisResult(final long fileChecksum, final long fileSize, final long lastModified,
+            final List<RuleViolation> violations) {
         this.fileChecksum = fileChecksum;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
         this.violations = violations;
     }
 
     public AnalysisResult(final File sourceFile) {
-        this(computeFileChecksum(sourceFile), new ArrayList<RuleViolation>());
+        this(computeFileChecksum(sourceFile), sourceFile.length(), stableLastModified(sourceFile),
+                new ArrayList<RuleViolation>());
+    }
+
+    private static long stableLastModified(final File sourceFile) {
+        final long lastModified = sourceFile.lastModified();
+        if (lastModified == 0 || System.currentTimeMillis() - lastModified < MODIFICATION_TIME_GRANULARITY) {
+            return UNKNOWN;
+        }
+        return lastModified;
     }
 
     private static long computeFileChecksum(final File sourceFile) {
@@ -56,6 +93,27 @@ public class AnalysisResult {
         return fileChecksum;
     }
 
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Checks whether the analyzed file still has the same size and last
+     * modification time, in which case its contents are assumed to be
+     * unchanged.
+     *
+     * @param currentFileSize The current size of the file
+     * @param currentLastModified The current last modification time of the file
+     * @return <code>true</code> if the file is known not to have changed
+     */
+    public boolean hasSameAttributes(final long currentFileSize, final long currentLastModified) {
+        return lastModified != UNKNOWN && lastModified == currentLastModified && fileSize == currentFileSize;
+    }
+
     public List<RuleViolation> getViolations() {
         return violations;
     }
@@ -67,4 +125,57 @@ public class AnalysisResult {
     public void addViolation(final RuleViolation ruleViolation) {
         this.violations.add(ruleViolation);
     }
+
+    /**
+     * Returns the paths of the classpath files (jars or class files) from
+     * which types used by the analysis have been loaded.
+     *
+     * @see DependencyTracker
+     */
+    public Set<String> getClassPathDependencies() {
+        mergeInheritedDependencies();
+        return classPathDependencies;
+    }
+
+    /**
+     * Returns the names of the types the analysis looked up on the classpath,
+     * whether they have been found or not.
+     *
+     * @see DependencyTracker
+     */
+    public Set<String> getTypeDependencies() {
+        mergeInheritedDependencies();
+        return typeDependencies;
+    }
+
+    public void addClassPathDependency(final String classPathFile) {
+        mergeInheritedDependencies();
+        classPathDependencies.add(classPathFile);
+    }
+
+    public void addTypeDependency(final String typeName) {
+        mergeInheritedDependencies();
+        typeDependencies.add(typeName);
+    }
+
+    /**
+     * Adds the dependencies of the given result to this one. They are only
+     * copied when they are first accessed, which avoids loading the given
+     * result if they are never needed.
+     *
+     * @param result The result whose dependencies are inherited
+     */
+    public void inheritDependencies(final AnalysisResult result) {
+        mergeInheritedDependencies();
+        inheritedDependencies = result;
+    }
+
+    private void mergeInheritedDependencies() {
+        if (inheritedDependencies != null) {
+            final AnalysisResult inherited = inheritedDependencies;
+            inheritedDependencies = null;
+            classPathDependencies.addAll(inherited.getClassPathDependencies());
+            typeDependencies.addAll(inherited.getTypeDependencies());
+        }
+    }
 }
@@ -4,18 +4,35 @@
 
 package net.sourceforge.pmd.cache;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
 
 import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 
 /**
  * A mapper from rule class names to rule instances for cached rules.
+ *
+ * <p>Rules are also identified by a key made of their class and name, which
+ * is stored along with cached violations. For each key, the mapper computes a
+ * checksum of everything which may influence the violations of the rule: its
+ * properties, message, language versions, and the file patterns of its
+ * ruleset. Comparing these checksums with the ones of a previous analysis
+ * tells which rules changed.
  */
 public class CachedRuleMapper {
 
     private final Map<String, Rule> ruleByClassName = new HashMap<>();
+    private final Map<String, Rule> ruleByKey = new HashMap<>();
+    private final Map<String, Long> checksumByKey = new HashMap<>();
 
     /**
      * Finds a rule instance for the given rule class name
@@ -26,13 +43,93 @@ public class CachedRuleMapper {
         return ruleByClassName.get(className);
     }
 
+    /**
+     * Finds a rule instance for the given rule key.
+     * @param ruleKey The key of the rule that generated the cache entry, see {@link #getRuleKey(Rule)}
+     * @return The requested rule, or <code>null</code> if the rule is not part of the current rulesets
+     */
+    public Rule getRuleForKey(final String ruleKey) {
+        return ruleByKey.get(ruleKey);
+    }
+
+    /**
+     * Returns the checksums of the rules this mapper has been initialized with, by rule key.
+     * @return An unmodifiable map of rule keys to checksums
+     */
+    public Map<String, Long> getRuleChecksums() {
+        return Collections.unmodifiableMap(checksumByKey);
+    }
+
     /**
      * Initialize the mapper with the given rulesets.
      * @param rs The rulesets from which to retrieve rules.
      */
     public void initialize(final RuleSets rs) {
-        for (final Rule r : rs.getAllRules()) {
-            ruleByClassName.put(r.getRuleClass(), r);
+        ruleByKey.clear();
+        checksumByKey.clear();
+        for (final RuleSet ruleSet : rs.getAllRuleSets()) {
+            for (final Rule r : ruleSet.getRules()) {
+                ruleByClassName.put(r.getRuleClass(), r);
+
+                final String key = getRuleKey(r);
+                final long checksum = computeChecksum(ruleSet, r);
+                final Long previous = checksumByKey.get(key);
+                if (previous == null) {
+                    ruleByKey.put(key, r);
+                    checksumByKey.put(key, checksum);
+                } else {
+                    // the same rule is configured several times, it changes if any of them does
+                    checksumByKey.put(key, previous * 31 + checksum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key identifying the given rule in the cache.
+     * @param rule The rule
+     * @return The key of the rule
+     */
+    public static String getRuleKey(final Rule rule) {
+        return rule.getRuleClass() + '#' + rule.getName();
+    }
+
+    private static long computeChecksum(final RuleSet ruleSet, final Rule rule) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(rule.getRuleClass()).append('\n');
+        sb.append(rule.getName()).append('\n');
+        sb.append(getTerseName(rule.getLanguage())).append('\n');
+        sb.append(getTerseName(rule.getMinimumLanguageVersion())).append('\n');
+        sb.append(getTerseName(rule.getMaximumLanguageVersion())).append('\n');
+        sb.append(rule.getMessage()).append('\n');
+        for (final PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            sb.append(descriptor.name()).append('=').append(getValueAsString(rule, descriptor)).append('\n');
         }
+        appendPatterns(sb, ruleSet.getIncludePatterns());
+        appendPatterns(sb, ruleSet.getExcludePatterns());
+
+        final CRC32 crc32 = new CRC32();
+        crc32.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    private static <T> String getValueAsString(final Rule rule, final PropertyDescriptor<T> descriptor) {
+        final T value = rule.getProperty(descriptor);
+        return value == null ? "" : descriptor.asDelimitedString(value);
+    }
+
+    private static void appendPatterns(final StringBuilder sb, final List<String> patterns) {
+        for (final String pattern : patterns) {
+            sb.append(pattern).append('|');
+        }
+        sb.append('\n');
+    }
+
+    private static String getTerseName(final Language language) {
+        return language == null ? "" : language.getTerseName();
+    }
+
+    private static String getTerseName(final LanguageVersion languageVersion) {
+        return languageVersion == null ? "" : languageVersion.getTerseName();
     }
 }
@@ -0,0 +1,49 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.util.Set;
+
+/**
+ * The changes of the classpath since the previous analysis, as far as type
+ * resolution is concerned: the classpath files which have been added, changed
+ * or removed, and the types provided by the added or changed files.
+ */
+final class ClassPathChanges {
+
+    private final Set<String> changedFiles;
+    private final Set<String> changedTypes;
+
+    ClassPathChanges(final Set<String> changedFiles, final Set<String> changedTypes) {
+        this.changedFiles = changedFiles;
+        this.changedTypes = changedTypes;
+    }
+
+    int getChangedFileCount() {
+        return changedFiles.size();
+    }
+
+    /**
+     * Checks whether the given result may be different with the current
+     * classpath: either a type it used has been loaded from a classpath file
+     * which changed, or a type it looked up is provided by a changed file.
+     *
+     * @param previousResult The result of the previous analysis of a file
+     * @return <code>true</code> if the result may be outdated
+     */
+    boolean affects(final AnalysisResult previousResult) {
+        for (final String classPathFile : previousResult.getClassPathDependencies()) {
+            if (changedFiles.contains(classPathFile)) {
+                return true;
+            }
+        }
+        for (final String typeName : previousResult.getTypeDependencies()) {
+            if (changedTypes.contains(typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
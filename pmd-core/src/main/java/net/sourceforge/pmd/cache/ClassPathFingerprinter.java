@@ -0,0 +1,402 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Computes checksums of classpath entries. Each file on the classpath is
+ * identified by its path, size and last modification time. Files which didn't
+ * change since the previous analysis reuse the checksum of their previous
+ * fingerprint, the remaining ones are read in parallel.
+ *
+ * <p>The fingerprinter also keeps track of the files which changed since the
+ * previous analysis, see {@link #getClassPathChanges()}.
+ */
+final class ClassPathFingerprinter {
+
+    private static final Logger LOG = Logger.getLogger(ClassPathFingerprinter.class.getName());
+
+    /** Value of the size or last modification time of an entry, when it is not known. */
+    private static final long UNKNOWN = -1;
+
+    /**
+     * Files modified less than this many milliseconds ago may be modified again
+     * without the modification time changing, so their modification time is
+     * not trusted.
+     */
+    private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+    private static final String VERSIONED_CLASSES_PREFIX = "META-INF/versions/";
+
+    private final Map<String, Fingerprint> previousFingerprints = new ConcurrentHashMap<>();
+    private final Map<String, Fingerprint> currentFingerprints = new ConcurrentHashMap<>();
+
+    /** Paths of the files which have been added or changed since the previous analysis. */
+    private final Set<String> changedFiles = new HashSet<>();
+    /** Binary names of the types defined by class files in classpath directories, by path. */
+    private final Map<String, String> classFileTypes = new HashMap<>();
+    /** Paths of the classpath entries which are files, and are thus read as archives by class loaders. */
+    private final Set<String> archives = new HashSet<>();
+    /** Whether files which aren't local changed, whose contents can't be known. */
+    private boolean hasUnknownChanges;
+
+    /**
+     * Adds a fingerprint of a previous analysis, which is reused if the file
+     * didn't change.
+     */
+    void addPreviousFingerprint(final Fingerprint fingerprint) {
+        previousFingerprints.put(fingerprint.getPath(), fingerprint);
+    }
+
+    /**
+     * Returns the fingerprints of all the files hashed by this instance.
+     */
+    Collection<Fingerprint> getCurrentFingerprints() {
+        return Collections.unmodifiableCollection(currentFingerprints.values());
+    }
+
+    /**
+     * Computes a checksum of the contents of the given classpath entries.
+     * Directories are searched recursively, entries which don't exist are
+     * ignored.
+     *
+     * @param classpathEntries The classpath entries
+     * @return The checksum
+     */
+    long computeClassPathHash(final URL... classpathEntries) {
+        final List<Fingerprint> files = new ArrayList<>();
+        for (final URL url : classpathEntries) {
+            final Path path = toPath(url);
+            if (path == null) {
+                // not a local file, we can't tell if it changed
+                files.add(new Fingerprint(url.toString(), UNKNOWN, UNKNOWN, 0));
+            } else if (Files.isDirectory(path)) {
+                final List<Fingerprint> directoryFiles = listFiles(path, Integer.MAX_VALUE, false);
+                for (final Fingerprint file : directoryFiles) {
+                    if (file.getPath().endsWith(CLASS_FILE_EXTENSION)) {
+                        final Path relativePath = path.relativize(Paths.get(file.getPath()));
+                        classFileTypes.put(file.getPath(), toTypeName(relativePath.toString()));
+                    }
+                }
+                files.addAll(directoryFiles);
+            } else if (Files.exists(path)) {
+                final Fingerprint file = stat(path);
+                archives.add(file.getPath());
+                files.add(file);
+            } else {
+                LOG.warning("Auxclasspath entry " + url.toString() + " doesn't exist, ignoring it");
+            }
+        }
+        return computeHash(files);
+    }
+
+    /**
+     * Computes a checksum of the contents of the execution classpath, given as
+     * the entries of the <code>java.class.path</code> system property.
+     *
+     * @param classpathEntries The classpath entries
+     * @return The checksum
+     */
+    long computeExecutionClassPathHash(final String... classpathEntries) {
+        final List<Fingerprint> files = new ArrayList<>();
+        for (final String entry : classpathEntries) {
+            final File f = new File(entry);
+            if (isClassPathWildcard(entry)) {
+                files.addAll(listFiles(new File(entry.substring(0, entry.length() - 1)).toPath(), 1, true));
+            } else if (f.isFile()) {
+                files.add(stat(f.toPath()));
+            } else {
+                files.addAll(listFiles(f.toPath(), Integer.MAX_VALUE, false));
+            }
+        }
+        return computeHash(files);
+    }
+
+    private static boolean isClassPathWildcard(String entry) {
+        return entry.endsWith("/*") || entry.endsWith("\\*");
+    }
+
+    private static Path toPath(final URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Fingerprint stat(final Path file) {
+        try {
+            return newFingerprint(file, Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (final IOException e) {
+            return new Fingerprint(file.toString(), UNKNOWN, UNKNOWN, 0);
+        }
+    }
+
+    private static Fingerprint newFingerprint(final Path file, final BasicFileAttributes attrs) {
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if (System.currentTimeMillis() - lastModified < MODIFICATION_TIME_GRANULARITY) {
+            lastModified = UNKNOWN;
+        }
+        return new Fingerprint(file.toString(), attrs.size(), lastModified, 0);
+    }
+
+    /**
+     * Lists the files below the given directory, sorted by path so that the
+     * resulting checksum doesn't depend on the order of the directory listing.
+     */
+    private static List<Fingerprint> listFiles(final Path directory, final int maxDepth, final boolean jarsOnly) {
+        final List<Fingerprint> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                            // Broken links can't be followed
+                            if (!attrs.isSymbolicLink()
+                                    && (!jarsOnly || file.toString().toLowerCase().endsWith(".jar"))) {
+                                files.add(newFingerprint(file, attrs));
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (final NoSuchFileException ignored) {
+            // nothing to hash
+        } catch (final IOException e) {
+            LOG.log(Level.SEVERE, "Incremental analysis can't check classpath contents", e);
+            throw new RuntimeException(e);
+        }
+
+        Collections.sort(files, new Comparator<Fingerprint>() {
+            @Override
+            public int compare(final Fingerprint o1, final Fingerprint o2) {
+                return o1.getPath().compareTo(o2.getPath());
+            }
+        });
+        return files;
+    }
+
+    private long computeHash(final List<Fingerprint> files) {
+        // reuse what we can, and read the rest in parallel
+        final Map<Integer, Future<Fingerprint>> pending = new LinkedHashMap<>();
+        final long[] checksums = new long[files.size()];
+        ExecutorService executor = null;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final Fingerprint file = files.get(i);
+                final Fingerprint previous = previousFingerprints.get(file.getPath());
+                if (previous != null && previous.hasSameAttributes(file)) {
+                    currentFingerprints.put(previous.getPath(), previous);
+                    checksums[i] = previous.getChecksum();
+                } else {
+                    if (executor == null) {
+                        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                    }
+                    pending.put(i, executor.submit(new Callable<Fingerprint>() {
+                        @Override
+                        public Fingerprint call() throws IOException {
+                            return computeChecksum(file);
+                        }
+                    }));
+                }
+            }
+
+            for (final Map.Entry<Integer, Future<Fingerprint>> entry : pending.entrySet()) {
+                final Fingerprint fingerprint = entry.getValue().get();
+                if (fingerprint.getSize() != UNKNOWN) {
+                    currentFingerprints.put(fingerprint.getPath(), fingerprint);
+                }
+                checksums[entry.getKey()] = fingerprint.getChecksum();
+
+                final Fingerprint previous = previousFingerprints.get(fingerprint.getPath());
+                if (previous == null || previous.getChecksum() != fingerprint.getChecksum()) {
+                    changedFiles.add(fingerprint.getPath());
+                    if (files.get(entry.getKey()).getSize() == UNKNOWN) {
+                        hasUnknownChanges = true;
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            LOG.log(Level.SEVERE, "Incremental analysis can't check classpath contents", e.getCause());
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        long hash = 0;
+        for (final long checksum : checksums) {
+            hash = 31 * hash + checksum;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the changes of the classpath files hashed by this instance
+     * since the previous analysis.
+     *
+     * @return The changes, or <code>null</code> if they can't be determined,
+     *         e.g. because the classpath contains remote URLs
+     */
+    ClassPathChanges getClassPathChanges() {
+        if (hasUnknownChanges) {
+            return null;
+        }
+
+        final Set<String> files = new HashSet<>(changedFiles);
+        for (final String path : previousFingerprints.keySet()) {
+            if (!currentFingerprints.containsKey(path)) {
+                // removed
+                files.add(path);
+            }
+        }
+
+        final Set<String> types = new HashSet<>();
+        for (final String path : changedFiles) {
+            final String typeName = classFileTypes.get(path);
+            if (typeName != null) {
+                types.add(typeName);
+            } else if (archives.contains(path)) {
+                // other files in classpath directories are resources, which don't define types
+                try {
+                    types.addAll(listTypes(path));
+                } catch (final IOException e) {
+                    LOG.log(Level.FINE, "Can't list the classes of " + path, e);
+                    return null;
+                }
+            }
+        }
+        return new ClassPathChanges(files, types);
+    }
+
+    private static Set<String> listTypes(final String archive) throws IOException {
+        final Set<String> types = new HashSet<>();
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(CLASS_FILE_EXTENSION)) {
+                    if (name.startsWith(VERSIONED_CLASSES_PREFIX)) {
+                        // classes of multi-release jars
+                        name = name.substring(name.indexOf('/', VERSIONED_CLASSES_PREFIX.length()) + 1);
+                    }
+                    types.add(toTypeName(name));
+                }
+            }
+        }
+        return types;
+    }
+
+    private static String toTypeName(final String classFile) {
+        return classFile.substring(0, classFile.length() - CLASS_FILE_EXTENSION.length()).replace('/', '.')
+                .replace('\\', '.');
+    }
+
+    private static Fingerprint computeChecksum(final Fingerprint file) throws IOException {
+        final Adler32 adler32 = new Adler32();
+        final boolean isLocalFile = file.getSize() != UNKNOWN;
+        try (CheckedInputStream inputStream = new CheckedInputStream(isLocalFile
+                ? Files.newInputStream(Paths.get(file.getPath())) : openUrl(file.getPath()), adler32)) {
+            // Just read it, the CheckedInputStream will update the checksum on it's own
+            while (IOUtils.skip(inputStream, Long.MAX_VALUE) == Long.MAX_VALUE) {
+                // just loop
+            }
+        } catch (final FileNotFoundException | NoSuchFileException ignored) {
+            LOG.warning("Classpath entry " + file.getPath() + " doesn't exist, ignoring it");
+            return new Fingerprint(file.getPath(), UNKNOWN, UNKNOWN, 0);
+        }
+        return new Fingerprint(file.getPath(), file.getSize(), file.getLastModified(), adler32.getValue());
+    }
+
+    private static InputStream openUrl(final String url) throws IOException {
+        return new URL(url).openStream();
+    }
+
+    /**
+     * The checksum of a single file on the classpath, together with the
+     * attributes which identify its version.
+     */
+    static final class Fingerprint {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final long checksum;
+
+        Fingerprint(final String path, final long size, final long lastModified, final long checksum) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        long getChecksum() {
+            return checksum;
+        }
+
+        /* default */ boolean hasSameAttributes(final Fingerprint other) {
+            return lastModified != UNKNOWN && size != UNKNOWN
+                    && lastModified == other.lastModified && size == other.size;
+        }
+    }
+}
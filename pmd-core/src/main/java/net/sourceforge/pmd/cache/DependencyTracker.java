@@ -0,0 +1,119 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records the dependencies of the file analyzed by the current thread on the
+ * auxclasspath: the names of the types looked up during type resolution, and
+ * the classpath files (jars or class files) they have been loaded from.
+ *
+ * <p>When the auxclasspath changes, the analysis cache uses them to only
+ * invalidate the results of the files which depend on a changed type, instead
+ * of the results of all the files.
+ *
+ * <p>Recording is started by the analysis cache when a file is checked, and
+ * stopped once the file has been analyzed. Class loaders used for type
+ * resolution report the types they look up with
+ * {@link #typeLookedUp(String, String)}.
+ */
+public final class DependencyTracker {
+
+    private static final ThreadLocal<Recording> CURRENT_RECORDING = new ThreadLocal<>();
+
+    private DependencyTracker() {
+        // utility class
+    }
+
+    /**
+     * Starts recording the dependencies of the file analyzed by the current
+     * thread into the given result.
+     */
+    /* default */ static void startRecording(final AnalysisResult result) {
+        CURRENT_RECORDING.set(new Recording(result));
+    }
+
+    /**
+     * Stops recording the dependencies for the current thread.
+     */
+    public static void stopRecording() {
+        CURRENT_RECORDING.remove();
+    }
+
+    /**
+     * Returns true if the dependencies of the file analyzed by the current
+     * thread are being recorded. Class loaders may check this to avoid
+     * locating types needlessly.
+     *
+     * @return <code>true</code> if dependencies are recorded
+     */
+    public static boolean isRecording() {
+        return CURRENT_RECORDING.get() != null;
+    }
+
+    /**
+     * Records that the file analyzed by the current thread looked up a type.
+     *
+     * @param typeName The binary name of the type
+     * @param location The URL of the class file of the type, as returned by
+     *                 {@link ClassLoader#getResource(String)}, or <code>null</code>
+     *                 if the type doesn't exist
+     */
+    public static void typeLookedUp(final String typeName, final String location) {
+        final Recording recording = CURRENT_RECORDING.get();
+        if (recording == null || !recording.seenTypes.add(typeName)) {
+            return;
+        }
+
+        if (location == null) {
+            // a type which may be added to the classpath later on
+            recording.result.addTypeDependency(typeName);
+            return;
+        }
+
+        // types which are not loaded from local files (e.g. from the JDK) are not tracked
+        final String classPathFile = toClassPathFile(location);
+        if (classPathFile != null) {
+            recording.result.addTypeDependency(typeName);
+            recording.result.addClassPathDependency(classPathFile);
+        }
+    }
+
+    /**
+     * Converts the URL of a class file to the path of the classpath file
+     * it's stored in: the jar for classes stored in jars, or the class file
+     * itself.
+     */
+    private static String toClassPathFile(final String location) {
+        try {
+            if (location.startsWith("file:")) {
+                return Paths.get(new URI(location)).toString();
+            } else if (location.startsWith("jar:file:")) {
+                final int separator = location.indexOf("!/");
+                if (separator >= 0) {
+                    return Paths.get(new URI(location.substring("jar:".length(), separator))).toString();
+                }
+            }
+        } catch (final URISyntaxException | IllegalArgumentException | FileSystemNotFoundException ignored) {
+            // not a local file
+        }
+        return null;
+    }
+
+    private static final class Recording {
+        /* default */ final AnalysisResult result;
+        /* default */ final Set<String> seenTypes = new HashSet<>();
+
+        Recording(final AnalysisResult result) {
+            this.result = result;
+        }
+    }
+}
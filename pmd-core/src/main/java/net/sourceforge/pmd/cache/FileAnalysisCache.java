@@ -4,28 +4,40 @@
 
 package net.sourceforge.pmd.cache;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
 
 /**
  * An analysis cache backed by a regular file.
+ *
+ * <p>The file is memory-mapped, and the violations of a file are only decoded
+ * when they are requested. When persisting, only the results of new or changed
+ * files are appended. See {@link IndexedCacheFile} for details on the format.
  */
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
     private final File cacheFile;
 
+    /** The results loaded from the cache file, null if there are none or they are no longer valid. */
+    private IndexedCacheFile previousResults;
+
+    /** Files whose previous results are still up to date, their records are kept as is. */
+    private final Set<String> unchangedFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private boolean persisted;
+
     /**
      * Creates a new cache backed by the given file, and attempts to load pre-existing data from it.
      * @param cache The file on which to store analysis cache
@@ -38,53 +50,80 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
     }
 
     /**
-     * Loads cache data from the given file.
+     * Loads cache data from the given file. Only the header and the index
+     * are read, violations are decoded on demand.
      * @param cacheFile The file which backs the file analysis cache.
      */
     private void loadFromFile(final File cacheFile) {
         if (cacheExists()) {
-            try (
-                DataInputStream inputStream = new DataInputStream(
-                    new BufferedInputStream(Files.newInputStream(cacheFile.toPath())));
-            ) {
-                final String cacheVersion = inputStream.readUTF();
-
-                if (PMDVersion.VERSION.equals(cacheVersion)) {
-                    // Cache seems valid, load the rest
-
-                    // Get checksums
-                    rulesetChecksum = inputStream.readLong();
-                    auxClassPathChecksum = inputStream.readLong();
-                    executionClassPathChecksum = inputStream.readLong();
-
-                    // Cached results
-                    while (inputStream.available() > 0) {
-                        final String fileName = inputStream.readUTF();
-                        final long checksum = inputStream.readLong();
-
-                        final int countViolations = inputStream.readInt();
-                        final List<RuleViolation> violations = new ArrayList<>(countViolations);
-                        for (int i = 0; i < countViolations; i++) {
-                            violations.add(CachedRuleViolation.loadFromStream(inputStream, fileName, ruleMapper));
-                        }
-
-                        fileResultsCache.put(fileName, new AnalysisResult(checksum, violations));
+            try {
+                final IndexedCacheFile indexedFile = IndexedCacheFile.open(cacheFile);
+
+                if (indexedFile == null) {
+                    LOG.info("Analysis cache invalidated, cache format changed.");
+                } else if (PMDVersion.VERSION.equals(indexedFile.getPmdVersion())) {
+                    // Cache seems valid, get checksums
+                    rulesetChecksum = indexedFile.getRulesetChecksum();
+                    auxClassPathChecksum = indexedFile.getAuxClassPathChecksum();
+                    executionClassPathChecksum = indexedFile.getExecutionClassPathChecksum();
+                    ruleChecksums = indexedFile.getRuleChecksums();
+                    previousResults = indexedFile;
+                    for (final ClassPathFingerprinter.Fingerprint fingerprint : indexedFile.getClassPathFingerprints()) {
+                        classPathFingerprinter.addPreviousFingerprint(fingerprint);
                     }
 
                     LOG.info("Analysis cache loaded");
                 } else {
                     LOG.info("Analysis cache invalidated, PMD version changed.");
                 }
-            } catch (final EOFException e) {
-                LOG.warning("Cache file " + cacheFile.getPath() + " is malformed, will not be used for current analysis");
             } catch (final IOException e) {
-                LOG.severe("Could not load analysis cache from file. " + e.getMessage());
+                LOG.warning("Cache file " + cacheFile.getPath() + " is malformed, will not be used for current analysis");
             }
         } else if (cacheFile.isDirectory()) {
             LOG.severe("The configured cache location must be the path to a file, but is a directory.");
         }
     }
 
+    @Override
+    public boolean isUpToDate(final File sourceFile) {
+        final boolean upToDate = super.isUpToDate(sourceFile);
+        // if rules changed, some violations are recomputed and the record can't be kept
+        if (upToDate && !hasChangedRules()) {
+            unchangedFiles.add(sourceFile.getPath());
+        }
+        return upToDate;
+    }
+
+    @Override
+    protected AnalysisResult getPreviousResult(final String fileName) {
+        final IndexedCacheFile indexedFile = previousResults;
+        if (indexedFile != null) {
+            final int entry = indexedFile.find(fileName);
+            if (entry >= 0) {
+                return new LazyAnalysisResult(indexedFile, entry, ruleMapper);
+            }
+        }
+        return super.getPreviousResult(fileName);
+    }
+
+    @Override
+    protected void invalidatePreviousResults() {
+        super.invalidatePreviousResults();
+        closePreviousResults();
+        unchangedFiles.clear();
+    }
+
+    /**
+     * Unmaps the cache file, so that it can be replaced, instead of waiting
+     * for the mapping to be garbage collected.
+     */
+    private void closePreviousResults() {
+        if (previousResults != null) {
+            previousResults.close();
+            previousResults = null;
+        }
+    }
+
     @Override
     public void persist() {
 
@@ -95,6 +134,11 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
 
         boolean cacheFileShouldBeCreated = !cacheFile.exists();
 
+        if (!cacheFileShouldBeCreated && !cacheFile.canWrite()) {
+            LOG.severe("Could not persist analysis cache to file. " + cacheFile.getPath() + " is not writable");
+            return;
+        }
+
         // Create directories missing along the way
         if (cacheFileShouldBeCreated) {
             final File parentFile = cacheFile.getAbsoluteFile().getParentFile();
@@ -103,27 +147,37 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
             }
         }
 
-        try (
-            DataOutputStream outputStream = new DataOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
-        ) {
-            outputStream.writeUTF(pmdVersion);
-
-            outputStream.writeLong(rulesetChecksum);
-            outputStream.writeLong(auxClassPathChecksum);
-            outputStream.writeLong(executionClassPathChecksum);
-
+        try {
+            final IndexedCacheFile indexedFile = persisted ? null : previousResults;
+            final List<IndexedCacheFile.Entry> entries = new ArrayList<>(updatedResultsCache.size());
             for (final Map.Entry<String, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
-                final List<RuleViolation> violations = resultEntry.getValue().getViolations();
+                final String fileName = resultEntry.getKey();
+                final int previousEntry = indexedFile != null && unchangedFiles.contains(fileName)
+                        ? indexedFile.find(fileName) : -1;
 
-                outputStream.writeUTF(resultEntry.getKey());
-                outputStream.writeLong(resultEntry.getValue().getFileChecksum());
+                if (previousEntry >= 0) {
+                    // keep the record as is, there's no need to encode the same violations again
+                    entries.add(new IndexedCacheFile.Entry(resultEntry.getValue(), indexedFile, previousEntry));
+                } else {
+                    entries.add(new IndexedCacheFile.Entry(fileName, resultEntry.getValue()));
+                }
+            }
 
-                outputStream.writeInt(violations.size());
-                for (final RuleViolation rv : violations) {
-                    CachedRuleViolation.storeToStream(outputStream, rv);
+            if (indexedFile == null || indexedFile.shouldCompact(entries)
+                    || !indexedFile.append(cacheFile, rulesetChecksum, auxClassPathChecksum,
+                            executionClassPathChecksum, entries, classPathFingerprinter.getCurrentFingerprints(),
+                            ruleChecksums)) {
+                // the kept records are read from the file being replaced
+                for (final IndexedCacheFile.Entry entry : entries) {
+                    entry.copyRecord();
                 }
+                closePreviousResults();
+                IndexedCacheFile.write(cacheFile, pmdVersion, rulesetChecksum, auxClassPathChecksum,
+                        executionClassPathChecksum, entries, classPathFingerprinter.getCurrentFingerprints(),
+                        ruleChecksums);
             }
+            persisted = true;
+
             if (cacheFileShouldBeCreated) {
                 LOG.info("Analysis cache created");
             } else {
@@ -135,8 +189,73 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
     }
 
 
+    @Override
+    public void checkValidity(final RuleSets ruleSets, final ClassLoader auxclassPathClassLoader) {
+        if (auxclassPathClassLoader instanceof ClasspathClassLoader) {
+            // the index of the auxclasspath used by type resolution is kept next to the cache
+            ((ClasspathClassLoader) auxclassPathClassLoader).setIndexFile(getClassPathIndexFile());
+        }
+        super.checkValidity(ruleSets, auxclassPathClassLoader);
+    }
+
+    /**
+     * Returns the file where the index of the auxclasspath is kept, next to
+     * the cache file.
+     */
+    /* package */ File getClassPathIndexFile() {
+        return new File(cacheFile.getPath() + ".classpath");
+    }
+
     @Override
     protected boolean cacheExists() {
         return cacheFile.exists() && cacheFile.isFile() && cacheFile.length() > 0;
     }
+
+    /**
+     * A previous analysis result, whose violations and dependencies are
+     * decoded from the cache file on first access.
+     */
+    private static class LazyAnalysisResult extends AnalysisResult {
+        private final IndexedCacheFile indexedFile;
+        private final int entry;
+        private final CachedRuleMapper mapper;
+        private boolean loaded;
+
+        LazyAnalysisResult(final IndexedCacheFile indexedFile, final int entry, final CachedRuleMapper mapper) {
+            super(indexedFile.getFileChecksum(entry), indexedFile.getSourceFileSize(entry),
+                    indexedFile.getSourceLastModified(entry), new ArrayList<RuleViolation>());
+            this.indexedFile = indexedFile;
+            this.entry = entry;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public List<RuleViolation> getViolations() {
+            load();
+            return super.getViolations();
+        }
+
+        @Override
+        public Set<String> getClassPathDependencies() {
+            load();
+            return super.getClassPathDependencies();
+        }
+
+        @Override
+        public Set<String> getTypeDependencies() {
+            load();
+            return super.getTypeDependencies();
+        }
+
+        private synchronized void load() {
+            if (!loaded) {
+                loaded = true;
+                try {
+                    indexedFile.readRecord(entry, mapper, this);
+                } catch (final IOException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Could not load cached violations, the cache file is malformed", e);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,623 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * Read and write support for the on-disk format of the {@link FileAnalysisCache}.
+ *
+ * <p>The file starts with a fixed size header, followed by the PMD version and
+ * the per-file records. Each record holds the path of the analyzed file and its
+ * violations. The records are followed by an index, sorted by a 64 bit hash of
+ * the file path, which points to the record of every file:
+ *
+ * <pre>
+ * header:  magic, format version, ruleset checksum, auxclasspath checksum,
+ *          execution classpath checksum, index offset, entry count
+ *          PMD version (UTF)
+ * records: path (UTF), violation count, violations...,
+ *          classpath dependency count, classpath dependencies (UTF)...,
+ *          type dependency count, type dependencies (UTF)...
+ * index:   (path hash, file checksum, file size, last modified, record offset,
+ *           record length) * entry count
+ * classpath fingerprints: count, (path (UTF), size, last modified, checksum) * count
+ * rule checksums: count, (rule key (UTF), checksum) * count
+ * </pre>
+ *
+ * <p>The file is memory-mapped when it is opened. Only the index is read
+ * eagerly, along with the fingerprints of the classpath entries, which let
+ * the {@link ClassPathFingerprinter} skip reading unchanged jars and class
+ * files, and the checksums of the rules, which tell which rules changed
+ * since the file has been written. Records are decoded when the violations of a file are requested.
+ *
+ * <p>Records of files which didn't change are never rewritten. New records
+ * and a new index are appended to the end of the file, and the header is
+ * updated to point to the new index. The space taken up by superseded records
+ * and indexes is considered dead, and once it outgrows the live records the
+ * file is compacted by rewriting it completely. The file is unmapped before,
+ * as a file can't be replaced while it is mapped on some platforms, e.g. on Windows.
+ */
+final class IndexedCacheFile {
+
+    /** "PMDC" */
+    private static final int MAGIC = 0x504D4443;
+    private static final int FORMAT_VERSION = 5;
+
+    private static final int CHECKSUMS_POSITION = 8;
+    private static final int HEADER_SIZE = 44;
+    private static final int INDEX_ENTRY_SIZE = 44;
+
+    private final ByteBuffer buffer;
+    private final String pmdVersion;
+    private final long rulesetChecksum;
+    private final long auxClassPathChecksum;
+    private final long executionClassPathChecksum;
+    private final long indexOffset;
+    private final long recordsOffset;
+
+    private final long[] pathHashes;
+    private final long[] fileChecksums;
+    private final long[] fileSizes;
+    private final long[] lastModifieds;
+    private final long[] recordOffsets;
+    private final int[] recordLengths;
+
+    private final List<ClassPathFingerprinter.Fingerprint> classPathFingerprints;
+    private final Map<String, Long> ruleChecksums;
+
+    private volatile boolean closed;
+
+    private IndexedCacheFile(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        try {
+            buffer.getInt(); // magic
+            buffer.getInt(); // format version
+            rulesetChecksum = buffer.getLong();
+            auxClassPathChecksum = buffer.getLong();
+            executionClassPathChecksum = buffer.getLong();
+            indexOffset = buffer.getLong();
+            final int entryCount = buffer.getInt();
+            final ByteBuffer version = slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+            pmdVersion = new DataInputStream(new ByteBufferInputStream(version)).readUTF();
+            recordsOffset = HEADER_SIZE + version.position();
+
+            if (indexOffset < recordsOffset || indexOffset + (long) entryCount * INDEX_ENTRY_SIZE > buffer.limit()) {
+                throw new IOException("Index out of bounds");
+            }
+
+            pathHashes = new long[entryCount];
+            fileChecksums = new long[entryCount];
+            fileSizes = new long[entryCount];
+            lastModifieds = new long[entryCount];
+            recordOffsets = new long[entryCount];
+            recordLengths = new int[entryCount];
+
+            final ByteBuffer index = buffer.duplicate();
+            index.position((int) indexOffset);
+            for (int i = 0; i < entryCount; i++) {
+                pathHashes[i] = index.getLong();
+                fileChecksums[i] = index.getLong();
+                fileSizes[i] = index.getLong();
+                lastModifieds[i] = index.getLong();
+                recordOffsets[i] = index.getLong();
+                recordLengths[i] = index.getInt();
+            }
+
+            final DataInputStream fingerprints = new DataInputStream(new ByteBufferInputStream(index));
+            final int fingerprintCount = fingerprints.readInt();
+            classPathFingerprints = new ArrayList<>(fingerprintCount);
+            for (int i = 0; i < fingerprintCount; i++) {
+                classPathFingerprints.add(new ClassPathFingerprinter.Fingerprint(fingerprints.readUTF(),
+                        fingerprints.readLong(), fingerprints.readLong(), fingerprints.readLong()));
+            }
+
+            final int ruleCount = fingerprints.readInt();
+            ruleChecksums = new HashMap<>();
+            for (int i = 0; i < ruleCount; i++) {
+                ruleChecksums.put(fingerprints.readUTF(), fingerprints.readLong());
+            }
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated cache file", e);
+        }
+    }
+
+    /**
+     * Maps the given file and reads its index.
+     *
+     * @param file The cache file
+     * @return The cache file, or <code>null</code> if it has not been written
+     *         in this format (e.g. by an older PMD version)
+     * @throws IOException If the file can't be read or is malformed
+     */
+    static IndexedCacheFile open(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                return null;
+            }
+            return new IndexedCacheFile(buffer);
+        }
+    }
+
+    String getPmdVersion() {
+        return pmdVersion;
+    }
+
+    long getRulesetChecksum() {
+        return rulesetChecksum;
+    }
+
+    long getAuxClassPathChecksum() {
+        return auxClassPathChecksum;
+    }
+
+    long getExecutionClassPathChecksum() {
+        return executionClassPathChecksum;
+    }
+
+    /**
+     * Returns the fingerprints of the classpath entries hashed by the
+     * analysis which wrote this file.
+     */
+    List<ClassPathFingerprinter.Fingerprint> getClassPathFingerprints() {
+        return classPathFingerprints;
+    }
+
+    /**
+     * Returns the checksums of the rules applied by the analysis which wrote
+     * this file, by rule key.
+     */
+    Map<String, Long> getRuleChecksums() {
+        return ruleChecksums;
+    }
+
+    /**
+     * Looks up the index entry of the given file.
+     *
+     * @param path The path of the analyzed file
+     * @return The index entry, or <code>-1</code> if the file is unknown
+     */
+    int find(final String path) {
+        final long hash = pathHash(path);
+        int entry = Arrays.binarySearch(pathHashes, hash);
+        if (entry < 0) {
+            return -1;
+        }
+
+        // on hash collisions, check all the entries sharing the hash
+        while (entry > 0 && pathHashes[entry - 1] == hash) {
+            entry--;
+        }
+        for (; entry < pathHashes.length && pathHashes[entry] == hash; entry++) {
+            if (path.equals(readPath(entry))) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    long getFileChecksum(final int entry) {
+        return fileChecksums[entry];
+    }
+
+    long getSourceFileSize(final int entry) {
+        return fileSizes[entry];
+    }
+
+    long getSourceLastModified(final int entry) {
+        return lastModifieds[entry];
+    }
+
+    /**
+     * Decodes the violations and dependencies stored for the given index
+     * entry, and adds them to the given result.
+     */
+    void readRecord(final int entry, final CachedRuleMapper mapper, final AnalysisResult result)
+        throws IOException {
+        final DataInputStream input = newDataInput(recordOffsets[entry], recordLengths[entry]);
+        final String fileName = input.readUTF();
+        final int countViolations = input.readInt();
+        final List<RuleViolation> violations = new ArrayList<>(countViolations);
+        for (int i = 0; i < countViolations; i++) {
+            violations.add(CachedRuleViolation.loadFromStream(input, fileName, mapper));
+        }
+        result.addViolations(violations);
+
+        final int countClassPathDependencies = input.readInt();
+        for (int i = 0; i < countClassPathDependencies; i++) {
+            result.addClassPathDependency(input.readUTF());
+        }
+        final int countTypeDependencies = input.readInt();
+        for (int i = 0; i < countTypeDependencies; i++) {
+            result.addTypeDependency(input.readUTF());
+        }
+    }
+
+    long getFileSize() {
+        return buffer.limit();
+    }
+
+    private String readPath(final int entry) {
+        try {
+            return newDataInput(recordOffsets[entry], recordLengths[entry]).readUTF();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Unmaps the file. The records can't be read anymore afterwards, the
+     * records kept from this file must have been copied before.
+     *
+     * @see Entry#copyRecord()
+     */
+    void close() {
+        closed = true;
+        if (buffer instanceof MappedByteBuffer) {
+            unmap((MappedByteBuffer) buffer);
+        }
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is garbage
+     * collected. There's no public API for that, so this is best effort.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            try {
+                // Java 8 and earlier
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (final ReflectiveOperationException | RuntimeException ignored) {
+                // the mapping is released once the buffer is garbage collected
+            }
+        }
+    }
+
+    private ByteBuffer slice(final long offset, final int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position((int) offset);
+        slice.limit((int) offset + length);
+        return slice.slice();
+    }
+
+    private DataInputStream newDataInput(final long offset, final int length) throws IOException {
+        if (closed) {
+            throw new IOException("The cache file has been closed");
+        }
+        return new DataInputStream(new ByteBufferInputStream(slice(offset, length)));
+    }
+
+    /**
+     * Bytes of this file which won't be referenced anymore once the given
+     * entries have been appended.
+     */
+    private long deadBytesAfterAppend(final List<Entry> entries) {
+        long reusedBytes = 0;
+        for (final Entry entry : entries) {
+            if (!entry.isNew()) {
+                reusedBytes += entry.getRecordLength();
+            }
+        }
+        return getFileSize() - recordsOffset - reusedBytes;
+    }
+
+    /**
+     * Checks whether appending the given entries would leave more dead than
+     * live bytes in the file, in which case it should be rewritten instead.
+     */
+    boolean shouldCompact(final List<Entry> entries) {
+        long liveBytes = 0;
+        for (final Entry entry : entries) {
+            liveBytes += entry.getRecordLength();
+        }
+        return deadBytesAfterAppend(entries) > liveBytes;
+    }
+
+    /**
+     * Appends the new records among the given entries and a new index to the
+     * file this instance has been opened from, and points the header to it.
+     *
+     * @return <code>false</code> if the file has been modified since it has
+     *         been opened, and nothing has been written
+     */
+    boolean append(final File file, final long newRulesetChecksum, final long newAuxClassPathChecksum,
+            final long newExecutionClassPathChecksum, final List<Entry> entries,
+            final Collection<ClassPathFingerprinter.Fingerprint> fingerprints,
+            final Map<String, Long> ruleChecksums) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            if (channel.size() != getFileSize()) {
+                return false;
+            }
+
+            // the previous index stays intact until the header is updated
+            channel.position(getFileSize());
+            final long indexOffset = writeRecords(channel, entries, false);
+            writeIndex(channel, entries);
+            writeFingerprints(channel, fingerprints, ruleChecksums);
+            updateHeader(channel, newRulesetChecksum, newAuxClassPathChecksum, newExecutionClassPathChecksum,
+                    indexOffset, entries.size());
+        }
+        return true;
+    }
+
+    /**
+     * Writes a complete new cache file, replacing the given file. The given
+     * file must not be mapped anymore.
+     */
+    static void write(final File file, final String pmdVersion, final long rulesetChecksum,
+            final long auxClassPathChecksum, final long executionClassPathChecksum, final List<Entry> entries,
+            final Collection<ClassPathFingerprinter.Fingerprint> fingerprints,
+            final Map<String, Long> ruleChecksums) throws IOException {
+        // a file of its own, as other analyses may write the same cache at the same time;
+        // the prefix is padded as it needs at least 3 characters
+        final File tempFile = File.createTempFile("." + file.getName() + ".", ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                writeHeader(channel, pmdVersion);
+                final long indexOffset = writeRecords(channel, entries, true);
+                writeIndex(channel, entries);
+                writeFingerprints(channel, fingerprints, ruleChecksums);
+                updateHeader(channel, rulesetChecksum, auxClassPathChecksum, executionClassPathChecksum,
+                        indexOffset, entries.size());
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static byte[] encodeRecord(final String path, final AnalysisResult result) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            outputStream.writeUTF(path);
+            final List<RuleViolation> violations = result.getViolations();
+            outputStream.writeInt(violations.size());
+            for (final RuleViolation rv : violations) {
+                CachedRuleViolation.storeToStream(outputStream, rv);
+            }
+            writeStrings(outputStream, result.getClassPathDependencies());
+            writeStrings(outputStream, result.getTypeDependencies());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeStrings(final DataOutputStream outputStream, final Collection<String> strings)
+        throws IOException {
+        outputStream.writeInt(strings.size());
+        for (final String string : strings) {
+            outputStream.writeUTF(string);
+        }
+    }
+
+    static long pathHash(final String path) {
+        // 64 bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void writeHeader(final FileChannel channel, final String pmdVersion) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(FORMAT_VERSION);
+            // the remaining fields are filled in by updateHeader
+            outputStream.write(new byte[HEADER_SIZE - CHECKSUMS_POSITION]);
+            outputStream.writeUTF(pmdVersion);
+        }
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static void updateHeader(final FileChannel channel, final long rulesetChecksum,
+            final long auxClassPathChecksum, final long executionClassPathChecksum, final long indexOffset,
+            final int entryCount) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - CHECKSUMS_POSITION);
+        header.putLong(rulesetChecksum);
+        header.putLong(auxClassPathChecksum);
+        header.putLong(executionClassPathChecksum);
+        header.putLong(indexOffset);
+        header.putInt(entryCount);
+        header.flip();
+        channel.position(CHECKSUMS_POSITION);
+        writeFully(channel, header);
+    }
+
+    /**
+     * Writes the records at the current position of the channel, and updates
+     * the offsets of the entries accordingly.
+     *
+     * @param includeKept Whether records kept from a previous file are
+     *                    written as well, or just the new ones
+     * @return The position after the last record
+     */
+    private static long writeRecords(final FileChannel channel, final List<Entry> entries,
+            final boolean includeKept) throws IOException {
+        long position = channel.position();
+        for (final Entry entry : entries) {
+            if (includeKept || entry.isNew()) {
+                entry.recordOffset = position;
+                writeFully(channel, entry.record.duplicate());
+                position += entry.getRecordLength();
+            }
+        }
+        return position;
+    }
+
+    private static void writeIndex(final FileChannel channel, final List<Entry> entries) throws IOException {
+        final List<Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry o1, final Entry o2) {
+                return Long.compare(o1.pathHash, o2.pathHash);
+            }
+        });
+
+        final ByteBuffer index = ByteBuffer.allocate(sorted.size() * INDEX_ENTRY_SIZE);
+        for (final Entry entry : sorted) {
+            index.putLong(entry.pathHash);
+            index.putLong(entry.result.getFileChecksum());
+            index.putLong(entry.result.getFileSize());
+            index.putLong(entry.result.getLastModified());
+            index.putLong(entry.recordOffset);
+            index.putInt(entry.getRecordLength());
+        }
+        index.flip();
+        writeFully(channel, index);
+    }
+
+    private static void writeFingerprints(final FileChannel channel,
+            final Collection<ClassPathFingerprinter.Fingerprint> fingerprints,
+            final Map<String, Long> ruleChecksums) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            outputStream.writeInt(fingerprints.size());
+            for (final ClassPathFingerprinter.Fingerprint fingerprint : fingerprints) {
+                outputStream.writeUTF(fingerprint.getPath());
+                outputStream.writeLong(fingerprint.getSize());
+                outputStream.writeLong(fingerprint.getLastModified());
+                outputStream.writeLong(fingerprint.getChecksum());
+            }
+            outputStream.writeInt(ruleChecksums.size());
+            for (final Map.Entry<String, Long> ruleChecksum : ruleChecksums.entrySet()) {
+                outputStream.writeUTF(ruleChecksum.getKey());
+                outputStream.writeLong(ruleChecksum.getValue());
+            }
+        }
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * A record to be written, either new or kept from a previous cache file.
+     */
+    static final class Entry {
+        private final long pathHash;
+        private final AnalysisResult result;
+        private ByteBuffer record;
+        private long recordOffset;
+
+        /**
+         * Creates an entry for a new record.
+         */
+        Entry(final String path, final AnalysisResult result) throws IOException {
+            this.pathHash = pathHash(path);
+            this.result = result;
+            this.record = ByteBuffer.wrap(encodeRecord(path, result));
+            this.recordOffset = -1;
+        }
+
+        /**
+         * Creates an entry for a record of the given cache file, whose
+         * violations are kept as is.
+         */
+        Entry(final AnalysisResult result, final IndexedCacheFile previous, final int entry) {
+            this.pathHash = previous.pathHashes[entry];
+            this.result = result;
+            this.record = previous.slice(previous.recordOffsets[entry], previous.recordLengths[entry]);
+            this.recordOffset = previous.recordOffsets[entry];
+        }
+
+        boolean isNew() {
+            return recordOffset < 0;
+        }
+
+        /**
+         * Copies the record kept from a previous cache file out of it, so
+         * that the previous file can be closed before it is replaced.
+         */
+        void copyRecord() {
+            if (!isNew()) {
+                final ByteBuffer copy = ByteBuffer.allocate(record.remaining());
+                copy.put(record.duplicate());
+                copy.flip();
+                record = copy;
+            }
+        }
+
+        int getRecordLength() {
+            return record.remaining();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.io.File;
 import java.util.Collections;
 import java.util.List;
 
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.stat.Metric;
@@ -37,6 +38,11 @@ public class NoopAnalysisCache implements AnalysisCache {
         return false;
     }
 
+    @Override
+    public boolean isUpToDate(final Rule rule) {
+        return false;
+    }
+
     @Override
     public void analysisFailed(final File sourceFile) {
         // noop
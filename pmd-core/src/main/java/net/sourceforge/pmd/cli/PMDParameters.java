@@ -62,6 +62,10 @@ public class PMDParameters {
     @Parameter(names = { "-stress", "-S" }, description = "Performs a stress test.")
     private boolean stress = false;
 
+    @Parameter(names = "-boundedscheduling",
+            description = "Processes the largest files first and limits the number of files queued ahead of the analysis threads.")
+    private boolean boundedScheduling = false;
+
     @Parameter(names = "-shortnames", description = "Prints shortened filenames in the report.")
     private boolean shortnames = false;
 
@@ -194,6 +198,7 @@ public class PMDParameters {
         configuration.setShowSuppressedViolations(this.isShowsuppressed());
         configuration.setSourceEncoding(this.getEncoding());
         configuration.setStressTest(this.isStress());
+        configuration.setBoundedScheduling(this.isBoundedScheduling());
         configuration.setSuppressMarker(this.getSuppressmarker());
         configuration.setThreads(this.getThreads());
         configuration.setFailOnViolation(this.isFailOnViolation());
@@ -252,6 +257,10 @@ public class PMDParameters {
         return stress;
     }
 
+    public boolean isBoundedScheduling() {
+        return boundedScheduling;
+    }
+
     public boolean isShortnames() {
         return shortnames;
     }
@@ -30,26 +30,26 @@ public abstract class AbstractTokenizer implements Tokenizer {
     // ruby, python,...) use this
     // symbol for comment line
 
-    private List<String> code;
-    private int lineNumber = 0;
-    private String currentLine;
-
     protected boolean spanMultipleLinesString = true; // Most languages do, so
     // default is true
     protected Character spanMultipleLinesLineContinuationCharacter = null;
 
     private boolean downcaseString = true;
 
+    /**
+     * Tokenizes the given source code. The position in the source code is
+     * local to each call, so several files may be tokenized concurrently.
+     */
     @Override
     public void tokenize(SourceCode tokens, Tokens tokenEntries) {
-        code = tokens.getCode();
+        Position position = new Position(tokens.getCode());
 
-        for (lineNumber = 0; lineNumber < code.size(); lineNumber++) {
-            currentLine = code.get(lineNumber);
+        for (; position.lineNumber < position.code.size(); position.lineNumber++) {
+            position.currentLine = position.code.get(position.lineNumber);
             int loc = 0;
-            while (loc < currentLine.length()) {
+            while (loc < position.currentLine.length()) {
                 StringBuilder token = new StringBuilder();
-                loc = getTokenFromLine(token, loc);
+                loc = getTokenFromLine(position, token, loc);
                 if (token.length() > 0 && !isIgnorableString(token.toString())) {
                     if (downcaseString) {
                         token = new StringBuilder(token.toString().toLowerCase(Locale.ROOT));
@@ -58,7 +58,7 @@ public abstract class AbstractTokenizer implements Tokenizer {
                     // if ( CPD.debugEnable ) {
                     // System.out.println("Token added:" + token.toString());
                     // }
-                    tokenEntries.add(new TokenEntry(token.toString(), tokens.getFileName(), lineNumber + 1));
+                    tokenEntries.add(new TokenEntry(token.toString(), tokens.getFileName(), position.lineNumber + 1));
 
                 }
             }
@@ -66,7 +66,8 @@ public abstract class AbstractTokenizer implements Tokenizer {
         tokenEntries.add(TokenEntry.getEOF());
     }
 
-    private int getTokenFromLine(StringBuilder token, int loc) {
+    private int getTokenFromLine(Position position, StringBuilder token, int loc) {
+        String currentLine = position.currentLine;
         for (int j = loc; j < currentLine.length(); j++) {
             char tok = currentLine.charAt(j);
             if (!Character.isWhitespace(tok) && !ignoreCharacter(tok)) {
@@ -74,7 +75,7 @@ public abstract class AbstractTokenizer implements Tokenizer {
                     if (token.length() > 0) {
                         return j;
                     } else {
-                        return getCommentToken(token, loc);
+                        return getCommentToken(currentLine, token, loc);
                     }
                 } else if (isString(tok)) {
                     if (token.length() > 0) {
@@ -82,7 +83,7 @@ public abstract class AbstractTokenizer implements Tokenizer {
                         // separate token.
                     } else {
                         // we are at the start of a string
-                        return parseString(token, j, tok);
+                        return parseString(position, token, j, tok);
                     }
                 } else {
                     token.append(tok);
@@ -97,12 +98,12 @@ public abstract class AbstractTokenizer implements Tokenizer {
         return loc + 1;
     }
 
-    private int parseString(StringBuilder token, int loc, char stringDelimiter) {
+    private int parseString(Position position, StringBuilder token, int loc, char stringDelimiter) {
         boolean escaped = false;
         boolean done = false;
         char tok = ' '; // this will be replaced.
-        while (loc < currentLine.length() && !done) {
-            tok = currentLine.charAt(loc);
+        while (loc < position.currentLine.length() && !done) {
+            tok = position.currentLine.charAt(loc);
             if (escaped && tok == stringDelimiter) { // Found an escaped string
                 escaped = false;
             } else if (tok == stringDelimiter && token.length() > 0) {
@@ -119,13 +120,13 @@ public abstract class AbstractTokenizer implements Tokenizer {
         }
         // Handling multiple lines string
         if (!done && // ... we didn't find the end of the string
-                loc >= currentLine.length() && // ... we have reach the end of
+                loc >= position.currentLine.length() && // ... we have reach the end of
                 // the line ( the String is
                 // incomplete, for the moment at
                 // least)
                 spanMultipleLinesString && // ... the language allow multiple
                 // line span Strings
-                lineNumber < code.size() - 1 // ... there is still more lines to
+                position.lineNumber < position.code.size() - 1 // ... there is still more lines to
         // parse
         ) {
             // removes last character, if it is the line continuation (e.g.
@@ -135,9 +136,9 @@ public abstract class AbstractTokenizer implements Tokenizer {
                 token.deleteCharAt(token.length() - 1);
             }
             // parsing new line
-            currentLine = code.get(++lineNumber);
+            position.currentLine = position.code.get(++position.lineNumber);
             // Warning : recursive call !
-            loc = parseString(token, 0, stringDelimiter);
+            loc = parseString(position, token, 0, stringDelimiter);
         }
         return loc + 1;
     }
@@ -154,7 +155,7 @@ public abstract class AbstractTokenizer implements Tokenizer {
         return tok == oneLineCommentChar;
     }
 
-    private int getCommentToken(StringBuilder token, int loc) {
+    private int getCommentToken(String currentLine, StringBuilder token, int loc) {
         while (loc < currentLine.length()) {
             token.append(currentLine.charAt(loc++));
         }
@@ -164,4 +165,17 @@ public abstract class AbstractTokenizer implements Tokenizer {
     private boolean isIgnorableString(String token) {
         return ignorableStmt.contains(token);
     }
+
+    /**
+     * The line being tokenized.
+     */
+    private static final class Position {
+        private final List<String> code;
+        private int lineNumber;
+        private String currentLine;
+
+        Position(List<String> code) {
+            this.code = code;
+        }
+    }
 }
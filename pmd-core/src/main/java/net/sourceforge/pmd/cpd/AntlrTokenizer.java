@@ -4,8 +4,11 @@
 
 package net.sourceforge.pmd.cpd;
 
+import java.nio.CharBuffer;
+
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
 
 import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.cpd.token.AntlrToken;
@@ -54,8 +57,11 @@ public abstract class AntlrTokenizer implements Tokenizer {
     }
 
     /* default */ static CharStream getCharStreamFromSourceCode(final SourceCode sourceCode) {
-        StringBuilder buffer = sourceCode.getCodeBuffer();
-        return CharStreams.fromString(buffer.toString());
+        // the code points are read directly from the code, without copying it into a string first
+        final CharBuffer chars = sourceCode.getCharBuffer();
+        final CodePointBuffer.Builder builder = CodePointBuffer.builder(chars.remaining());
+        builder.append(chars);
+        return CodePointCharStream.fromBuffer(builder.build());
     }
 
     private void processToken(final Tokens tokenEntries, final String fileName, final AntlrToken token) {
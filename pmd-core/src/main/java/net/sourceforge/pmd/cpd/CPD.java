@@ -7,19 +7,28 @@ package net.sourceforge.pmd.cpd;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FilenameUtils;
 
 import net.sourceforge.pmd.lang.ast.TokenMgrError;
+import net.sourceforge.pmd.processor.PmdThreadFactory;
 import net.sourceforge.pmd.util.FileFinder;
 import net.sourceforge.pmd.util.database.DBMSMetadata;
 import net.sourceforge.pmd.util.database.DBURI;
@@ -35,12 +44,32 @@ public class CPD {
     private Tokens tokens = new Tokens();
     private MatchAlgorithm matchAlgorithm;
     private Set<String> current = new HashSet<>();
+    private TokenCache tokenCache;
+    private Map<String, Long> checksums = new HashMap<>();
+    private Set<String> changedFiles = new HashSet<>();
 
     public CPD(CPDConfiguration theConfiguration) {
         configuration = theConfiguration;
         // before we start any tokenizing (add(File...)), we need to reset the
         // static TokenEntry status
         TokenEntry.clearImages();
+        if (configuration.getCacheLocation() != null) {
+            tokenCache = new TokenCache(new File(configuration.getCacheLocation()), getTokenizerOptions());
+        }
+    }
+
+    /**
+     * Returns the options which change the tokens of the files: the tokens
+     * stored in the cache can only be reused with the same options.
+     */
+    private String getTokenizerOptions() {
+        return configuration.getLanguage().getTerseName() + ';' + configuration.getSourceEncoding().name()
+                + ";literals=" + configuration.isIgnoreLiterals()
+                + ";identifiers=" + configuration.isIgnoreIdentifiers()
+                + ";annotations=" + configuration.isIgnoreAnnotations()
+                + ";usings=" + configuration.isIgnoreUsings()
+                + ";noSkipBlocks=" + configuration.isNoSkipBlocks()
+                + ";skipBlocksPattern=" + configuration.getSkipBlocksPattern();
     }
 
     public void setCpdListener(CPDListener cpdListener) {
@@ -48,12 +77,31 @@ public class CPD {
     }
 
     public void go() {
+        if (tokenCache != null) {
+            tokenCache.persist(tokens, checksums);
+        }
         matchAlgorithm = new MatchAlgorithm(source, tokens, configuration.getMinimumTileSize(), listener);
+        matchAlgorithm.setSuffixArray(configuration.isSuffixArray());
         matchAlgorithm.findMatches();
     }
 
     public Iterator<Match> getMatches() {
-        return matchAlgorithm.matches();
+        if (tokenCache == null || !configuration.isChangedFilesOnly()) {
+            return matchAlgorithm.matches();
+        }
+
+        // only the matches involving a file which changed since the cache was written
+        List<Match> matches = new ArrayList<>();
+        for (Iterator<Match> i = matchAlgorithm.matches(); i.hasNext();) {
+            Match match = i.next();
+            for (Mark mark : match) {
+                if (changedFiles.contains(mark.getFilename())) {
+                    matches.add(match);
+                    break;
+                }
+            }
+        }
+        return matches.iterator();
     }
 
     public void addAllInDirectory(File dir) throws IOException {
@@ -65,9 +113,23 @@ public class CPD {
     }
 
     public void add(List<File> files) throws IOException {
+        if (configuration.getThreads() <= 1 || files.size() <= 1) {
+            for (File f : files) {
+                add(f);
+            }
+            return;
+        }
+
+        List<SourceCode> sourceCodes = new ArrayList<>(files.size());
+        List<Tokens> cachedTokens = new ArrayList<>(files.size());
         for (File f : files) {
-            add(f);
+            SourceCode sourceCode = sourceCodeFor(f);
+            if (sourceCode != null) {
+                sourceCodes.add(sourceCode);
+                cachedTokens.add(getCachedTokens(f, sourceCode));
+            }
         }
+        addConcurrently(sourceCodes, cachedTokens);
     }
 
     private void addDirectory(File dir, boolean recurse) throws IOException {
@@ -80,14 +142,53 @@ public class CPD {
     }
 
     public void add(File file) throws IOException {
+        SourceCode sourceCode = sourceCodeFor(file);
+        if (sourceCode == null) {
+            return;
+        }
+        Tokens cachedTokens = getCachedTokens(file, sourceCode);
+        if (cachedTokens != null) {
+            addTokens(sourceCode, cachedTokens);
+        } else {
+            add(sourceCode);
+        }
+    }
+
+    /**
+     * Returns the tokens of the given file stored in the cache, if the file
+     * didn't change since the cache was written.
+     */
+    private Tokens getCachedTokens(File file, SourceCode sourceCode) {
+        if (tokenCache == null) {
+            return null;
+        }
+        long checksum = TokenCache.computeChecksum(file);
+        checksums.put(sourceCode.getFileName(), checksum);
+        Tokens cachedTokens = tokenCache.getTokens(sourceCode.getFileName(), checksum);
+        if (cachedTokens == null) {
+            changedFiles.add(sourceCode.getFileName());
+        }
+        return cachedTokens;
+    }
+
+    private void addTokens(SourceCode sourceCode, Tokens fileTokens) {
+        tokens.addAll(fileTokens);
+        listener.addedFile(1, new File(sourceCode.getFileName()));
+        source.put(sourceCode.getFileName(), sourceCode);
+    }
 
+    /**
+     * Returns the source code of the given file, or <code>null</code> if the
+     * file must be skipped.
+     */
+    private SourceCode sourceCodeFor(File file) throws IOException {
         if (configuration.isSkipDuplicates()) {
             // TODO refactor this thing into a separate class
             String signature = file.getName() + '_' + file.length();
             if (current.contains(signature)) {
                 System.err.println("Skipping " + file.getAbsolutePath()
                         + " since it appears to be a duplicate file and --skip-duplicate-files is set");
-                return;
+                return null;
             }
             current.add(signature);
         }
@@ -95,16 +196,15 @@ public class CPD {
         if (!FilenameUtils.equalsNormalizedOnSystem(file.getAbsoluteFile().getCanonicalPath(),
                 file.getAbsolutePath())) {
             System.err.println("Skipping " + file + " since it appears to be a symlink");
-            return;
+            return null;
         }
 
         if (!file.exists()) {
             System.err.println("Skipping " + file + " since it doesn't exist (broken symlink?)");
-            return;
+            return null;
         }
 
-        SourceCode sourceCode = configuration.sourceCodeFor(file);
-        add(sourceCode);
+        return configuration.sourceCodeFor(file);
     }
 
     public void add(DBURI dburi) throws IOException {
@@ -145,13 +245,84 @@ public class CPD {
     }
 
     private void addAndSkipLexicalErrors(SourceCode sourceCode) throws IOException {
-        TokenEntry.State savedTokenEntry = new TokenEntry.State(tokens.getTokens());
+        int savedTokenCount = tokens.size();
         try {
             addAndThrowLexicalError(sourceCode);
         } catch (TokenMgrError e) {
             System.err.println("Skipping " + sourceCode.getFileName() + ". Reason: " + e.getMessage());
-            tokens.getTokens().clear();
-            tokens.getTokens().addAll(savedTokenEntry.restore());
+            tokens.truncate(savedTokenCount);
+        }
+    }
+
+    /**
+     * Tokenizes the given source codes on a pool of {@link CPDConfiguration#getThreads()}
+     * threads, unless their tokens are cached. The tokens of each file are added
+     * in the order of the files, so the matches found are the same as when
+     * tokenizing the files one by one.
+     */
+    private void addConcurrently(List<SourceCode> sourceCodes, List<Tokens> cachedTokens) throws IOException {
+        final Tokenizer tokenizer = configuration.tokenizer();
+        // the identifiers of the token images are shared by all the threads
+        final ConcurrentMap<String, Integer> images = TokenEntry.getImages();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(configuration.getThreads(), sourceCodes.size()), new PmdThreadFactory());
+        try {
+            List<Future<Tokens>> futures = new ArrayList<>(sourceCodes.size());
+            for (int i = 0; i < sourceCodes.size(); i++) {
+                final SourceCode sourceCode = sourceCodes.get(i);
+                if (cachedTokens.get(i) != null) {
+                    futures.add(null);
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<Tokens>() {
+                    @Override
+                    public Tokens call() throws IOException {
+                        TokenEntry.shareImages(images);
+                        try {
+                            Tokens fileTokens = new Tokens();
+                            tokenizer.tokenize(sourceCode, fileTokens);
+                            return fileTokens;
+                        } finally {
+                            TokenEntry.unshareImages();
+                        }
+                    }
+                }));
+            }
+
+            for (int i = 0; i < sourceCodes.size(); i++) {
+                SourceCode sourceCode = sourceCodes.get(i);
+                Tokens fileTokens = cachedTokens.get(i);
+                if (fileTokens == null) {
+                    fileTokens = getFileTokens(sourceCode, futures.get(i));
+                }
+                if (fileTokens != null) {
+                    addTokens(sourceCode, fileTokens);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Tokens getFileTokens(SourceCode sourceCode, Future<Tokens> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while tokenizing " + sourceCode.getFileName());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TokenMgrError && configuration.isSkipLexicalErrors()) {
+                System.err.println("Skipping " + sourceCode.getFileName() + ". Reason: " + cause.getMessage());
+                return null;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
@@ -107,6 +107,26 @@ public class CPDConfiguration extends AbstractConfiguration {
             required = false)
     private String skipBlocksPattern = Tokenizer.DEFAULT_SKIP_BLOCKS_PATTERN;
 
+    @Parameter(names = "--suffix-array",
+            description = "Find the duplicates with a suffix array of the tokens instead of hashing them",
+            required = false)
+    private boolean suffixArray = false;
+
+    @Parameter(names = "--cache",
+            description = "Specify the location of the cache file for incremental runs: only the files which changed "
+                    + "since the previous run are tokenized",
+            required = false)
+    private String cacheLocation;
+
+    @Parameter(names = "--changed-files-only",
+            description = "Only report the duplicates involving files which changed since the cache was written",
+            required = false)
+    private boolean changedFilesOnly = false;
+
+    @Parameter(names = "--threads",
+            description = "Number of threads used to tokenize the files. Default value is 1", required = false)
+    private int threads = 1;
+
     @Parameter(names = "--files", variableArity = true, description = "List of files and directories to process",
             required = false, converter = FileConverter.class)
     private List<File> files;
@@ -487,6 +507,61 @@ public class CPDConfiguration extends AbstractConfiguration {
         this.skipBlocksPattern = skipBlocksPattern;
     }
 
+    public String getCacheLocation() {
+        return cacheLocation;
+    }
+
+    /**
+     * Sets the location of the cache file, which stores the tokens of the
+     * files so that only the files which changed are tokenized on the next run.
+     *
+     * @param cacheLocation the path of the cache file, <code>null</code> to disable the cache
+     */
+    public void setCacheLocation(String cacheLocation) {
+        this.cacheLocation = cacheLocation;
+    }
+
+    public boolean isChangedFilesOnly() {
+        return changedFilesOnly;
+    }
+
+    /**
+     * Sets whether only the duplicates involving a file which changed since
+     * the cache was written are reported. Has no effect without cache.
+     *
+     * @param changedFilesOnly <code>true</code> to only report the duplicates of changed files
+     */
+    public void setChangedFilesOnly(boolean changedFilesOnly) {
+        this.changedFilesOnly = changedFilesOnly;
+    }
+
+    public boolean isSuffixArray() {
+        return suffixArray;
+    }
+
+    public void setSuffixArray(boolean suffixArray) {
+        this.suffixArray = suffixArray;
+    }
+
+    /**
+     * Returns the number of threads used to tokenize the files.
+     *
+     * @return the number of threads, 1 to tokenize the files on the calling thread
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used to tokenize the files. The tokenizer of
+     * the language must be thread-safe to use more than one thread.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public boolean isFailOnViolation() {
         return failOnViolation;
     }
@@ -62,6 +62,8 @@ public class CPDTask extends Task {
     private boolean ignoreUsings;
     private boolean skipLexicalErrors;
     private boolean skipDuplicateFiles;
+    private int threads = 1;
+    private boolean suffixArray;
     private boolean skipBlocks = true;
     private String skipBlocksPattern = Tokenizer.DEFAULT_SKIP_BLOCKS_PATTERN;
     private File outputFile;
@@ -85,6 +87,8 @@ public class CPDTask extends Task {
             config.setEncoding(encoding);
             config.setSkipDuplicates(skipDuplicateFiles);
             config.setSkipLexicalErrors(skipLexicalErrors);
+            config.setThreads(threads);
+            config.setSuffixArray(suffixArray);
 
             CPD cpd = new CPD(config);
             tokenizeFiles(cpd);
@@ -158,12 +162,14 @@ public class CPDTask extends Task {
         for (FileSet fileSet : filesets) {
             DirectoryScanner directoryScanner = fileSet.getDirectoryScanner(getProject());
             String[] includedFiles = directoryScanner.getIncludedFiles();
+            List<File> files = new ArrayList<>(includedFiles.length);
             for (int i = 0; i < includedFiles.length; i++) {
                 File file = new File(
                         directoryScanner.getBasedir() + System.getProperty("file.separator") + includedFiles[i]);
                 log("Tokenizing " + file.getAbsolutePath(), Project.MSG_VERBOSE);
-                cpd.add(file);
+                files.add(file);
             }
+            cpd.add(files);
         }
     }
 
@@ -230,6 +236,14 @@ public class CPDTask extends Task {
         this.skipDuplicateFiles = skipDuplicateFiles;
     }
 
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setSuffixArray(boolean suffixArray) {
+        this.suffixArray = suffixArray;
+    }
+
     public void setOutputFile(File outputFile) {
         this.outputFile = outputFile;
     }
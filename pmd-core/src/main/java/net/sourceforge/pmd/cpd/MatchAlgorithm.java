@@ -4,9 +4,7 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -14,15 +12,16 @@ import java.util.Map;
 public class MatchAlgorithm {
 
     private static final int MOD = 37;
+    private static final int NO_TOKEN = -1;
     private int lastHash;
     private int lastMod = 1;
 
     private List<Match> matches;
     private Map<String, SourceCode> source;
     private Tokens tokens;
-    private List<TokenEntry> code;
     private CPDListener cpdListener;
     private int min;
+    private boolean suffixArray;
 
     public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min) {
         this(sourceCode, tokens, min, new CPDNullListener());
@@ -31,7 +30,6 @@ public class MatchAlgorithm {
     public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min, CPDListener listener) {
         this.source = sourceCode;
         this.tokens = tokens;
-        this.code = tokens.getTokens();
         this.min = min;
         this.cpdListener = listener;
         for (int i = 0; i < min; i++) {
@@ -43,36 +41,41 @@ public class MatchAlgorithm {
         this.cpdListener = listener;
     }
 
+    /**
+     * Sets whether the duplicates are found with a suffix array of the tokens
+     * instead of hashing every tile of tokens. Both find the same matches,
+     * but the suffix array doesn't degrade with many similar files.
+     *
+     * @param suffixArray <code>true</code> to use a suffix array
+     */
+    public void setSuffixArray(boolean suffixArray) {
+        this.suffixArray = suffixArray;
+    }
+
     public Iterator<Match> matches() {
         return matches.iterator();
     }
 
     public TokenEntry tokenAt(int offset, TokenEntry m) {
-        return code.get(offset + m.getIndex());
+        return tokens.get(offset + m.getIndex());
     }
 
     public int getMinimumTileSize() {
         return this.min;
     }
 
-    public void findMatches() {
-        cpdListener.phaseUpdate(CPDListener.HASH);
-        Map<TokenEntry, Object> markGroups = hash();
+    /* default */ Tokens getTokens() {
+        return tokens;
+    }
 
-        cpdListener.phaseUpdate(CPDListener.MATCH);
-        MatchCollector matchCollector = new MatchCollector(this);
-        for (Iterator<Object> i = markGroups.values().iterator(); i.hasNext();) {
-            Object o = i.next();
-            if (o instanceof List) {
-                @SuppressWarnings("unchecked")
-                List<TokenEntry> l = (List<TokenEntry>) o;
-                Collections.reverse(l);
-                matchCollector.collect(l);
-            }
-            i.remove();
+    public void findMatches() {
+        if (suffixArray) {
+            cpdListener.phaseUpdate(CPDListener.MATCH);
+            matches = new SuffixArrayMatcher(tokens, min).findMatches();
+            cpdListener.phaseUpdate(CPDListener.GROUPING);
+        } else {
+            hashMatches();
         }
-        cpdListener.phaseUpdate(CPDListener.GROUPING);
-        matches = matchCollector.getMatches();
 
         for (Match match : matches) {
             for (Mark mark : match) {
@@ -87,38 +90,52 @@ public class MatchAlgorithm {
         cpdListener.phaseUpdate(CPDListener.DONE);
     }
 
-    @SuppressWarnings("PMD.JumbledIncrementer")
-    private Map<TokenEntry, Object> hash() {
-        Map<TokenEntry, Object> markGroups = new HashMap<>(tokens.size());
-        for (int i = code.size() - 1; i >= 0; i--) {
-            TokenEntry token = code.get(i);
-            if (token != TokenEntry.EOF) {
-                int last = tokenAt(min, token).getIdentifier();
-                lastHash = MOD * lastHash + token.getIdentifier() - lastMod * last;
-                token.setHashCode(lastHash);
-                Object o = markGroups.get(token);
-
-                // Note that this insertion method is worthwhile since the vast
-                // majority
-                // markGroup keys will have only one value.
-                if (o == null) {
-                    markGroups.put(token, token);
-                } else if (o instanceof TokenEntry) {
-                    List<TokenEntry> l = new ArrayList<>();
-                    l.add((TokenEntry) o);
-                    l.add(token);
-                    markGroups.put(token, l);
-                } else {
-                    @SuppressWarnings("unchecked")
-                    List<TokenEntry> l = (List<TokenEntry>) o;
-                    l.add(token);
+    private void hashMatches() {
+        cpdListener.phaseUpdate(CPDListener.HASH);
+        int[] hashes = new int[tokens.size()];
+        MarkGroups markGroups = hash(hashes);
+
+        cpdListener.phaseUpdate(CPDListener.MATCH);
+        MatchCollector matchCollector = new MatchCollector(this);
+        int[] group = new int[16];
+        for (int slot = 0; slot < markGroups.heads.length; slot++) {
+            int head = markGroups.heads[slot];
+            if (head == NO_TOKEN || markGroups.next[head] == NO_TOKEN) {
+                // the vast majority of the groups only have one mark
+                continue;
+            }
+            int count = 0;
+            for (int index = head; index != NO_TOKEN; index = markGroups.next[index]) {
+                if (count == group.length) {
+                    group = Arrays.copyOf(group, count * 2);
                 }
+                group[count++] = index;
+            }
+            matchCollector.collect(group, count, hashes[head]);
+        }
+        cpdListener.phaseUpdate(CPDListener.GROUPING);
+        matches = matchCollector.getMatches();
+    }
+
+    /**
+     * Computes the rolling hash of the tiles starting at each token, and
+     * groups the tokens by hash. The tokens of a group are chained in
+     * ascending order.
+     */
+    @SuppressWarnings("PMD.JumbledIncrementer")
+    private MarkGroups hash(int[] hashes) {
+        MarkGroups markGroups = new MarkGroups(tokens.size());
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+            if (!tokens.isEOF(i)) {
+                int last = tokens.getIdentifier(i + min);
+                lastHash = MOD * lastHash + tokens.getIdentifier(i) - lastMod * last;
+                hashes[i] = lastHash;
+                markGroups.add(lastHash, i);
             } else {
                 lastHash = 0;
                 for (int end = Math.max(0, i - min + 1); i > end; i--) {
-                    token = code.get(i - 1);
-                    lastHash = MOD * lastHash + token.getIdentifier();
-                    if (token == TokenEntry.EOF) {
+                    lastHash = MOD * lastHash + tokens.getIdentifier(i - 1);
+                    if (tokens.isEOF(i - 1)) {
                         break;
                     }
                 }
@@ -126,4 +143,56 @@ public class MatchAlgorithm {
         }
         return markGroups;
     }
+
+    /**
+     * Open addressing hash table from the hash of a tile to the tokens
+     * starting such a tile, using int arrays only.
+     */
+    /* default */ static final class MarkGroups {
+        private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+        /* default */ final int[] hashes;
+        /* default */ final int[] heads;
+        /* default */ final int[] next;
+        private final int mask;
+
+        MarkGroups(int tokenCount) {
+            int capacity = capacityFor(tokenCount);
+            hashes = new int[capacity];
+            heads = new int[capacity];
+            Arrays.fill(heads, NO_TOKEN);
+            next = new int[tokenCount];
+            mask = capacity - 1;
+        }
+
+        /* default */ void add(int hash, int index) {
+            int slot = mix(hash) & mask;
+            while (heads[slot] != NO_TOKEN && hashes[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            next[index] = heads[slot];
+            heads[slot] = index;
+        }
+
+        /**
+         * Returns the power of two size of the table for the given number of
+         * tokens, keeping the load factor between 3/8 and 3/4.
+         */
+        /* default */ static int capacityFor(int tokenCount) {
+            if (tokenCount > MAXIMUM_CAPACITY) {
+                throw new IllegalArgumentException("Too many tokens to hash: " + tokenCount);
+            }
+            int capacity = Integer.highestOneBit(Math.max(tokenCount - 1, 1)) << 1;
+            if (capacity < MAXIMUM_CAPACITY && tokenCount > capacity - (capacity >>> 2)) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
 }
@@ -14,18 +14,36 @@ public class MatchCollector {
     private List<Match> matchList = new ArrayList<>();
     private Map<Integer, Map<Integer, Match>> matchTree = new TreeMap<>();
     private MatchAlgorithm ma;
+    private Tokens tokens;
 
     public MatchCollector(MatchAlgorithm ma) {
         this.ma = ma;
+        this.tokens = ma.getTokens();
     }
 
     public void collect(List<TokenEntry> marks) {
+        int[] indexes = new int[marks.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = marks.get(i).getIndex();
+        }
+        collect(indexes, indexes.length, marks.isEmpty() ? 0 : marks.get(0).hashCode());
+    }
+
+    /**
+     * Collects the matches between the tokens of a group, which all start
+     * a tile with the same hash.
+     *
+     * @param marks the indexes of the tokens, in ascending order
+     * @param count the number of tokens in the group
+     * @param hash the hash of the tiles
+     */
+    /* default */ void collect(int[] marks, int count, int hash) {
         // first get a pairwise collection of all maximal matches
-        for (int i = 0; i < marks.size() - 1; i++) {
-            TokenEntry mark1 = marks.get(i);
-            for (int j = i + 1; j < marks.size(); j++) {
-                TokenEntry mark2 = marks.get(j);
-                int diff = mark1.getIndex() - mark2.getIndex();
+        for (int i = 0; i < count - 1; i++) {
+            int mark1 = marks[i];
+            for (int j = i + 1; j < count; j++) {
+                int mark2 = marks[j];
+                int diff = mark1 - mark2;
                 if (-diff < ma.getMinimumTileSize()) {
                     continue;
                 }
@@ -42,62 +60,69 @@ public class MatchCollector {
                 if (diff + dupes >= 1) {
                     continue;
                 }
-                reportMatch(mark1, mark2, dupes);
+                reportMatch(mark1, mark2, dupes, hash);
             }
         }
     }
 
-    private void reportMatch(TokenEntry mark1, TokenEntry mark2, int dupes) {
+    private void reportMatch(int mark1, int mark2, int dupes, int hash) {
         Map<Integer, Match> matches = matchTree.get(dupes);
         if (matches == null) {
             matches = new TreeMap<>();
             matchTree.put(dupes, matches);
-            addNewMatch(mark1, mark2, dupes, matches);
+            addNewMatch(mark1, mark2, dupes, hash, matches);
         } else {
-            Match matchA = matchTree.get(dupes).get(mark1.getIndex());
-            Match matchB = matchTree.get(dupes).get(mark2.getIndex());
+            Match matchA = matchTree.get(dupes).get(mark1);
+            Match matchB = matchTree.get(dupes).get(mark2);
 
             if (matchA == null && matchB == null) {
-                addNewMatch(mark1, mark2, dupes, matches);
+                addNewMatch(mark1, mark2, dupes, hash, matches);
             } else if (matchA == null) {
-                matchB.addTokenEntry(mark1);
-                matches.put(mark1.getIndex(), matchB);
+                matchB.addTokenEntry(createTokenEntry(mark1, hash));
+                matches.put(mark1, matchB);
             } else if (matchB == null) {
-                matchA.addTokenEntry(mark2);
-                matches.put(mark2.getIndex(), matchA);
+                matchA.addTokenEntry(createTokenEntry(mark2, hash));
+                matches.put(mark2, matchA);
             }
         }
     }
 
-    private void addNewMatch(TokenEntry mark1, TokenEntry mark2, int dupes, Map<Integer, Match> matches) {
-        Match match = new Match(dupes, mark1, mark2);
-        matches.put(mark1.getIndex(), match);
-        matches.put(mark2.getIndex(), match);
+    private void addNewMatch(int mark1, int mark2, int dupes, int hash, Map<Integer, Match> matches) {
+        Match match = new Match(dupes, createTokenEntry(mark1, hash), createTokenEntry(mark2, hash));
+        matches.put(mark1, match);
+        matches.put(mark2, match);
         matchList.add(match);
     }
 
+    private TokenEntry createTokenEntry(int index, int hash) {
+        TokenEntry entry = tokens.get(index);
+        entry.setHashCode(hash);
+        return entry;
+    }
+
     @SuppressWarnings("PMD.CompareObjectsWithEquals")
     public List<Match> getMatches() {
         Collections.sort(matchList);
         return matchList;
     }
 
-    private boolean hasPreviousDupe(TokenEntry mark1, TokenEntry mark2) {
-        if (mark1.getIndex() == 0) {
+    private boolean hasPreviousDupe(int mark1, int mark2) {
+        if (mark1 == 0) {
             return false;
         }
-        return !matchEnded(ma.tokenAt(-1, mark1), ma.tokenAt(-1, mark2));
+        return !matchEnded(mark1 - 1, mark2 - 1);
     }
 
-    private int countDuplicateTokens(TokenEntry mark1, TokenEntry mark2) {
+    private int countDuplicateTokens(int mark1, int mark2) {
         int index = 0;
-        while (!matchEnded(ma.tokenAt(index, mark1), ma.tokenAt(index, mark2))) {
+        while (!matchEnded(mark1 + index, mark2 + index)) {
             index++;
         }
         return index;
     }
 
-    private boolean matchEnded(TokenEntry token1, TokenEntry token2) {
-        return token1.getIdentifier() != token2.getIdentifier() || token1 == TokenEntry.EOF || token2 == TokenEntry.EOF;
+    private boolean matchEnded(int token1, int token2) {
+        return tokens.getIdentifier(token1) != tokens.getIdentifier(token2) || tokens.isEOF(token1)
+                || tokens.isEOF(token2);
     }
 }
@@ -4,94 +4,232 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.io.BufferedReader;
+import java.io.CharArrayReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 
 import net.sourceforge.pmd.PMD;
 
 public class SourceCode {
 
+    /**
+     * Loads the code of a source file. The code is decoded once into a char
+     * buffer, whose line terminators are normalized to {@link PMD#EOL}, and
+     * which is only softly referenced: the tokenizers and the slices of the
+     * duplicates read it without copying it into lines.
+     */
     public abstract static class CodeLoader {
-        private SoftReference<List<String>> code;
+        private SoftReference<Code> code;
 
         public List<String> getCode() {
-            List<String> c = null;
-            if (code != null) {
-                c = code.get();
-            }
-            if (c != null) {
-                return c;
-            }
-            this.code = new SoftReference<>(load());
-            return code.get();
+            return getLoadedCode().getLines();
         }
 
         public List<String> getCodeSlice(int startLine, int endLine) {
-            List<String> c = null;
-            if (code != null) {
-                c = code.get();
-            }
-            if (c != null) {
-                return c.subList(startLine - 1, endLine);
-            }
-            return load(startLine, endLine);
+            return getCode().subList(startLine - 1, endLine);
         }
 
         public abstract String getFileName();
 
         protected abstract Reader getReader() throws Exception;
 
-        protected List<String> load() {
-            try (BufferedReader reader = new BufferedReader(getReader())) {
-                List<String> lines = new ArrayList<>();
-                String currentLine;
-                while ((currentLine = reader.readLine()) != null) {
-                    lines.add(currentLine);
+        /**
+         * Reads the characters of the code. The default implementation reads
+         * them from {@link #getReader()}.
+         *
+         * @return an array backed buffer with the characters of the code
+         */
+        protected CharBuffer loadChars() throws Exception {
+            try (Reader reader = getReader()) {
+                return CharBuffer.wrap(IOUtils.toCharArray(reader));
+            }
+        }
+
+        /* default */ Code getLoadedCode() {
+            Code c = null;
+            if (code != null) {
+                c = code.get();
+            }
+            if (c == null) {
+                try {
+                    c = Code.normalize(loadChars());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw new RuntimeException("Problem while reading " + getFileName() + ":" + e.getMessage());
                 }
-                return lines;
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new RuntimeException("Problem while reading " + getFileName() + ":" + e.getMessage());
+                code = new SoftReference<>(c);
             }
+            return c;
+        }
+    }
+
+    /**
+     * The characters of the code along with the start of each line.
+     */
+    /* default */ static final class Code {
+        private final char[] chars;
+        private final int offset;
+        private final int length;
+        /** The start of each line, followed by the end of the code. */
+        private final int[] lineStarts;
+        private final int lineCount;
+
+        private Code(char[] chars, int offset, int length, int[] lineStarts, int lineCount) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+            this.lineStarts = lineStarts;
+            this.lineCount = lineCount;
         }
 
-        protected List<String> load(int startLine, int endLine) {
-            try (BufferedReader reader = new BufferedReader(getReader())) {
-                int linesToRead = endLine - startLine;
-                List<String> lines = new ArrayList<>(linesToRead);
+        /**
+         * Terminates each line, including the last one, with {@link PMD#EOL},
+         * the same way the lines read by a {@link java.io.BufferedReader} used
+         * to be joined. The given buffer is used as is when it is already
+         * normalized, which is the common case.
+         */
+        /* default */ static Code normalize(CharBuffer buffer) {
+            char[] chars = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            int end = offset + buffer.remaining();
+
+            // the end of the contents of each line, and the start of the next one
+            int[] contentEnds = new int[16];
+            int[] nextStarts = new int[16];
+            int lineCount = 0;
+            boolean normalized = true;
+            int i = offset;
+            while (i < end) {
+                char c = chars[i];
+                if (c != '\n' && c != '\r') {
+                    i++;
+                    continue;
+                }
+                int terminatorLength = c == '\r' && i + 1 < end && chars[i + 1] == '\n' ? 2 : 1;
+                normalized &= isEol(chars, i, terminatorLength);
+                if (lineCount == contentEnds.length) {
+                    contentEnds = Arrays.copyOf(contentEnds, lineCount * 2);
+                    nextStarts = Arrays.copyOf(nextStarts, lineCount * 2);
+                }
+                contentEnds[lineCount] = i;
+                i += terminatorLength;
+                nextStarts[lineCount] = i;
+                lineCount++;
+            }
+            int lastStart = lineCount == 0 ? offset : nextStarts[lineCount - 1];
+            if (lastStart < end) {
+                // the last line isn't terminated
+                normalized = false;
+                if (lineCount == contentEnds.length) {
+                    contentEnds = Arrays.copyOf(contentEnds, lineCount + 1);
+                    nextStarts = Arrays.copyOf(nextStarts, lineCount + 1);
+                }
+                contentEnds[lineCount] = end;
+                nextStarts[lineCount] = end;
+                lineCount++;
+            }
 
-                // Skip lines until we reach the start point
-                for (int i = 0; i < startLine - 1; i++) {
-                    reader.readLine();
+            int[] lineStarts = new int[lineCount + 1];
+            if (normalized) {
+                lineStarts[0] = 0;
+                for (int line = 0; line < lineCount; line++) {
+                    lineStarts[line + 1] = nextStarts[line] - offset;
                 }
+                return new Code(chars, offset, end - offset, lineStarts, lineCount);
+            }
 
-                String currentLine;
-                while ((currentLine = reader.readLine()) != null) {
-                    lines.add(currentLine);
+            StringBuilder sb = new StringBuilder(end - offset + lineCount * PMD.EOL.length());
+            int start = offset;
+            for (int line = 0; line < lineCount; line++) {
+                lineStarts[line] = sb.length();
+                sb.append(chars, start, contentEnds[line] - start).append(PMD.EOL);
+                start = nextStarts[line];
+            }
+            lineStarts[lineCount] = sb.length();
+            char[] normalizedChars = new char[sb.length()];
+            sb.getChars(0, sb.length(), normalizedChars, 0);
+            return new Code(normalizedChars, 0, normalizedChars.length, lineStarts, lineCount);
+        }
 
-                    if (lines.size() == linesToRead) {
-                        break;
+        private static boolean isEol(char[] chars, int start, int length) {
+            if (length != PMD.EOL.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[start + i] != PMD.EOL.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /* default */ List<String> getLines() {
+            return new AbstractList<String>() {
+                @Override
+                public String get(int index) {
+                    if (index < 0 || index >= lineCount) {
+                        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + lineCount);
                     }
+                    return getSlice(index, index + 1);
                 }
-                return lines;
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new RuntimeException("Problem while reading " + getFileName() + ":" + e.getMessage());
+
+                @Override
+                public int size() {
+                    return lineCount;
+                }
+            };
+        }
+
+        /**
+         * Returns the lines from the first line (inclusive) to the last line
+         * (exclusive), 0-based, joined with {@link PMD#EOL}.
+         */
+        /* default */ String getSlice(int fromLine, int toLine) {
+            int to = Math.min(toLine, lineCount);
+            if (fromLine >= to) {
+                return "";
             }
+            int start = lineStarts[fromLine];
+            int end = lineStarts[to] - PMD.EOL.length();
+            return new String(chars, offset + start, end - start);
+        }
+
+        /* default */ CharBuffer getChars() {
+            return CharBuffer.wrap(chars, offset, length).slice();
+        }
+
+        /* default */ Reader getReader() {
+            return new CharArrayReader(chars, offset, length);
+        }
+
+        /* default */ int length() {
+            return length;
         }
     }
 
     public static class FileCodeLoader extends CodeLoader {
+        /**
+         * Files at least as big are mapped in memory instead of being read
+         * into a heap buffer before being decoded.
+         */
+        private static final long MAPPING_THRESHOLD = 64 * 1024;
+
         private File file;
         private String encoding;
 
@@ -111,6 +249,53 @@ public class SourceCode {
             return new InputStreamReader(inputStream, encoding);
         }
 
+        /**
+         * Decodes the file directly from its bytes, without going through a
+         * reader.
+         */
+        @Override
+        protected CharBuffer loadChars() throws Exception {
+            ByteBuffer bytes;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size >= MAPPING_THRESHOLD) {
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } else {
+                    bytes = ByteBuffer.allocate((int) size);
+                    while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                        // read until the buffer is full
+                    }
+                    bytes.flip();
+                }
+            }
+            skipBOM(bytes);
+            // decodes malformed input with replacement characters, like the reader does
+            return Charset.forName(encoding).decode(bytes);
+        }
+
+        private void skipBOM(ByteBuffer bytes) {
+            for (ByteOrderMark bom : new ByteOrderMark[] { ByteOrderMark.UTF_8, ByteOrderMark.UTF_16BE,
+                ByteOrderMark.UTF_16LE, }) {
+                if (startsWith(bytes, bom.getBytes())) {
+                    encoding = bom.getCharsetName();
+                    bytes.position(bytes.position() + bom.length());
+                    return;
+                }
+            }
+        }
+
+        private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+            if (bytes.remaining() < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (bytes.get(bytes.position() + i) != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         public String getEncoding() {
             return encoding;
         }
@@ -142,6 +327,11 @@ public class SourceCode {
             return new StringReader(code);
         }
 
+        @Override
+        protected CharBuffer loadChars() {
+            return CharBuffer.wrap(code.toCharArray());
+        }
+
         @Override
         public String getFileName() {
             return name;
@@ -186,25 +376,31 @@ public class SourceCode {
     }
 
     public StringBuilder getCodeBuffer() {
-        StringBuilder sb = new StringBuilder();
-        List<String> lines = cl.getCode();
-        for (String line : lines) {
-            sb.append(line).append(PMD.EOL);
-        }
-        return sb;
+        Code code = cl.getLoadedCode();
+        return new StringBuilder(code.length()).append(code.getChars());
     }
 
-    public String getSlice(int startLine, int endLine) {
-        List<String> lines = cl.getCodeSlice(startLine, endLine);
+    /**
+     * Returns a reader on the code, each line being terminated by
+     * {@link PMD#EOL}. The reader doesn't copy the code.
+     *
+     * @return a reader on the code
+     */
+    public Reader getCodeReader() {
+        return cl.getLoadedCode().getReader();
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (String line : lines) {
-            if (sb.length() != 0) {
-                sb.append(PMD.EOL);
-            }
-            sb.append(line);
-        }
-        return sb.toString();
+    /**
+     * Returns a buffer with the characters of the code, each line being
+     * terminated by {@link PMD#EOL}. The buffer shares the characters of the
+     * code, so it must not be modified.
+     */
+    /* default */ CharBuffer getCharBuffer() {
+        return cl.getLoadedCode().getChars();
+    }
+
+    public String getSlice(int startLine, int endLine) {
+        return cl.getLoadedCode().getSlice(startLine - 1, endLine);
     }
 
     public String getFileName() {
@@ -0,0 +1,424 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the duplicates of a token stream with a suffix array and its LCP
+ * (longest common prefix) array, instead of hashing every tile of tokens.
+ *
+ * <p>The suffix array is built by prefix doubling with radix sorts in
+ * O(n log n), and the LCP array with Kasai's algorithm in O(n). Each end of
+ * file is a unique sentinel, so common prefixes never span several files.
+ * The LCP intervals are then traversed bottom-up: an interval is a repeated
+ * sequence of at least the minimum tile size, and its occurrences are only
+ * compared when they are preceded by different tokens, i.e. when the repeat
+ * can't be extended to the left. Repeats occurring in many identical files
+ * are thus skipped without comparing every pair of occurrences.
+ *
+ * <p>The occurrences of a repeat are grouped into matches exactly like
+ * {@link MatchCollector} does, so both algorithms report the same matches.
+ */
+class SuffixArrayMatcher {
+
+    private static final int MOD = 37;
+
+    private final Tokens tokens;
+    private final int min;
+    private final int n;
+
+    private int[] keys;
+    private int[] suffixArray;
+    private int[] lcp;
+
+    private final List<Match> matches = new ArrayList<>();
+
+    SuffixArrayMatcher(Tokens tokens, int min) {
+        this.tokens = tokens;
+        this.min = min;
+        this.n = tokens.size();
+    }
+
+    /**
+     * Finds the matches, sorted like {@link MatchCollector#getMatches()}.
+     */
+    List<Match> findMatches() {
+        if (n > 0) {
+            buildKeys();
+            buildSuffixArray();
+            buildLcpArray();
+            keys = null;
+            traverseLcpIntervals();
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    /**
+     * Maps the tokens to keys: the identifiers of the tokens, and a distinct
+     * key greater than all identifiers for each end of file.
+     */
+    private void buildKeys() {
+        keys = new int[n];
+        int maxIdentifier = 0;
+        for (int i = 0; i < n; i++) {
+            maxIdentifier = Math.max(maxIdentifier, tokens.getIdentifier(i));
+        }
+        int nextEofKey = maxIdentifier + 1;
+        for (int i = 0; i < n; i++) {
+            keys[i] = tokens.isEOF(i) ? nextEofKey++ : tokens.getIdentifier(i);
+        }
+    }
+
+    private void buildSuffixArray() {
+        suffixArray = new int[n];
+        int[] rank = new int[n];
+        int[] tmp = new int[n];
+
+        // sort the suffixes by their first token
+        int classes = sortByKey(rank);
+
+        for (int k = 1; classes < n; k <<= 1) {
+            // order by the rank of the second half: the suffixes without
+            // second half first, then the others in the current order
+            int j = 0;
+            for (int i = Math.max(0, n - k); i < n; i++) {
+                tmp[j++] = i;
+            }
+            for (int i = 0; i < n; i++) {
+                if (suffixArray[i] >= k) {
+                    tmp[j++] = suffixArray[i] - k;
+                }
+            }
+            // then stable sort by the rank of the first half
+            int[] count = new int[classes];
+            for (int i = 0; i < n; i++) {
+                count[rank[i]]++;
+            }
+            for (int c = 1; c < classes; c++) {
+                count[c] += count[c - 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                suffixArray[--count[rank[tmp[i]]]] = tmp[i];
+            }
+
+            // compute the new ranks
+            tmp[suffixArray[0]] = 0;
+            classes = 1;
+            for (int i = 1; i < n; i++) {
+                int current = suffixArray[i];
+                int previous = suffixArray[i - 1];
+                if (rank[current] != rank[previous]
+                        || secondRank(rank, current, k) != secondRank(rank, previous, k)) {
+                    classes++;
+                }
+                tmp[current] = classes - 1;
+            }
+            int[] swap = rank;
+            rank = tmp;
+            tmp = swap;
+        }
+    }
+
+    private int secondRank(int[] rank, int suffix, int k) {
+        return suffix + k < n ? rank[suffix + k] : -1;
+    }
+
+    /**
+     * Sorts the suffixes by their first key, and assigns them a dense rank.
+     *
+     * @return the number of distinct keys
+     */
+    private int sortByKey(int[] rank) {
+        int maxKey = 0;
+        for (int i = 0; i < n; i++) {
+            maxKey = Math.max(maxKey, keys[i]);
+        }
+        int[] count = new int[maxKey + 2];
+        for (int i = 0; i < n; i++) {
+            count[keys[i] + 1]++;
+        }
+        for (int v = 1; v < count.length; v++) {
+            count[v] += count[v - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            suffixArray[count[keys[i]]++] = i;
+        }
+        int classes = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || keys[suffixArray[i]] != keys[suffixArray[i - 1]]) {
+                classes++;
+            }
+            rank[suffixArray[i]] = classes - 1;
+        }
+        return classes;
+    }
+
+    /**
+     * Builds the LCP array with Kasai's algorithm: lcp[i] is the length of the
+     * longest common prefix of the suffixes at ranks i - 1 and i.
+     */
+    private void buildLcpArray() {
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++) {
+            rank[suffixArray[i]] = i;
+        }
+        lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (rank[i] > 0) {
+                int j = suffixArray[rank[i] - 1];
+                while (i + h < n && j + h < n && keys[i + h] == keys[j + h]) {
+                    h++;
+                }
+                lcp[rank[i]] = h;
+                if (h > 0) {
+                    h--;
+                }
+            } else {
+                h = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the token preceding the given position: two
+     * occurrences of a repeat are only compared if their keys differ. The
+     * beginning of the stream and of each file are distinct from everything.
+     */
+    private int precedingKey(int position) {
+        if (position == 0 || tokens.isEOF(position - 1)) {
+            return -1 - position;
+        }
+        return tokens.getIdentifier(position - 1);
+    }
+
+    /**
+     * Traverses the LCP intervals bottom-up, keeping track of whether the
+     * occurrences of each interval are preceded by different tokens.
+     */
+    private void traverseLcpIntervals() {
+        IntervalStack stack = new IntervalStack();
+        stack.push(0, 0);
+        for (int i = 1; i <= n; i++) {
+            int current = i < n ? lcp[i] : -1;
+            int leafKey = precedingKey(suffixArray[i - 1]);
+            if (current > stack.topLcp()) {
+                // the leaf belongs to the interval starting here
+                stack.push(current, i - 1);
+                stack.addKey(leafKey);
+                continue;
+            }
+
+            stack.addKey(leafKey);
+            while (!stack.isEmpty() && current < stack.topLcp()) {
+                int depth = stack.topLcp();
+                int lb = stack.topLb();
+                boolean diverse = stack.topDiverse();
+                boolean hasKey = stack.topHasKey();
+                int key = stack.topKey();
+                stack.pop();
+
+                if (depth >= min && diverse) {
+                    collect(lb, i - 1, depth);
+                }
+
+                if (stack.isEmpty()) {
+                    break;
+                }
+                if (current > stack.topLcp()) {
+                    stack.push(current, lb);
+                }
+                stack.addSummary(hasKey, diverse, key);
+            }
+        }
+    }
+
+    /**
+     * Groups the occurrences of the repeat of the given length found at the
+     * ranks lb to rb into matches, processing the pairs of occurrences in the
+     * same order as {@link MatchCollector}: a pair is only reported if both
+     * occurrences don't overlap, are preceded by different tokens and their
+     * common sequence is exactly as long as the repeat, i.e. they belong to
+     * different child intervals.
+     */
+    private void collect(int lb, int rb, int depth) {
+        int count = rb - lb + 1;
+        long[] order = new long[count];
+        int child = 0;
+        for (int r = lb; r <= rb; r++) {
+            if (r > lb && lcp[r] == depth) {
+                child++;
+            }
+            order[r - lb] = (long) suffixArray[r] << 32 | child;
+        }
+        Arrays.sort(order);
+
+        int[] positions = new int[count];
+        int[] children = new int[count];
+        int[] precedingKeys = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = (int) (order[i] >>> 32);
+            children[i] = (int) order[i];
+            precedingKeys[i] = precedingKey(positions[i]);
+        }
+
+        Match[] assigned = new Match[count];
+        // next[i] is the first unassigned occurrence at or after i, with path compression
+        int[] next = new int[count + 1];
+        for (int i = 0; i <= count; i++) {
+            next[i] = i;
+        }
+
+        for (int i = 0; i < count - 1; i++) {
+            int start = firstNonOverlapping(positions, i, depth);
+            if (assigned[i] == null) {
+                int first = start;
+                while (first < count && !isPair(i, first, children, precedingKeys)) {
+                    first++;
+                }
+                if (first == count) {
+                    continue;
+                }
+                if (assigned[first] == null) {
+                    assigned[first] = new Match(depth, createTokenEntry(positions[i]),
+                            createTokenEntry(positions[first]));
+                    matches.add(assigned[first]);
+                    next[first] = first + 1;
+                } else {
+                    assigned[first].addTokenEntry(createTokenEntry(positions[i]));
+                }
+                assigned[i] = assigned[first];
+                next[i] = i + 1;
+                start = first + 1;
+            }
+
+            for (int j = findNext(next, start); j < count; j = findNext(next, j + 1)) {
+                if (isPair(i, j, children, precedingKeys)) {
+                    assigned[i].addTokenEntry(createTokenEntry(positions[j]));
+                    assigned[j] = assigned[i];
+                    next[j] = j + 1;
+                }
+            }
+        }
+    }
+
+    private static boolean isPair(int i, int j, int[] children, int[] precedingKeys) {
+        return children[i] != children[j] && precedingKeys[i] != precedingKeys[j];
+    }
+
+    /**
+     * Returns the first occurrence after i which doesn't overlap i by more
+     * than what {@link MatchCollector} allows.
+     */
+    private static int firstNonOverlapping(int[] positions, int i, int depth) {
+        int index = Arrays.binarySearch(positions, i + 1, positions.length, positions[i] + depth);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static int findNext(int[] next, int index) {
+        int root = index;
+        while (next[root] != root) {
+            root = next[root];
+        }
+        while (next[index] != root) {
+            int following = next[index];
+            next[index] = root;
+            index = following;
+        }
+        return root;
+    }
+
+    private TokenEntry createTokenEntry(int position) {
+        TokenEntry entry = tokens.get(position);
+        // the hash of the tile, as computed by MatchAlgorithm
+        int hash = 0;
+        for (int k = min - 1; k >= 0; k--) {
+            hash = MOD * hash + tokens.getIdentifier(position + k);
+        }
+        entry.setHashCode(hash);
+        return entry;
+    }
+
+    /**
+     * The stack of the open LCP intervals, with a summary of the tokens
+     * preceding their occurrences: either a single key, or diverse keys.
+     */
+    private static final class IntervalStack {
+        private int size;
+        private int[] lcps = new int[16];
+        private int[] lbs = new int[16];
+        private int[] keys = new int[16];
+        private boolean[] hasKeys = new boolean[16];
+        private boolean[] diverse = new boolean[16];
+
+        /* default */ void push(int lcp, int lb) {
+            if (size == lcps.length) {
+                int capacity = size * 2;
+                lcps = Arrays.copyOf(lcps, capacity);
+                lbs = Arrays.copyOf(lbs, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                hasKeys = Arrays.copyOf(hasKeys, capacity);
+                diverse = Arrays.copyOf(diverse, capacity);
+            }
+            lcps[size] = lcp;
+            lbs[size] = lb;
+            hasKeys[size] = false;
+            diverse[size] = false;
+            size++;
+        }
+
+        /* default */ void pop() {
+            size--;
+        }
+
+        /* default */ boolean isEmpty() {
+            return size == 0;
+        }
+
+        /* default */ int topLcp() {
+            return lcps[size - 1];
+        }
+
+        /* default */ int topLb() {
+            return lbs[size - 1];
+        }
+
+        /* default */ int topKey() {
+            return keys[size - 1];
+        }
+
+        /* default */ boolean topHasKey() {
+            return hasKeys[size - 1];
+        }
+
+        /* default */ boolean topDiverse() {
+            return diverse[size - 1];
+        }
+
+        /* default */ void addKey(int key) {
+            int top = size - 1;
+            if (!hasKeys[top]) {
+                keys[top] = key;
+                hasKeys[top] = true;
+            } else if (keys[top] != key) {
+                diverse[top] = true;
+            }
+        }
+
+        /* default */ void addSummary(boolean hasKey, boolean isDiverse, int key) {
+            if (isDiverse) {
+                diverse[size - 1] = true;
+            }
+            if (hasKey) {
+                addKey(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import net.sourceforge.pmd.PMD;
+
+/**
+ * A persistent index of the tokens of the files checked by CPD, which lets
+ * CPD only tokenize the files which changed since the previous run.
+ *
+ * <p>The tokens of each file are stored as a stream of image indexes and
+ * lines, along with the checksum of the contents of the file. The images
+ * are stored once, and mapped to the identifiers of the current run when
+ * the tokens of a file are reused. The hashes of the tiles of tokens are not
+ * stored: they are computed in linear time by the match algorithm, and depend
+ * on the identifiers of the run anyway. The format of the file is:
+ *
+ * <pre>
+ * header: magic, format version, PMD version (UTF), tokenizer options (UTF)
+ * images: count, (length, UTF-8 bytes) * count
+ * files:  count, (path (UTF), checksum, token count, (image index, line) * token count) * count
+ * </pre>
+ *
+ * <p>The whole index is discarded if it has been written by another version
+ * of PMD, or with other tokenizer options.
+ */
+final class TokenCache {
+
+    private static final Logger LOGGER = Logger.getLogger(TokenCache.class.getName());
+
+    /** "CPDI" */
+    private static final int MAGIC = 0x43504449;
+    private static final int FORMAT_VERSION = 1;
+
+    private final File cacheFile;
+    private final String options;
+
+    private String[] images = new String[0];
+    private int[] imageIdentifiers = new int[0];
+    private final Map<String, CachedFile> files = new HashMap<>();
+
+    TokenCache(File cacheFile, String options) {
+        this.cacheFile = cacheFile;
+        this.options = options;
+        load();
+    }
+
+    private void load() {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.info("CPD cache invalidated, cache format changed.");
+                return;
+            }
+            if (!PMD.VERSION.equals(in.readUTF())) {
+                LOGGER.info("CPD cache invalidated, PMD version changed.");
+                return;
+            }
+            if (!options.equals(in.readUTF())) {
+                LOGGER.info("CPD cache invalidated, tokenizer options changed.");
+                return;
+            }
+
+            String[] storedImages = new String[in.readInt()];
+            for (int i = 0; i < storedImages.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                storedImages[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int fileCount = in.readInt();
+            for (int f = 0; f < fileCount; f++) {
+                String fileName = in.readUTF();
+                long checksum = in.readLong();
+                int[] imageIndexes = new int[in.readInt()];
+                int[] lines = new int[imageIndexes.length];
+                for (int i = 0; i < imageIndexes.length; i++) {
+                    imageIndexes[i] = in.readInt();
+                    lines[i] = in.readInt();
+                }
+                files.put(fileName, new CachedFile(checksum, imageIndexes, lines));
+            }
+            images = storedImages;
+            imageIdentifiers = new int[images.length];
+            LOGGER.fine("CPD cache loaded");
+        } catch (IOException | RuntimeException e) {
+            files.clear();
+            LOGGER.log(Level.WARNING, "CPD cache file " + cacheFile.getPath()
+                    + " is malformed, will not be used for current run", e);
+        }
+    }
+
+    /**
+     * Returns the tokens of the given file, as stored in the cache, if the
+     * file didn't change since they have been stored.
+     *
+     * @param fileName the name of the file
+     * @param checksum the checksum of the current contents of the file
+     * @return the tokens of the file, followed by an EOF token, or <code>null</code>
+     */
+    Tokens getTokens(String fileName, long checksum) {
+        CachedFile cachedFile = files.get(fileName);
+        if (cachedFile == null || cachedFile.checksum != checksum) {
+            return null;
+        }
+
+        Tokens fileTokens = new Tokens();
+        for (int i = 0; i < cachedFile.imageIndexes.length; i++) {
+            fileTokens.add(getIdentifier(cachedFile.imageIndexes[i]), fileName, cachedFile.lines[i]);
+        }
+        fileTokens.add(TokenEntry.EOF);
+        return fileTokens;
+    }
+
+    private int getIdentifier(int imageIndex) {
+        if (imageIdentifiers[imageIndex] == 0) {
+            imageIdentifiers[imageIndex] = TokenEntry.identifierOf(images[imageIndex]);
+        }
+        return imageIdentifiers[imageIndex];
+    }
+
+    /**
+     * Replaces the contents of the cache with the tokens of the given files.
+     *
+     * @param tokens the tokens of all the files
+     * @param checksums the checksums of the files whose tokens are stored
+     */
+    void persist(Tokens tokens, Map<String, Long> checksums) {
+        // the images are stored by identifier
+        Map<String, Integer> identifiers = TokenEntry.getImages();
+        String[] currentImages = new String[identifiers.size() + 1];
+        for (Map.Entry<String, Integer> entry : identifiers.entrySet()) {
+            int identifier = entry.getValue();
+            if (identifier >= currentImages.length) {
+                currentImages = Arrays.copyOf(currentImages, identifier + 1);
+            }
+            currentImages[identifier] = entry.getKey();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(PMD.VERSION);
+            out.writeUTF(options);
+
+            out.writeInt(currentImages.length);
+            for (String image : currentImages) {
+                byte[] bytes = image == null ? new byte[0] : image.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(countFiles(tokens, checksums));
+            int start = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!tokens.isEOF(i)) {
+                    continue;
+                }
+                String fileName = start < i ? tokens.getFileName(start) : null;
+                if (fileName != null && checksums.containsKey(fileName)) {
+                    out.writeUTF(fileName);
+                    out.writeLong(checksums.get(fileName));
+                    out.writeInt(i - start);
+                    for (int t = start; t < i; t++) {
+                        out.writeInt(tokens.getIdentifier(t));
+                        out.writeInt(tokens.getBeginLine(t));
+                    }
+                }
+                start = i + 1;
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not persist CPD cache to file: " + e.getMessage());
+        }
+    }
+
+    private static int countFiles(Tokens tokens, Map<String, Long> checksums) {
+        int count = 0;
+        int start = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.isEOF(i)) {
+                if (start < i && checksums.containsKey(tokens.getFileName(start))) {
+                    count++;
+                }
+                start = i + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes the checksum of the contents of the given file.
+     *
+     * @param file the file
+     * @return the checksum, or 0 if the file can't be read
+     */
+    static long computeChecksum(File file) {
+        try (CheckedInputStream stream = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath())), new Adler32())) {
+            // the CheckedInputStream updates the checksum while skipping
+            IOUtils.skipFully(stream, file.length());
+            return stream.getChecksum().getValue();
+        } catch (IOException ignored) {
+            // the file will be tokenized, which reports the error
+            return 0;
+        }
+    }
+
+    private static final class CachedFile {
+        /* default */ final long checksum;
+        /* default */ final int[] imageIndexes;
+        /* default */ final int[] lines;
+
+        CachedFile(long checksum, int[] imageIndexes, int[] lines) {
+            this.checksum = checksum;
+            this.imageIndexes = imageIndexes;
+            this.lines = lines;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class TokenEntry implements Comparable<TokenEntry> {
@@ -20,12 +22,13 @@ public class TokenEntry implements Comparable<TokenEntry> {
     private int identifier;
     private int hashCode;
 
-    private static final ThreadLocal<Map<String, Integer>> TOKENS = new ThreadLocal<Map<String, Integer>>() {
-        @Override
-        protected Map<String, Integer> initialValue() {
-            return new HashMap<>();
-        }
-    };
+    private static final ThreadLocal<ConcurrentMap<String, Integer>> TOKENS =
+            new ThreadLocal<ConcurrentMap<String, Integer>>() {
+            @Override
+            protected ConcurrentMap<String, Integer> initialValue() {
+                return new ConcurrentHashMap<>();
+            }
+        };
     private static final ThreadLocal<AtomicInteger> TOKEN_COUNT = new ThreadLocal<AtomicInteger>() {
         @Override
         protected AtomicInteger initialValue() {
@@ -51,6 +54,16 @@ public class TokenEntry implements Comparable<TokenEntry> {
         this.index = TOKEN_COUNT.get().getAndIncrement();
     }
 
+    /**
+     * Creates a token entry for a token stored in {@link Tokens}.
+     */
+    TokenEntry(int identifier, String tokenSrcID, int beginLine, int index) {
+        this.identifier = identifier;
+        this.tokenSrcID = tokenSrcID;
+        this.beginLine = beginLine;
+        this.index = index;
+    }
+
     public static TokenEntry getEOF() {
         TOKEN_COUNT.get().getAndIncrement();
         return EOF;
@@ -62,10 +75,39 @@ public class TokenEntry implements Comparable<TokenEntry> {
         TOKEN_COUNT.remove();
     }
 
+    /**
+     * Returns the identifiers of the images of the current thread.
+     */
+    static ConcurrentMap<String, Integer> getImages() {
+        return TOKENS.get();
+    }
+
+    /**
+     * Makes the current thread share the given identifiers of the images,
+     * e.g. to tokenize files in worker threads.
+     */
+    static void shareImages(ConcurrentMap<String, Integer> images) {
+        TOKENS.set(images);
+    }
+
+    /**
+     * Stops sharing the identifiers of the images set with
+     * {@link #shareImages(ConcurrentMap)}, without clearing them.
+     */
+    static void unshareImages() {
+        TOKENS.remove();
+        TOKEN_COUNT.remove();
+    }
+
     /**
      * Helper class to preserve and restore the current state of the token
      * entries.
+     *
+     * @deprecated CPD doesn't restore the tokens of a file which fails to be
+     *     tokenized anymore, it discards them from the {@link Tokens}.
+     *     This class will be removed with PMD 7.0.0.
      */
+    @Deprecated
     public static class State {
         private int tokenCount;
         private Map<String, Integer> tokens;
@@ -138,11 +180,26 @@ public class TokenEntry implements Comparable<TokenEntry> {
     }
 
     final void setImage(String image) {
-        Integer i = TOKENS.get().get(image);
+        this.identifier = identifierOf(image);
+    }
+
+    /**
+     * Returns the identifier of the given image, assigning a new one
+     * if the image hasn't been seen yet.
+     */
+    static int identifierOf(String image) {
+        Map<String, Integer> images = TOKENS.get();
+        Integer i = images.get(image);
         if (i == null) {
-            i = TOKENS.get().size() + 1;
-            TOKENS.get().put(image, i);
+            // the images may be shared by several threads
+            synchronized (images) {
+                i = images.get(image);
+                if (i == null) {
+                    i = images.size() + 1;
+                    images.put(image, i);
+                }
+            }
         }
-        this.identifier = i.intValue();
+        return i.intValue();
     }
 }
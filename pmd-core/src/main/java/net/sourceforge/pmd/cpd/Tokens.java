@@ -4,40 +4,207 @@
 
 package net.sourceforge.pmd.cpd;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * The tokens of all the source files to check for duplicates.
+ *
+ * <p>The tokens are not kept as {@link TokenEntry} objects: their identifier,
+ * line and source file are stored in parallel int arrays, which keeps the
+ * memory footprint small and lets the match algorithm scan them without
+ * dereferencing objects. {@link TokenEntry} instances are only created on
+ * demand, e.g. by {@link #getTokens()}.
+ */
 public class Tokens {
 
-    private List<TokenEntry> tokens = new ArrayList<>();
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EOF_FILE_ID = -1;
+
+    private int[] identifiers = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] fileIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, Integer> fileNameIds = new HashMap<>();
+    private String lastFileName;
+    private int lastFileId;
+
+    private final List<TokenEntry> view = new AbstractList<TokenEntry>() {
+        @Override
+        public TokenEntry get(int index) {
+            return Tokens.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void add(int index, TokenEntry tokenEntry) {
+            if (index != size) {
+                throw new UnsupportedOperationException("Tokens can only be added at the end");
+            }
+            Tokens.this.add(tokenEntry);
+        }
+
+        @Override
+        public TokenEntry remove(int index) {
+            TokenEntry removed = get(index);
+            removeRange(index, index + 1);
+            return removed;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            if (toIndex != size) {
+                throw new UnsupportedOperationException("Tokens can only be removed at the end");
+            }
+            truncate(fromIndex);
+        }
+    };
 
     public void add(TokenEntry tokenEntry) {
-        this.tokens.add(tokenEntry);
+        ensureCapacity(size + 1);
+        if (tokenEntry == TokenEntry.EOF) {
+            identifiers[size] = 0;
+            lines[size] = 0;
+            fileIds[size] = EOF_FILE_ID;
+        } else {
+            identifiers[size] = tokenEntry.getIdentifier();
+            lines[size] = tokenEntry.getBeginLine();
+            fileIds[size] = getFileId(tokenEntry.getTokenSrcID());
+        }
+        size++;
+    }
+
+    /**
+     * Adds a token with the given identifier.
+     */
+    /* default */ void add(int identifier, String fileName, int beginLine) {
+        ensureCapacity(size + 1);
+        identifiers[size] = identifier;
+        lines[size] = beginLine;
+        fileIds[size] = getFileId(fileName);
+        size++;
+    }
+
+    /**
+     * Appends all the tokens of the given tokens, e.g. the tokens of a file
+     * tokenized separately.
+     */
+    /* default */ void addAll(Tokens other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.identifiers, 0, identifiers, size, other.size);
+        System.arraycopy(other.lines, 0, lines, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            int fileId = other.fileIds[i];
+            fileIds[size + i] = fileId == EOF_FILE_ID ? EOF_FILE_ID : getFileId(other.fileNames.get(fileId));
+        }
+        size += other.size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > identifiers.length) {
+            int newCapacity = Math.max(capacity, identifiers.length + (identifiers.length >> 1));
+            identifiers = Arrays.copyOf(identifiers, newCapacity);
+            lines = Arrays.copyOf(lines, newCapacity);
+            fileIds = Arrays.copyOf(fileIds, newCapacity);
+        }
+    }
+
+    private int getFileId(String fileName) {
+        // tokens are added file by file, so this is nearly always the same file
+        if (fileName.equals(lastFileName)) {
+            return lastFileId;
+        }
+        Integer id = fileNameIds.get(fileName);
+        if (id == null) {
+            id = fileNames.size();
+            fileNames.add(fileName);
+            fileNameIds.put(fileName, id);
+        }
+        lastFileName = fileName;
+        lastFileId = id;
+        return lastFileId;
     }
 
     public Iterator<TokenEntry> iterator() {
-        return tokens.iterator();
+        return view.iterator();
+    }
+
+    /**
+     * Creates a token entry for the token at the given index.
+     */
+    /* default */ TokenEntry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (fileIds[index] == EOF_FILE_ID) {
+            return TokenEntry.EOF;
+        }
+        return new TokenEntry(identifiers[index], fileNames.get(fileIds[index]), lines[index], index);
+    }
+
+    /* default */ int getIdentifier(int index) {
+        return identifiers[index];
+    }
+
+    /* default */ int getBeginLine(int index) {
+        return lines[index];
+    }
+
+    /* default */ String getFileName(int index) {
+        return fileIds[index] == EOF_FILE_ID ? null : fileNames.get(fileIds[index]);
+    }
+
+    /* default */ boolean isEOF(int index) {
+        return fileIds[index] == EOF_FILE_ID;
+    }
+
+    /**
+     * Replaces the image of the token at the given index.
+     */
+    /* default */ void setImage(int index, String image) {
+        identifiers[index] = TokenEntry.identifierOf(image);
     }
 
-    private TokenEntry get(int index) {
-        return tokens.get(index);
+    /**
+     * Removes all the tokens added after the token count was the given size,
+     * e.g. the tokens of a file which couldn't be tokenized completely.
+     */
+    /* default */ void truncate(int newSize) {
+        size = newSize;
     }
 
     public int size() {
-        return tokens.size();
+        return size;
     }
 
     public int getLineCount(TokenEntry mark, Match match) {
-        TokenEntry endTok = get(mark.getIndex() + match.getTokenCount() - 1);
-        if (endTok == TokenEntry.EOF) {
-            endTok = get(mark.getIndex() + match.getTokenCount() - 2);
+        int endIndex = mark.getIndex() + match.getTokenCount() - 1;
+        if (isEOF(endIndex)) {
+            endIndex--;
         }
-        return endTok.getBeginLine() - mark.getBeginLine() + 1;
+        return lines[endIndex] - mark.getBeginLine() + 1;
     }
 
+    /**
+     * Returns a view of the tokens. The entries are created on each access.
+     * Tokens can be added to the view and removed from its end, e.g. with
+     * {@link List#clear()}, but they can't be replaced or inserted.
+     *
+     * @return the tokens
+     */
     public List<TokenEntry> getTokens() {
-        return tokens;
+        return view;
     }
 
 }
@@ -187,7 +187,9 @@ public abstract class AbstractNode implements Node {
     public DataFlowNode getDataFlowNode() {
         if (this.dataFlowNode == null) {
             if (this.parent != null) {
-                return parent.getDataFlowNode();
+                DataFlowNode parentDataFlowNode = parent.getDataFlowNode();
+                // the parent may have built the data flow of this node on demand
+                return this.dataFlowNode != null ? this.dataFlowNode : parentDataFlowNode;
             }
             return null; // TODO wise?
         }
@@ -0,0 +1,51 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+import net.sourceforge.pmd.lang.dfa.VariableAccess;
+
+/**
+ * An access to a variable in a data flow node, identified by its number in
+ * the {@link AccessTable} of the data flow.
+ */
+public final class Access {
+
+    private final int id;
+    private final DataFlowNode node;
+    private final VariableAccess variableAccess;
+
+    /* default */ Access(int id, DataFlowNode node, VariableAccess variableAccess) {
+        this.id = id;
+        this.node = node;
+        this.variableAccess = variableAccess;
+    }
+
+    /**
+     * Returns the number of this access in its {@link AccessTable}. The
+     * accesses are numbered in the order of the data flow, and in the order
+     * of the accesses of each node.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public DataFlowNode getNode() {
+        return node;
+    }
+
+    public VariableAccess getVariableAccess() {
+        return variableAccess;
+    }
+
+    public String getVariableName() {
+        return variableAccess.getVariableName();
+    }
+
+    @Override
+    public String toString() {
+        return variableAccess + " at line " + node.getLine();
+    }
+}
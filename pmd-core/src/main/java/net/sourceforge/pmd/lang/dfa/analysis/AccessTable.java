@@ -0,0 +1,139 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+import net.sourceforge.pmd.lang.dfa.VariableAccess;
+
+/**
+ * Numbers the nodes of a data flow, the variables they access, and the
+ * accesses themselves, so that the analyses can represent sets of them as
+ * bit sets.
+ */
+public final class AccessTable {
+
+    private final List<DataFlowNode> flow;
+    private final Map<DataFlowNode, Integer> nodeIndices;
+    private final List<Access> accesses = new ArrayList<>();
+    /** The id of the first access of each node, followed by the number of accesses. */
+    private final int[] firstAccessIds;
+    private final Map<String, Integer> variableIds = new HashMap<>();
+    private final List<String> variableNames = new ArrayList<>();
+    /** The ids of the accesses of each variable. */
+    private final List<BitSet> accessesByVariable = new ArrayList<>();
+
+    /**
+     * Numbers the accesses of the given data flow.
+     *
+     * @param flow the nodes of the data flow, the first one being its start node
+     */
+    public AccessTable(List<DataFlowNode> flow) {
+        this.flow = flow;
+        this.nodeIndices = new IdentityHashMap<>(flow.size());
+        this.firstAccessIds = new int[flow.size() + 1];
+        for (int i = 0; i < flow.size(); i++) {
+            DataFlowNode node = flow.get(i);
+            nodeIndices.put(node, i);
+            firstAccessIds[i] = accesses.size();
+            if (node.getVariableAccess() == null) {
+                continue;
+            }
+            for (VariableAccess va : node.getVariableAccess()) {
+                Access access = new Access(accesses.size(), node, va);
+                accesses.add(access);
+                accessesByVariable.get(getOrCreateVariableId(va.getVariableName())).set(access.getId());
+            }
+        }
+        firstAccessIds[flow.size()] = accesses.size();
+    }
+
+    private int getOrCreateVariableId(String variableName) {
+        Integer id = variableIds.get(variableName);
+        if (id == null) {
+            id = variableNames.size();
+            variableIds.put(variableName, id);
+            variableNames.add(variableName);
+            accessesByVariable.add(new BitSet());
+        }
+        return id;
+    }
+
+    public List<DataFlowNode> getFlow() {
+        return flow;
+    }
+
+    /**
+     * Returns the index of the given node in the data flow.
+     *
+     * @throws IllegalArgumentException if the node isn't part of the data flow
+     */
+    public int getNodeIndex(DataFlowNode node) {
+        Integer index = nodeIndices.get(node);
+        if (index == null) {
+            throw new IllegalArgumentException("Not a node of the data flow: " + node);
+        }
+        return index;
+    }
+
+    public int getAccessCount() {
+        return accesses.size();
+    }
+
+    public Access getAccess(int id) {
+        return accesses.get(id);
+    }
+
+    /**
+     * Returns the accesses of the given node, in their order.
+     */
+    public List<Access> getAccesses(DataFlowNode node) {
+        int index = getNodeIndex(node);
+        return Collections.unmodifiableList(accesses.subList(firstAccessIds[index], firstAccessIds[index + 1]));
+    }
+
+    /**
+     * Returns the accesses whose ids are set in the given bit set, in the
+     * order of their ids.
+     */
+    public List<Access> getAccesses(BitSet ids) {
+        List<Access> result = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(accesses.get(id));
+        }
+        return result;
+    }
+
+    public int getVariableCount() {
+        return variableNames.size();
+    }
+
+    /**
+     * Returns the id of the given variable, or -1 if it isn't accessed.
+     */
+    public int getVariableId(String variableName) {
+        Integer id = variableIds.get(variableName);
+        return id == null ? -1 : id;
+    }
+
+    public String getVariableName(int variableId) {
+        return variableNames.get(variableId);
+    }
+
+    /**
+     * Returns the ids of all the accesses of the given variable. The bit set
+     * must not be modified.
+     */
+    /* default */ BitSet getAccessIds(int variableId) {
+        return accessesByVariable.get(variableId);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Links the references of the variables to their reaching definitions, and
+ * the definitions to the references they reach.
+ */
+public class DefUseChains {
+
+    private final List<List<Access>> definitionsByUse;
+    private final List<List<Access>> usesByDefinition;
+
+    /**
+     * Builds the chains from solved reaching definitions.
+     *
+     * @param table the numbered accesses of the data flow
+     * @param reachingDefinitions the solved reaching definitions of the table
+     */
+    public DefUseChains(AccessTable table, ReachingDefinitions reachingDefinitions) {
+        int count = table.getAccessCount();
+        definitionsByUse = new ArrayList<>(Collections.nCopies(count, Collections.<Access>emptyList()));
+        usesByDefinition = new ArrayList<>(Collections.nCopies(count, Collections.<Access>emptyList()));
+        for (int id = 0; id < count; id++) {
+            Access use = table.getAccess(id);
+            if (!use.getVariableAccess().isReference()) {
+                continue;
+            }
+            List<Access> definitions = reachingDefinitions.getReachingDefinitions(use);
+            definitionsByUse.set(id, definitions);
+            for (Access definition : definitions) {
+                List<Access> uses = usesByDefinition.get(definition.getId());
+                if (uses.isEmpty()) {
+                    uses = new ArrayList<>();
+                    usesByDefinition.set(definition.getId(), uses);
+                }
+                uses.add(use);
+            }
+        }
+    }
+
+    /**
+     * Returns the definitions which may reach the given reference.
+     */
+    public List<Access> getDefinitions(Access use) {
+        return Collections.unmodifiableList(definitionsByUse.get(use.getId()));
+    }
+
+    /**
+     * Returns the references which the given definition may reach.
+     */
+    public List<Access> getUses(Access definition) {
+        return Collections.unmodifiableList(usesByDefinition.get(definition.getId()));
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+
+/**
+ * A monotone data flow analysis of a data flow graph, whose facts are the
+ * bits of a {@link BitSet}, e.g. accesses or variables numbered by an
+ * {@link AccessTable}. Each node generates and kills some facts, and the
+ * facts flowing into a node are the union of the facts flowing out of its
+ * predecessors, i.e. a fact holds if it holds on some path.
+ *
+ * <p>The analysis is solved with a worklist over the nodes, so it
+ * terminates after a number of steps which is linear in the size of the
+ * graph times the number of facts, however many paths there are through
+ * the graph. The facts of a node are exact for all the paths reaching it,
+ * with any number of loop iterations.
+ *
+ * <p>A forward analysis only follows the nodes which are reachable from the
+ * start node of the data flow, the facts of the other nodes are empty.
+ */
+public abstract class GenKillAnalysis {
+
+    private final AccessTable table;
+    private final boolean forward;
+    private BitSet[] in;
+    private BitSet[] out;
+    private BitSet reachable;
+
+    /**
+     * @param table the numbered accesses of the data flow
+     * @param forward whether the facts flow from a node to its children, or
+     *                from a node to its parents
+     */
+    protected GenKillAnalysis(AccessTable table, boolean forward) {
+        this.table = table;
+        this.forward = forward;
+    }
+
+    protected AccessTable getAccessTable() {
+        return table;
+    }
+
+    /**
+     * Computes the facts generated and killed by the given node. The facts
+     * flowing through the node, in the direction of the analysis, are the
+     * generated ones and the ones flowing into it which aren't killed.
+     *
+     * @param node the node
+     * @param gen the facts generated by the node, to be set
+     * @param kill the facts killed by the node, to be set
+     */
+    protected abstract void computeGenKill(DataFlowNode node, BitSet gen, BitSet kill);
+
+    /**
+     * Solves the analysis. The facts of the nodes are available afterwards.
+     */
+    public void solve() {
+        List<DataFlowNode> flow = table.getFlow();
+        int size = flow.size();
+        BitSet[] gen = new BitSet[size];
+        BitSet[] kill = new BitSet[size];
+        in = new BitSet[size];
+        out = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            gen[i] = new BitSet();
+            kill[i] = new BitSet();
+            computeGenKill(flow.get(i), gen[i], kill[i]);
+            in[i] = new BitSet();
+            out[i] = new BitSet();
+        }
+        if (size == 0) {
+            reachable = new BitSet();
+            return;
+        }
+        reachable = computeReachableNodes();
+
+        // facts flow from the "source" side of each node to its "target" side
+        BitSet[] source = forward ? in : out;
+        BitSet[] target = forward ? out : in;
+
+        // a circular queue of node indices, each node being queued at most once
+        int[] queue = new int[size];
+        boolean[] queued = new boolean[size];
+        int head = 0;
+        int count = 0;
+        if (forward) {
+            // the nodes in the order of the flow, which mostly follows the edges
+            for (int index = reachable.nextSetBit(0); index >= 0; index = reachable.nextSetBit(index + 1)) {
+                queue[count++] = index;
+                queued[index] = true;
+            }
+        } else {
+            for (int i = size - 1; i >= 0; i--) {
+                queue[count++] = i;
+                queued[i] = true;
+            }
+        }
+
+        BitSet facts = new BitSet();
+        while (count > 0) {
+            int index = queue[head];
+            head = (head + 1) % size;
+            count--;
+            queued[index] = false;
+
+            DataFlowNode node = flow.get(index);
+            for (DataFlowNode neighbour : forward ? node.getParents() : node.getChildren()) {
+                source[index].or(target[table.getNodeIndex(neighbour)]);
+            }
+            facts.clear();
+            facts.or(source[index]);
+            facts.andNot(kill[index]);
+            facts.or(gen[index]);
+            if (facts.equals(target[index])) {
+                continue;
+            }
+            target[index].clear();
+            target[index].or(facts);
+            for (DataFlowNode successor : forward ? node.getChildren() : node.getParents()) {
+                int successorIndex = table.getNodeIndex(successor);
+                if (!queued[successorIndex]) {
+                    queue[(head + count) % size] = successorIndex;
+                    queued[successorIndex] = true;
+                    count++;
+                }
+            }
+        }
+    }
+
+    private BitSet computeReachableNodes() {
+        List<DataFlowNode> flow = table.getFlow();
+        BitSet result = new BitSet(flow.size());
+        Deque<DataFlowNode> stack = new ArrayDeque<>();
+        result.set(0);
+        stack.push(flow.get(0));
+        while (!stack.isEmpty()) {
+            for (DataFlowNode child : stack.pop().getChildren()) {
+                int index = table.getNodeIndex(child);
+                if (!result.get(index)) {
+                    result.set(index);
+                    stack.push(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the given node is reachable from the start node of the
+     * data flow, i.e. whether it's part of some path through the data flow.
+     */
+    public boolean isReachable(DataFlowNode node) {
+        return reachable.get(table.getNodeIndex(node));
+    }
+
+    /**
+     * Returns the facts which hold before the given node, in the order of
+     * the data flow. The bit set must not be modified.
+     */
+    public BitSet getIn(DataFlowNode node) {
+        return in[table.getNodeIndex(node)];
+    }
+
+    /**
+     * Returns the facts which hold after the given node, in the order of the
+     * data flow. The bit set must not be modified.
+     */
+    public BitSet getOut(DataFlowNode node) {
+        return out[table.getNodeIndex(node)];
+    }
+}
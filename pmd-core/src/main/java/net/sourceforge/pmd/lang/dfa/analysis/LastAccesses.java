@@ -0,0 +1,60 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+
+/**
+ * Computes the accesses to each variable which may be the last ones before
+ * a node, whatever their type: definition, reference or undefinition. The
+ * pairs of consecutive accesses to a variable are what the data flow
+ * anomaly analysis checks.
+ */
+public class LastAccesses extends GenKillAnalysis {
+
+    public LastAccesses(AccessTable table) {
+        super(table, true);
+    }
+
+    @Override
+    protected void computeGenKill(DataFlowNode node, BitSet gen, BitSet kill) {
+        AccessTable table = getAccessTable();
+        for (Access access : table.getAccesses(node)) {
+            BitSet sameVariable = table.getAccessIds(table.getVariableId(access.getVariableName()));
+            // the access replaces the previous accesses of the variable
+            kill.or(sameVariable);
+            gen.andNot(sameVariable);
+            gen.set(access.getId());
+        }
+    }
+
+    /**
+     * Returns the accesses to the same variable which may directly precede
+     * the given access on some path through the data flow, in the order of
+     * the data flow.
+     *
+     * @param access an access of the data flow
+     * @return the preceding accesses, empty if there are none
+     */
+    public List<Access> getPrecedingAccesses(Access access) {
+        AccessTable table = getAccessTable();
+        List<Access> nodeAccesses = table.getAccesses(access.getNode());
+        // the accesses of a node are consecutive
+        for (int id = access.getId() - 1; id >= nodeAccesses.get(0).getId(); id--) {
+            Access previous = table.getAccess(id);
+            if (previous.getVariableName().equals(access.getVariableName())) {
+                return Collections.singletonList(previous);
+            }
+        }
+
+        BitSet preceding = (BitSet) getIn(access.getNode()).clone();
+        preceding.and(table.getAccessIds(table.getVariableId(access.getVariableName())));
+        return table.getAccesses(preceding);
+    }
+}
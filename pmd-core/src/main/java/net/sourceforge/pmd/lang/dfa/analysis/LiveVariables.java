@@ -0,0 +1,74 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import java.util.BitSet;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+
+/**
+ * Computes the variables which are live before and after each node, i.e.
+ * which may be referenced on some path from the node before being defined
+ * again or undefined. The facts are the ids of the variables in the
+ * {@link AccessTable}.
+ */
+public class LiveVariables extends GenKillAnalysis {
+
+    public LiveVariables(AccessTable table) {
+        super(table, false);
+    }
+
+    @Override
+    protected void computeGenKill(DataFlowNode node, BitSet gen, BitSet kill) {
+        AccessTable table = getAccessTable();
+        List<Access> accesses = table.getAccesses(node);
+        // backwards, from the end of the node to its start
+        for (int i = accesses.size() - 1; i >= 0; i--) {
+            Access access = accesses.get(i);
+            int variableId = table.getVariableId(access.getVariableName());
+            if (access.getVariableAccess().isReference()) {
+                gen.set(variableId);
+            } else {
+                gen.clear(variableId);
+                kill.set(variableId);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given variable is live after the given node.
+     */
+    public boolean isLiveAfter(DataFlowNode node, String variableName) {
+        int variableId = getAccessTable().getVariableId(variableName);
+        return variableId >= 0 && getOut(node).get(variableId);
+    }
+
+    /**
+     * Returns whether the given variable is live before the given node.
+     */
+    public boolean isLiveBefore(DataFlowNode node, String variableName) {
+        int variableId = getAccessTable().getVariableId(variableName);
+        return variableId >= 0 && getIn(node).get(variableId);
+    }
+
+    /**
+     * Returns whether the variable of the given access is live right after
+     * the access, e.g. whether the value assigned by a definition may be
+     * used.
+     */
+    public boolean isLiveAfter(Access access) {
+        AccessTable table = getAccessTable();
+        List<Access> nodeAccesses = table.getAccesses(access.getNode());
+        int lastId = nodeAccesses.get(nodeAccesses.size() - 1).getId();
+        for (int id = access.getId() + 1; id <= lastId; id++) {
+            Access next = table.getAccess(id);
+            if (next.getVariableName().equals(access.getVariableName())) {
+                return next.getVariableAccess().isReference();
+            }
+        }
+        return isLiveAfter(access.getNode(), access.getVariableName());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+
+/**
+ * Computes the definitions of each variable which may reach a node, i.e.
+ * for which there is a path from the definition to the node on which the
+ * variable isn't defined again, nor undefined.
+ */
+public class ReachingDefinitions extends GenKillAnalysis {
+
+    public ReachingDefinitions(AccessTable table) {
+        super(table, true);
+    }
+
+    @Override
+    protected void computeGenKill(DataFlowNode node, BitSet gen, BitSet kill) {
+        AccessTable table = getAccessTable();
+        for (Access access : table.getAccesses(node)) {
+            if (access.getVariableAccess().isReference()) {
+                continue;
+            }
+            BitSet sameVariable = table.getAccessIds(table.getVariableId(access.getVariableName()));
+            kill.or(sameVariable);
+            gen.andNot(sameVariable);
+            if (access.getVariableAccess().isDefinition()) {
+                gen.set(access.getId());
+            }
+        }
+    }
+
+    /**
+     * Returns the definitions of the variable of the given access which may
+     * reach it, in the order of the data flow.
+     *
+     * @param access an access of the data flow
+     * @return the reaching definitions, empty if there are none
+     */
+    public List<Access> getReachingDefinitions(Access access) {
+        AccessTable table = getAccessTable();
+        List<Access> nodeAccesses = table.getAccesses(access.getNode());
+        for (int id = access.getId() - 1; id >= nodeAccesses.get(0).getId(); id--) {
+            Access previous = table.getAccess(id);
+            if (previous.getVariableName().equals(access.getVariableName())) {
+                if (previous.getVariableAccess().isDefinition()) {
+                    return Collections.singletonList(previous);
+                } else if (previous.getVariableAccess().isUndefinition()) {
+                    return Collections.emptyList();
+                }
+            }
+        }
+
+        BitSet reaching = (BitSet) getIn(access.getNode()).clone();
+        reaching.and(table.getAccessIds(table.getVariableId(access.getVariableName())));
+        return table.getAccesses(reaching);
+    }
+}
@@ -4,14 +4,15 @@
 
 package net.sourceforge.pmd.lang.rule;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,9 +39,39 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      */
     protected Map<RuleSet, List<Rule>> ruleSetRules = new LinkedHashMap<>();
 
+    /**
+     * The node names visited by the rules, interned to dense ids. The ids
+     * index the node arrays of the current AST.
+     */
+    private Map<String, Integer> nodeKindIds;
+
+    /**
+     * The node kind ids of the node classes seen so far, or -1 for the nodes
+     * no rule visits.
+     */
+    private final Map<Class<?>, Integer> nodeKindsByClass = new IdentityHashMap<>();
+
+    /**
+     * The rules participating in the RuleChain, resolved once to the
+     * underlying rules and the ids of the nodes they visit.
+     */
+    private List<ChainedRuleSet> chainedRuleSets;
+
+    /**
+     * The nodes of the current AST, by node kind id. Only the first
+     * {@link #nodeCounts} entries of each array are used.
+     */
+    private Node[][] nodesByKind;
+    private int[] nodeCounts;
+
     /**
      * This is a mapping from node names to nodes instances for the current AST.
+     * The lists are views of the nodes indexed by kind.
+     *
+     * @deprecated The nodes are indexed by node kind, use {@link #indexNode(Node)}
+     *     to add nodes. This field will be removed with PMD 7.0.0.
      */
+    @Deprecated
     protected Map<String, List<Node>> nodeNameToNodes;
 
     /**
@@ -61,57 +92,57 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
     @Override
     public void visitAll(List<Node> nodes, RuleContext ctx) {
         initialize();
-        clear();
 
-        // Perform a visitation of the AST to index nodes which need visiting by
-        // type
-        try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_VISIT)) {
-            indexNodes(nodes, ctx);
-        }
-
-        // For each RuleSet, only if this source file applies
-        try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE)) {
-            for (Map.Entry<RuleSet, List<Rule>> entry : ruleSetRules.entrySet()) {
-                RuleSet ruleSet = entry.getKey();
-                if (!ruleSet.applies(ctx.getSourceCodeFile())) {
-                    continue;
-                }
+        try {
+            // Perform a visitation of the AST to index nodes which need visiting by
+            // type
+            try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_VISIT)) {
+                indexNodes(nodes, ctx);
+            }
 
-                // For each rule, allow it to visit the nodes it desires
-                for (Rule rule : entry.getValue()) {
-                    int visits = 0;
-                    if (!RuleSet.applies(rule, ctx.getLanguageVersion())) {
+            // For each RuleSet, only if this source file applies
+            try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE)) {
+                for (ChainedRuleSet chainedRuleSet : chainedRuleSets) {
+                    if (!chainedRuleSet.ruleSet.applies(ctx.getSourceCodeFile())) {
                         continue;
                     }
-                    try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE, rule.getName())) {
-                        final List<String> nodeNames = rule.getRuleChainVisits();
-                        for (int j = 0; j < nodeNames.size(); j++) {
-                            List<Node> ns = nodeNameToNodes.get(nodeNames.get(j));
-                            for (Node node : ns) {
-                                // Visit with underlying Rule, not the RuleReference
-                                Rule actualRule = rule;
-                                while (actualRule instanceof RuleReference) {
-                                    actualRule = ((RuleReference) actualRule).getRule();
+
+                    // For each rule, allow it to visit the nodes it desires
+                    for (ChainedRule chainedRule : chainedRuleSet.rules) {
+                        Rule rule = chainedRule.rule;
+                        int visits = 0;
+                        if (!RuleSet.applies(rule, ctx.getLanguageVersion())) {
+                            continue;
+                        }
+                        try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULECHAIN_RULE, rule.getName())) {
+                            for (int kind : chainedRule.nodeKinds) {
+                                Node[] ns = nodesByKind[kind];
+                                int count = nodeCounts[kind];
+                                for (int i = 0; i < count; i++) {
+                                    // Visit with underlying Rule, not the RuleReference
+                                    visit(chainedRule.actualRule, ns[i], ctx);
                                 }
-                                visit(actualRule, node, ctx);
+                                visits += count;
                             }
-                            visits += ns.size();
-                        }
-                        rcto.close(visits);
-                    } catch (RuntimeException e) {
-                        if (ctx.isIgnoreExceptions()) {
-                            ctx.getReport().addError(new Report.ProcessingError(e, ctx.getSourceCodeFilename()));
-
-                            if (LOG.isLoggable(Level.WARNING)) {
-                                LOG.log(Level.WARNING, "Exception applying rule " + rule.getName() + " on file "
-                                        + ctx.getSourceCodeFilename() + ", continuing with next rule", e);
+                            rcto.close(visits);
+                        } catch (RuntimeException e) {
+                            if (ctx.isIgnoreExceptions()) {
+                                ctx.getReport().addError(new Report.ProcessingError(e, ctx.getSourceCodeFilename()));
+
+                                if (LOG.isLoggable(Level.WARNING)) {
+                                    LOG.log(Level.WARNING, "Exception applying rule " + rule.getName() + " on file "
+                                            + ctx.getSourceCodeFilename() + ", continuing with next rule", e);
+                                }
+                            } else {
+                                throw e;
                             }
-                        } else {
-                            throw e;
                         }
                     }
                 }
             }
+        } finally {
+            // don't keep the nodes of this AST alive until the next file is visited
+            clear();
         }
     }
 
@@ -129,10 +160,48 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      * Index a single node for visitation by rules.
      */
     protected void indexNode(Node node) {
-        List<Node> nodes = nodeNameToNodes.get(node.getXPathNodeName());
-        if (nodes != null) {
-            nodes.add(node);
+        int kind;
+        if (hasNodeNamesByClass()) {
+            Integer classKind = nodeKindsByClass.get(node.getClass());
+            if (classKind == null) {
+                classKind = getNodeKind(node);
+                nodeKindsByClass.put(node.getClass(), classKind);
+            }
+            kind = classKind;
+        } else {
+            kind = getNodeKind(node);
+        }
+        if (kind >= 0) {
+            addNode(kind, node);
+        }
+    }
+
+    /**
+     * Returns whether all the nodes of a class have the same XPath node name,
+     * in which case the node kind of each class is only looked up once. This
+     * is the case for most languages, but not for the ones where the name of
+     * a node depends on its content, e.g. XML.
+     *
+     * @return <code>true</code> if the XPath node name only depends on the node class
+     */
+    protected boolean hasNodeNamesByClass() {
+        return true;
+    }
+
+    private int getNodeKind(Node node) {
+        Integer kind = nodeKindIds.get(node.getXPathNodeName());
+        return kind == null ? -1 : kind;
+    }
+
+    private void addNode(int kind, Node node) {
+        Node[] nodes = nodesByKind[kind];
+        int count = nodeCounts[kind];
+        if (count == nodes.length) {
+            nodes = Arrays.copyOf(nodes, count * 2);
+            nodesByKind[kind] = nodes;
         }
+        nodes[count] = node;
+        nodeCounts[kind] = count + 1;
     }
 
     /**
@@ -144,19 +213,22 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      * possible to ensure that manipulation of the Rules is no longer occurring.
      */
     protected void initialize() {
-        if (nodeNameToNodes != null) {
+        if (nodeKindIds != null) {
             return;
         }
 
-        // Determine all node types that need visiting
-        Set<String> visitedNodes = new HashSet<>();
+        // Determine all node types that need visiting, and resolve the rules
+        // visiting them
+        Map<String, Integer> kindIds = new HashMap<>();
+        chainedRuleSets = new ArrayList<>(ruleSetRules.size());
         for (Iterator<Map.Entry<RuleSet, List<Rule>>> entryIterator = ruleSetRules.entrySet().iterator(); entryIterator
                 .hasNext();) {
             Map.Entry<RuleSet, List<Rule>> entry = entryIterator.next();
+            List<ChainedRule> chainedRules = new ArrayList<>(entry.getValue().size());
             for (Iterator<Rule> ruleIterator = entry.getValue().iterator(); ruleIterator.hasNext();) {
                 Rule rule = ruleIterator.next();
                 if (rule.isRuleChain()) {
-                    visitedNodes.addAll(rule.getRuleChainVisits());
+                    chainedRules.add(new ChainedRule(rule, internNodeKinds(kindIds, rule.getRuleChainVisits())));
                 } else {
                     // Drop rules which do not participate in the rule chain.
                     ruleIterator.remove();
@@ -165,17 +237,37 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
             // Drop RuleSets in which all Rules have been dropped.
             if (entry.getValue().isEmpty()) {
                 entryIterator.remove();
+            } else {
+                chainedRuleSets.add(new ChainedRuleSet(entry.getKey(), chainedRules));
             }
         }
 
-        // Setup the data structure to manage mapping node names to node
+        // Setup the data structure to manage mapping node kinds to node
         // instances. We intend to reuse this data structure between
         // visits to different ASTs.
+        nodesByKind = new Node[kindIds.size()][];
+        for (int i = 0; i < nodesByKind.length; i++) {
+            nodesByKind[i] = new Node[100];
+        }
+        nodeCounts = new int[kindIds.size()];
         nodeNameToNodes = new HashMap<>();
-        for (String s : visitedNodes) {
-            List<Node> nodes = new ArrayList<>(100);
-            nodeNameToNodes.put(s, nodes);
+        for (Map.Entry<String, Integer> kindId : kindIds.entrySet()) {
+            nodeNameToNodes.put(kindId.getKey(), new NodeKindList(kindId.getValue()));
+        }
+        nodeKindIds = kindIds;
+    }
+
+    private static int[] internNodeKinds(Map<String, Integer> kindIds, List<String> nodeNames) {
+        int[] kinds = new int[nodeNames.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            Integer kind = kindIds.get(nodeNames.get(i));
+            if (kind == null) {
+                kind = kindIds.size();
+                kindIds.put(nodeNames.get(i), kind);
+            }
+            kinds[i] = kind;
         }
+        return kinds;
     }
 
     /**
@@ -183,8 +275,74 @@ public abstract class AbstractRuleChainVisitor implements RuleChainVisitor {
      * between visiting different ASTs.
      */
     protected void clear() {
-        for (List<Node> l : nodeNameToNodes.values()) {
-            l.clear();
+        for (int i = 0; i < nodesByKind.length; i++) {
+            Arrays.fill(nodesByKind[i], 0, nodeCounts[i], null);
+            nodeCounts[i] = 0;
+        }
+    }
+
+    /**
+     * The nodes of a kind in the current AST, as a list.
+     */
+    private final class NodeKindList extends AbstractList<Node> {
+        private final int kind;
+
+        NodeKindList(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        public Node get(int index) {
+            if (index < 0 || index >= nodeCounts[kind]) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + nodeCounts[kind]);
+            }
+            return nodesByKind[kind][index];
+        }
+
+        @Override
+        public int size() {
+            return nodeCounts[kind];
+        }
+
+        @Override
+        public void add(int index, Node node) {
+            if (index != nodeCounts[kind]) {
+                throw new UnsupportedOperationException("Nodes can only be added at the end");
+            }
+            addNode(kind, node);
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(nodesByKind[kind], 0, nodeCounts[kind], null);
+            nodeCounts[kind] = 0;
+        }
+    }
+
+    private static final class ChainedRuleSet {
+        private final RuleSet ruleSet;
+        private final List<ChainedRule> rules;
+
+        ChainedRuleSet(RuleSet ruleSet, List<ChainedRule> rules) {
+            this.ruleSet = ruleSet;
+            this.rules = rules;
+        }
+    }
+
+    private static final class ChainedRule {
+        private final Rule rule;
+        private final Rule actualRule;
+        private final int[] nodeKinds;
+
+        ChainedRule(Rule rule, int[] nodeKinds) {
+            this.rule = rule;
+            this.nodeKinds = nodeKinds;
+
+            Rule underlyingRule = rule;
+            while (underlyingRule instanceof RuleReference) {
+                underlyingRule = ((RuleReference) underlyingRule).getRule();
+            }
+            this.actualRule = underlyingRule;
         }
     }
 }
@@ -145,6 +145,12 @@ public class XPathRule extends AbstractRule {
         xpathRuleQuery = XPATH_1_0.equals(version) ? new JaxenXPathRuleQuery() : new SaxonXPathRuleQuery();
     }
 
+    @Override
+    public void end(RuleContext ctx) {
+        // The analysis of the file is done
+        SaxonXPathRuleQuery.releaseDocumentNode();
+    }
+
     @Override
     public List<String> getRuleChainVisits() {
         if (xPathRuleQueryNeedsInitialization()) {
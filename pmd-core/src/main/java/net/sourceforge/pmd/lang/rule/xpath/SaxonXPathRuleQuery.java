@@ -5,9 +5,12 @@
 package net.sourceforge.pmd.lang.rule.xpath;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.RuleContext;
@@ -17,8 +20,24 @@ import net.sourceforge.pmd.lang.ast.xpath.saxon.ElementNode;
 import net.sourceforge.pmd.lang.xpath.Initializer;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 
+import net.sf.saxon.Configuration;
+import net.sf.saxon.expr.AxisExpression;
+import net.sf.saxon.expr.ContextItemExpression;
+import net.sf.saxon.expr.Expression;
+import net.sf.saxon.expr.FilterExpression;
+import net.sf.saxon.expr.LetExpression;
+import net.sf.saxon.expr.PathExpression;
+import net.sf.saxon.expr.RootExpression;
+import net.sf.saxon.expr.StaticProperty;
+import net.sf.saxon.expr.Token;
+import net.sf.saxon.expr.VennExpression;
+import net.sf.saxon.om.Axis;
 import net.sf.saxon.om.Item;
 import net.sf.saxon.om.ValueRepresentation;
+import net.sf.saxon.pattern.AnyNodeTest;
+import net.sf.saxon.pattern.NameTest;
+import net.sf.saxon.pattern.NodeTest;
+import net.sf.saxon.sort.DocumentSorter;
 import net.sf.saxon.sxpath.AbstractStaticContext;
 import net.sf.saxon.sxpath.IndependentContext;
 import net.sf.saxon.sxpath.XPathDynamicContext;
@@ -27,6 +46,7 @@ import net.sf.saxon.sxpath.XPathExpression;
 import net.sf.saxon.sxpath.XPathStaticContext;
 import net.sf.saxon.sxpath.XPathVariable;
 import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.type.Type;
 import net.sf.saxon.value.AtomicValue;
 import net.sf.saxon.value.BigIntegerValue;
 import net.sf.saxon.value.BooleanValue;
@@ -43,24 +63,30 @@ import net.sf.saxon.value.UntypedAtomicValue;
  */
 public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
 
-    private static final int MAX_CACHE_SIZE = 20;
-    private static final Map<Node, DocumentNode> CACHE = new LinkedHashMap<Node, DocumentNode>(MAX_CACHE_SIZE) {
-        private static final long serialVersionUID = -7653916493967142443L;
+    private static final Logger LOG = Logger.getLogger(SaxonXPathRuleQuery.class.getName());
 
-        @Override
-        protected boolean removeEldestEntry(final Map.Entry<Node, DocumentNode> eldest) {
-            return size() > MAX_CACHE_SIZE;
-        }
-    };
+    /**
+     * The Saxon representation of the AST analyzed by the current thread. It's built by the first query evaluated
+     * on the AST, reused by the other ones, and released by {@link #releaseDocumentNode()} once the analysis of the
+     * file is done. Each thread analyzes one file at a time, so no synchronization is needed.
+     */
+    private static final ThreadLocal<CurrentDocument> CURRENT_DOCUMENT = new ThreadLocal<>();
 
     /**
      * Representation of an XPath query, created at {@link #initializeXPathExpression()} using {@link #xpath}.
      */
     private XPathExpression xpathExpression;
 
+    /**
+     * Representation of the XPath query rewritten to be evaluated from each node visited by the RuleChain, instead
+     * of from the root node, or null if the query cannot use the RuleChain. Created at
+     * {@link #initializeXPathExpression()}.
+     */
+    private XPathExpression ruleChainExpression;
+
     /**
      * Holds the static context later used to match the variables in the dynamic context in
-     * {@link #createDynamicContext(ElementNode)}. Created at {@link #initializeXPathExpression()}
+     * {@link #createDynamicContext(XPathExpression, ElementNode)}. Created at {@link #initializeXPathExpression()}
      * using the properties descriptors in {@link #properties}.
      */
     private List<XPathVariable> xpathVariables;
@@ -81,8 +107,11 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
             // Map AST Node -> Saxon Node
             final ElementNode rootElementNode = documentNode.nodeToElementNode.get(node);
 
-            final XPathDynamicContext xpathDynamicContext = createDynamicContext(rootElementNode);
-            final List<ElementNode> nodes = xpathExpression.evaluate(xpathDynamicContext);
+            // Nodes indexed by the RuleChain are the start of the rewritten query, others the root of the original one
+            final XPathExpression expression = ruleChainExpression != null
+                    && ruleChainVisits.contains(node.getXPathNodeName()) ? ruleChainExpression : xpathExpression;
+            final XPathDynamicContext xpathDynamicContext = createDynamicContext(expression, rootElementNode);
+            final List<ElementNode> nodes = expression.evaluate(xpathDynamicContext);
 
             /*
              Map List of Saxon Nodes -> List of AST Nodes, which were detected to match the XPath expression
@@ -98,9 +127,21 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
         }
     }
 
+    @Override
+    public List<String> getRuleChainVisits() {
+        try {
+            initializeXPathExpression();
+        } catch (final RuntimeException e) {
+            // The query is then evaluated from the root node, which reports the error
+            LOG.log(Level.FINE, "Unable to use RuleChain for XPath: " + xpath, e);
+        }
+        return super.getRuleChainVisits();
+    }
+
     /**
-     * Attempt to create a dynamic context on which to evaluate the {@link #xpathExpression}.
+     * Attempt to create a dynamic context on which to evaluate the given expression.
      *
+     * @param expression  the expression to evaluate, either {@link #xpathExpression} or {@link #ruleChainExpression}
      * @param elementNode the node on which to create the context; generally this node is the root node of the Saxon
      *                    Tree
      * @return the dynamic context on which to run the query
@@ -108,8 +149,9 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
      * variable, when setting up the dynamic context; or if the supplied value contains a node that does not belong to
      * this Configuration (or another Configuration that shares the same namePool)
      */
-    private XPathDynamicContext createDynamicContext(final ElementNode elementNode) throws XPathException {
-        final XPathDynamicContext dynamicContext = xpathExpression.createDynamicContext(elementNode);
+    private XPathDynamicContext createDynamicContext(final XPathExpression expression, final ElementNode elementNode)
+            throws XPathException {
+        final XPathDynamicContext dynamicContext = expression.createDynamicContext(elementNode);
 
         // Set variable values on the dynamic context
         for (final XPathVariable xpathVariable : xpathVariables) {
@@ -143,8 +185,8 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
 
     /**
      * Gets the DocumentNode representation for the whole AST in which the node is, that is, if the node is not the root
-     * of the AST, then the AST is traversed all the way up until the root node is found. If the DocumentNode was
-     * cached because this method was previously called, then a new DocumentNode will not be instanced.
+     * of the AST, then the AST is traversed all the way up until the root node is found. If the DocumentNode of this
+     * AST was already created by the current thread, then a new DocumentNode will not be instanced.
      *
      * @param node the node from which the root node will be looked for.
      * @return the DocumentNode representing the whole AST
@@ -152,15 +194,20 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
     private DocumentNode getDocumentNodeForRootNode(final Node node) {
         final Node root = getRootNode(node);
 
-        DocumentNode documentNode;
-        synchronized (CACHE) {
-            documentNode = CACHE.get(root);
-            if (documentNode == null) {
-                documentNode = new DocumentNode(root);
-                CACHE.put(root, documentNode);
-            }
+        CurrentDocument currentDocument = CURRENT_DOCUMENT.get();
+        if (currentDocument == null || currentDocument.root != root) {
+            currentDocument = new CurrentDocument(root, new DocumentNode(root));
+            CURRENT_DOCUMENT.set(currentDocument);
         }
-        return documentNode;
+        return currentDocument.documentNode;
+    }
+
+    /**
+     * Releases the DocumentNode created by the current thread for the AST it analyzed, so that the AST can be
+     * garbage collected. This is called once the rules have been applied on a file.
+     */
+    public static void releaseDocumentNode() {
+        CURRENT_DOCUMENT.remove();
     }
 
     /**
@@ -199,7 +246,7 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
             /*
             Create XPathVariables for later use. It is a Saxon quirk that XPathVariables must be defined on the
             static context, and reused later to associate an actual value on the dynamic context creation, in
-            createDynamicContext(ElementNode).
+            createDynamicContext(XPathExpression, ElementNode).
             */
             xpathVariables = new ArrayList<>();
             for (final PropertyDescriptor<?> propertyDescriptor : super.properties.keySet()) {
@@ -210,15 +257,115 @@ public class SaxonXPathRuleQuery extends AbstractXPathRuleQuery {
                 }
             }
 
-            // TODO Come up with a way to make use of RuleChain. I had hacked up
-            // an approach which used Jaxen's stuff, but that only works for
-            // 1.0 compatibility mode. Rather do it right instead of kludging.
-            xpathExpression = xpathEvaluator.createExpression(super.xpath);
+            final XPathExpression expression = xpathEvaluator.createExpression(super.xpath);
+
+            /*
+            Attempt to use the RuleChain with this XPath query. The query is compiled a second time, and the
+            compiled expression is rewritten so that each path starting with //TypeA starts with self::TypeA
+            from the context node instead. See toRuleChainPath(Expression, Set).
+            */
+            final XPathExpression rewrittenExpression = xpathEvaluator.createExpression(super.xpath);
+            final Set<String> visitedNodeNames = new LinkedHashSet<>();
+            if (toRuleChainPath(rewrittenExpression.getInternalExpression(), xpathEvaluator.getConfiguration(),
+                    visitedNodeNames) >= 0) {
+                ruleChainExpression = rewrittenExpression;
+                ruleChainVisits.addAll(visitedNodeNames);
+            } else if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Unable to use RuleChain for XPath: " + xpath);
+            }
+
+            xpathExpression = expression;
         } catch (final XPathException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Rewrites the given compiled expression, so that it can be evaluated by the RuleChain from each node it starts
+     * with instead of from the root node, with the same results. The queries should look like //TypeA or
+     * //TypeA | //TypeB, and may be followed by predicates, variables and child or attribute steps. The leading
+     * //TypeA step, which Saxon compiles as the descendant axis of the root, is replaced by the self axis of the
+     * context item.
+     *
+     * <p>Positional predicates, other axes after the first step, and unions of paths with different lengths are not
+     * supported: their results would differ, or contain duplicates, when evaluated from each node separately.
+     *
+     * @param expression    the compiled expression, which is rewritten in place
+     * @param configuration the Saxon configuration the expression has been compiled with
+     * @param nodeNames  the names of the nodes the rewritten paths start with
+     * @return the number of steps after the first one, or -1 if the expression cannot be used with the RuleChain,
+     *         in which case it is left partially rewritten
+     */
+    private static int toRuleChainPath(final Expression expression, final Configuration configuration,
+            final Set<String> nodeNames) {
+        if (expression instanceof DocumentSorter) {
+            return toRuleChainPath(((DocumentSorter) expression).getBaseExpression(), configuration, nodeNames);
+        } else if (expression instanceof LetExpression) {
+            // Variables bound to properties
+            final LetExpression letExpression = (LetExpression) expression;
+            if ((letExpression.getSequence().getDependencies() & StaticProperty.DEPENDS_ON_FOCUS) != 0) {
+                return -1;
+            }
+            return toRuleChainPath(letExpression.getAction(), configuration, nodeNames);
+        } else if (expression instanceof FilterExpression) {
+            final FilterExpression filterExpression = (FilterExpression) expression;
+            if (filterExpression.isPositional(configuration.getTypeHierarchy())) {
+                return -1;
+            }
+            return toRuleChainPath(filterExpression.getBaseExpression(), configuration, nodeNames);
+        } else if (expression instanceof VennExpression) {
+            final VennExpression vennExpression = (VennExpression) expression;
+            if (vennExpression.getOperator() != Token.UNION) {
+                return -1;
+            }
+            final Expression[] operands = vennExpression.getOperands();
+            final int lhsSteps = toRuleChainPath(operands[0], configuration, nodeNames);
+            final int rhsSteps = toRuleChainPath(operands[1], configuration, nodeNames);
+            return lhsSteps == rhsSteps ? lhsSteps : -1;
+        } else if (expression instanceof PathExpression) {
+            final PathExpression pathExpression = (PathExpression) expression;
+            final Expression start = pathExpression.getStartExpression();
+            final Expression step = pathExpression.getStepExpression();
+            if (start instanceof RootExpression) {
+                // Must be the first step of something like //TypeA
+                final NodeTest nodeTest = getNodeTest(step, Axis.DESCENDANT);
+                if (!(nodeTest instanceof NameTest) || nodeTest.getPrimitiveType() != Type.ELEMENT) {
+                    return -1;
+                }
+                nodeNames.add(configuration.getNamePool().getLocalName(((NameTest) nodeTest).getFingerprint()));
+                pathExpression.replaceSubExpression(start, new ContextItemExpression());
+                pathExpression.replaceSubExpression(step, new AxisExpression(Axis.SELF, nodeTest));
+                return 0;
+            } else if (getNodeTest(step, Axis.CHILD) != null || getNodeTest(step, Axis.ATTRIBUTE) != null) {
+                final int steps = toRuleChainPath(start, configuration, nodeNames);
+                return steps < 0 ? -1 : steps + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the node test of the given step if it's an axis step along the given axis, or null.
+     */
+    private static NodeTest getNodeTest(final Expression step, final byte axis) {
+        if (step instanceof AxisExpression && ((AxisExpression) step).getAxis() == axis) {
+            final NodeTest nodeTest = ((AxisExpression) step).getNodeTest();
+            // A null node test matches any node
+            return nodeTest == null ? AnyNodeTest.getInstance() : nodeTest;
+        }
+        return null;
+    }
+
+
+    private static final class CurrentDocument {
+        private final Node root;
+        private final DocumentNode documentNode;
+
+        CurrentDocument(final Node root, final DocumentNode documentNode) {
+            this.root = root;
+            this.documentNode = documentNode;
+        }
+    }
 
     /**
      * Gets the Saxon representation of the parameter, if its type corresponds 
@@ -102,15 +102,15 @@ public abstract class AbstractPMDProcessor {
         configuration.getAnalysisCache().checkValidity(rs, configuration.getClassLoader());
         SourceCodeProcessor processor = new SourceCodeProcessor(configuration);
 
+        // render base report first - general errors
+        renderReports(renderers, ctx.getReport());
+
         for (DataSource dataSource : files) {
             String niceFileName = filenameFrom(dataSource);
 
             runAnalysis(new PmdRunnable(dataSource, niceFileName, renderers, ctx, rs, processor));
         }
 
-        // render base report first - general errors
-        renderReports(renderers, ctx.getReport());
-        
         // then add analysis results per file
         collectReports(renderers);
     }
@@ -0,0 +1,187 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.Parser;
+import net.sourceforge.pmd.lang.VisitorStarter;
+
+/**
+ * Holds the parsers, visitor facades and the rules left to apply to files
+ * found in the analysis cache, used by a single analysis thread, so that they
+ * are created once per language version instead of once per file.
+ *
+ * <p>A session is <strong>not</strong> thread-safe: each thread analyzing
+ * files must use its own instance. The pooled objects are reused for files
+ * analyzed one after another, so they may keep a reference to the last
+ * processed file until the next one is parsed. Call {@link #reset()} to drop
+ * everything, e.g. before the thread is reused for another PMD run with a
+ * different configuration.
+ */
+public class AnalysisSession {
+
+    private final PMDConfiguration configuration;
+    private final Map<LanguageVersion, Parser> parsers = new HashMap<>();
+    private final Map<LanguageVersion, Facades> facades = new HashMap<>();
+
+    private RuleSets outdatedRulesSource;
+    private AnalysisCache outdatedRulesCache;
+    private final Map<LanguageVersion, RuleSets> outdatedRules = new HashMap<>();
+
+    public AnalysisSession(PMDConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the parser for the given language version, creating it on the
+     * first request.
+     *
+     * @param languageVersion The language version of the file to parse
+     * @return the parser
+     */
+    public Parser getParser(LanguageVersion languageVersion) {
+        Parser parser = parsers.get(languageVersion);
+        if (parser == null) {
+            parser = PMD.parserFor(languageVersion, configuration);
+            parsers.put(languageVersion, parser);
+        }
+        return parser;
+    }
+
+    public VisitorStarter getQualifiedNameResolutionFacade(LanguageVersion languageVersion) {
+        Facades f = facadesFor(languageVersion);
+        if (f.qualifiedNameResolution == null) {
+            f.qualifiedNameResolution = f.handler.getQualifiedNameResolutionFacade(configuration.getClassLoader());
+        }
+        return f.qualifiedNameResolution;
+    }
+
+    public VisitorStarter getSymbolFacade(LanguageVersion languageVersion) {
+        Facades f = facadesFor(languageVersion);
+        if (f.symbol == null) {
+            f.symbol = f.handler.getSymbolFacade(configuration.getClassLoader());
+        }
+        return f.symbol;
+    }
+
+    public VisitorStarter getDataFlowFacade(LanguageVersion languageVersion) {
+        Facades f = facadesFor(languageVersion);
+        if (f.dataFlow == null) {
+            f.dataFlow = f.handler.getDataFlowFacade();
+        }
+        return f.dataFlow;
+    }
+
+    public VisitorStarter getTypeResolutionFacade(LanguageVersion languageVersion) {
+        Facades f = facadesFor(languageVersion);
+        if (f.typeResolution == null) {
+            f.typeResolution = f.handler.getTypeResolutionFacade(configuration.getClassLoader());
+        }
+        return f.typeResolution;
+    }
+
+    public VisitorStarter getMultifileFacade(LanguageVersion languageVersion) {
+        Facades f = facadesFor(languageVersion);
+        if (f.multifile == null) {
+            f.multifile = f.handler.getMultifileFacade();
+        }
+        return f.multifile;
+    }
+
+    /**
+     * Returns the rules of the given rulesets whose cached violations are not
+     * up to date, and which apply to the given language version. The
+     * returned rulesets share the rule instances of the given ones, and are
+     * only created once for each language version.
+     *
+     * @param ruleSets The rulesets of the current thread
+     * @param cache The analysis cache
+     * @param languageVersion The language version of the analyzed file
+     * @return The outdated rules, or <code>null</code> if there are none
+     * @see AnalysisCache#isUpToDate(Rule)
+     */
+    public RuleSets getOutdatedRules(RuleSets ruleSets, AnalysisCache cache, LanguageVersion languageVersion) {
+        if (ruleSets != outdatedRulesSource || cache != outdatedRulesCache) {
+            outdatedRules.clear();
+            outdatedRulesSource = ruleSets;
+            outdatedRulesCache = cache;
+        }
+
+        if (!outdatedRules.containsKey(languageVersion)) {
+            outdatedRules.put(languageVersion, filterOutdatedRules(ruleSets, cache, languageVersion));
+        }
+        return outdatedRules.get(languageVersion);
+    }
+
+    private static RuleSets filterOutdatedRules(RuleSets ruleSets, AnalysisCache cache,
+            LanguageVersion languageVersion) {
+        final RuleSetFactory ruleSetFactory = new RuleSetFactory();
+        RuleSets result = null;
+        for (RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            List<Rule> rules = new ArrayList<>();
+            for (Rule rule : ruleSet.getRules()) {
+                if (RuleSet.applies(rule, languageVersion) && !cache.isUpToDate(rule)) {
+                    rules.add(rule);
+                }
+            }
+
+            if (!rules.isEmpty()) {
+                if (result == null) {
+                    result = new RuleSets();
+                }
+                result.addRuleSet(ruleSetFactory.createNewRuleSet(ruleSet.getName(), ruleSet.getDescription(),
+                        ruleSet.getFileName(), ruleSet.getExcludePatterns(), ruleSet.getIncludePatterns(), rules));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops all pooled parsers, facades and rulesets. They will be recreated
+     * on the next request.
+     */
+    public void reset() {
+        parsers.clear();
+        facades.clear();
+        outdatedRules.clear();
+        outdatedRulesSource = null;
+        outdatedRulesCache = null;
+    }
+
+    private Facades facadesFor(LanguageVersion languageVersion) {
+        Facades f = facades.get(languageVersion);
+        if (f == null) {
+            f = new Facades(languageVersion.getLanguageVersionHandler());
+            facades.put(languageVersion, f);
+        }
+        return f;
+    }
+
+    private static class Facades {
+        /* default */ final LanguageVersionHandler handler;
+        /* default */ VisitorStarter qualifiedNameResolution;
+        /* default */ VisitorStarter symbol;
+        /* default */ VisitorStarter dataFlow;
+        /* default */ VisitorStarter typeResolution;
+        /* default */ VisitorStarter multifile;
+
+        Facades(LanguageVersionHandler handler) {
+            this.handler = handler;
+        }
+    }
+}
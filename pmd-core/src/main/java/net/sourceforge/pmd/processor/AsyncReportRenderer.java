@@ -0,0 +1,180 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.renderers.Renderer;
+
+/**
+ * Renders the reports on a dedicated thread per renderer, so the thread which
+ * collects the reports of the analysis doesn't wait for the renderers to
+ * write them.
+ *
+ * <p>Each renderer has its own bounded queue of reports, which are rendered in
+ * the order in which they are queued. When a queue is full, queuing a report
+ * blocks until the renderer catches up. The first failure of a renderer is
+ * rethrown when the next report is queued, or by {@link #finish()}.
+ */
+final class AsyncReportRenderer {
+
+    /** Marks the end of the reports to render. */
+    private static final Report END = new Report();
+
+    private final List<RendererThread> threads;
+
+    /**
+     * Starts a rendering thread for each of the given renderers. The
+     * renderers must already be started.
+     *
+     * @param renderers the renderers
+     * @param capacity the number of reports which may wait for each renderer
+     */
+    AsyncReportRenderer(List<Renderer> renderers, int capacity) {
+        threads = new ArrayList<>(renderers.size());
+        for (Renderer renderer : renderers) {
+            RendererThread thread = new RendererThread(renderer, capacity);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues the given report for rendering by all the renderers. The report
+     * must not be modified afterwards.
+     *
+     * <p>Reading a report may modify it, see {@link Report}: its violations
+     * are sorted before it is queued, and each additional renderer gets its
+     * own copy of the report.
+     *
+     * @param report the report
+     */
+    public void render(Report report) {
+        report.sortViolations();
+        List<Report> reports = new ArrayList<>(threads.size());
+        reports.add(report);
+        for (int i = 1; i < threads.size(); i++) {
+            Report copy = new Report();
+            copy.merge(report);
+            reports.add(copy);
+        }
+        for (int i = 0; i < threads.size(); i++) {
+            RendererThread thread = threads.get(i);
+            thread.checkFailure();
+            thread.enqueue(reports.get(i));
+        }
+    }
+
+    /**
+     * Waits until all the queued reports are rendered. The renderers can then
+     * be ended.
+     *
+     * @throws RuntimeException if a renderer failed
+     */
+    public void finish() {
+        for (RendererThread thread : threads) {
+            thread.enqueue(END);
+        }
+        for (RendererThread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw new IllegalStateException("Interrupted while waiting for the renderers", e);
+            }
+        }
+        for (RendererThread thread : threads) {
+            thread.checkFailure();
+        }
+    }
+
+    /**
+     * Stops the rendering threads, discarding the reports which are not
+     * rendered yet.
+     */
+    public void abort() {
+        for (RendererThread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private static final class RendererThread extends Thread {
+        private final Renderer renderer;
+        private final BlockingQueue<Report> queue;
+        private volatile Throwable failure;
+
+        RendererThread(Renderer renderer, int capacity) {
+            super("PmdRenderer " + renderer.getName());
+            this.renderer = renderer;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            // don't prevent the VM from exiting if the analysis is aborted
+            setDaemon(true);
+        }
+
+        /* default */ void enqueue(Report report) {
+            try {
+                queue.put(report);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queuing a report", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            TimeTracker.initThread();
+            List<Report> batch = new ArrayList<>();
+            try {
+                while (true) {
+                    // render all the reports queued so far at once
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+                    for (Report report : batch) {
+                        if (report == END) {
+                            return;
+                        }
+                        if (failure == null) {
+                            render(report);
+                        }
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // aborted, the remaining reports are discarded
+            } finally {
+                TimeTracker.finishThread();
+            }
+        }
+
+        private void render(Report report) {
+            try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
+                renderer.renderFileReport(report);
+            } catch (IOException | RuntimeException | Error e) {
+                // keep on taking the reports, so that queuing them doesn't block
+                failure = e;
+            }
+        }
+
+        /* default */ void checkFailure() {
+            Throwable t = failure;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@
 
 package net.sourceforge.pmd.processor;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
@@ -13,40 +14,111 @@ import java.util.concurrent.Executors;
 
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSetFactory;
 import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
 
 
 /**
  * @author Romain Pelisse &lt;belaran@gmail.com&gt;
  */
 public class MultiThreadProcessor extends AbstractPMDProcessor {
+    /**
+     * Number of files per thread which may be queued or analyzed at the same
+     * time when bounded scheduling is enabled.
+     */
+    private static final int PENDING_FILES_PER_THREAD = 4;
+
     private final ExecutorService executor;
     private final CompletionService<Report> completionService;
+    private final int maxPendingTasks;
 
+    private List<Renderer> renderers = Collections.emptyList();
+    private AsyncReportRenderer reportRenderer;
     private long submittedTasks = 0L;
+    private long collectedTasks = 0L;
 
     public MultiThreadProcessor(final PMDConfiguration configuration) {
         super(configuration);
 
         executor = Executors.newFixedThreadPool(configuration.getThreads(), new PmdThreadFactory());
         completionService = new ExecutorCompletionService<>(executor);
+        maxPendingTasks = configuration.isBoundedScheduling()
+                ? configuration.getThreads() * PENDING_FILES_PER_THREAD : 0;
+    }
+
+    @Override
+    public void processFiles(RuleSetFactory ruleSetFactory, List<DataSource> files, RuleContext ctx,
+            List<Renderer> renderers) {
+        this.renderers = renderers;
+        // the reports are rendered on their own threads, while the next files are analyzed
+        reportRenderer = new AsyncReportRenderer(renderers,
+                Math.max(1, configuration.getThreads() * PENDING_FILES_PER_THREAD));
+        boolean rendered = false;
+        try {
+            super.processFiles(ruleSetFactory, files, ctx, renderers);
+            reportRenderer.finish();
+            rendered = true;
+        } finally {
+            if (!rendered) {
+                reportRenderer.abort();
+            }
+            reportRenderer = null;
+        }
+    }
+
+    @Override
+    public void renderReports(final List<Renderer> renderers, final Report report) {
+        if (reportRenderer == null) {
+            super.renderReports(renderers, report);
+        } else {
+            reportRenderer.render(report);
+        }
     }
 
     @Override
     protected void runAnalysis(PmdRunnable runnable) {
         completionService.submit(runnable);
         submittedTasks++;
+
+        if (maxPendingTasks > 0 && submittedTasks - collectedTasks >= maxPendingTasks) {
+            // apply backpressure: queue a finished report for rendering before submitting more files
+            try {
+                renderNextReport(renderers);
+            } catch (final RuntimeException | Error e) {
+                executor.shutdownNow();
+                throw e;
+            }
+        }
     }
 
     @Override
     protected void collectReports(List<Renderer> renderers) {
         try {
-            for (int i = 0; i < submittedTasks; i++) {
-                final Report report = completionService.take().get();
-                super.renderReports(renderers, report);
+            while (collectedTasks < submittedTasks && renderNextReport(renderers)) {
+                // reports are rendered in the order in which they are finished
             }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the next finished report and queues it for rendering.
+     *
+     * @return <code>false</code> if the thread has been interrupted while
+     *         waiting, <code>true</code> otherwise
+     */
+    private boolean renderNextReport(List<Renderer> renderers) {
+        try {
+            final Report report = completionService.take().get();
+            collectedTasks++;
+            renderReports(renderers, report);
+            return true;
         } catch (final InterruptedException ie) {
             Thread.currentThread().interrupt();
+            return false;
         } catch (final ExecutionException ee) {
             final Throwable t = ee.getCause();
             if (t instanceof RuntimeException) {
@@ -56,8 +128,6 @@ public class MultiThreadProcessor extends AbstractPMDProcessor {
             } else {
                 throw new IllegalStateException("PmdRunnable exception", t);
             }
-        } finally {
-            executor.shutdownNow();
         }
     }
 }
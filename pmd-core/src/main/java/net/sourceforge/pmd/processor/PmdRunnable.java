@@ -60,7 +60,8 @@ public class PmdRunnable implements Callable<Report> {
         
         ThreadContext tc = LOCAL_THREAD_CONTEXT.get();
         if (tc == null) {
-            tc = new ThreadContext(new RuleSets(ruleSets), new RuleContext(ruleContext));
+            tc = new ThreadContext(new RuleSets(ruleSets), new RuleContext(ruleContext),
+                    new AnalysisSession(sourceCodeProcessor.getConfiguration()));
             LOCAL_THREAD_CONTEXT.set(tc);
         }
 
@@ -75,7 +76,7 @@ public class PmdRunnable implements Callable<Report> {
 
         try (InputStream stream = new BufferedInputStream(dataSource.getInputStream())) {
             tc.ruleContext.setLanguageVersion(null);
-            sourceCodeProcessor.processSourceCode(stream, tc.ruleSets, tc.ruleContext);
+            sourceCodeProcessor.processSourceCode(stream, tc.ruleSets, tc.ruleContext, tc.session);
         } catch (PMDException pmde) {
             addError(report, pmde, "Error while processing file: " + fileName);
         } catch (IOException ioe) {
@@ -85,17 +86,21 @@ public class PmdRunnable implements Callable<Report> {
         }
 
         TimeTracker.finishThread();
-        
+
+        // the report is rendered by other threads, which must only read it
+        report.sortViolations();
         return report;
     }
 
     private static class ThreadContext {
         /* default */ final RuleSets ruleSets;
         /* default */ final RuleContext ruleContext;
+        /* default */ final AnalysisSession session;
 
-        ThreadContext(RuleSets ruleSets, RuleContext ruleContext) {
+        ThreadContext(RuleSets ruleSets, RuleContext ruleContext, AnalysisSession session) {
             this.ruleSets = ruleSets;
             this.ruleContext = ruleContext;
+            this.session = session;
         }
     }
 }
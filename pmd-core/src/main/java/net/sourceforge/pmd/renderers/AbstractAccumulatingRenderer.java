@@ -7,6 +7,8 @@ package net.sourceforge.pmd.renderers;
 import java.io.IOException;
 
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.properties.PropertyFactory;
 import net.sourceforge.pmd.util.datasource.DataSource;
 
 /**
@@ -19,10 +21,18 @@ import net.sourceforge.pmd.util.datasource.DataSource;
  * Subclasses should implement the {@link #end()} method to output the
  * {@link #report}.
  *
+ * <p>With the {@link #SPILL_THRESHOLD} property, the violations exceeding the
+ * threshold are written to a temporary file, sorted in runs, and read back
+ * while the {@link #report} is iterated.
+ *
  * @see AbstractIncrementingRenderer
  */
 public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
 
+    public static final PropertyDescriptor<Integer> SPILL_THRESHOLD = PropertyFactory.intProperty("spillThreshold")
+            .desc("Number of violations kept in memory before writing them to a temporary file, 0 to keep them all")
+            .defaultValue(0).build();
+
     /**
      * The accumulated Report.
      */
@@ -30,11 +40,14 @@ public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
 
     public AbstractAccumulatingRenderer(String name, String description) {
         super(name, description);
+        definePropertyDescriptor(SPILL_THRESHOLD);
     }
 
     @Override
     public void start() throws IOException {
-        report = new Report();
+        closeReport();
+        int spillThreshold = getProperty(SPILL_THRESHOLD);
+        report = spillThreshold > 0 ? new SpillingReport(spillThreshold) : new Report();
     }
 
     @Override
@@ -54,4 +67,22 @@ public abstract class AbstractAccumulatingRenderer extends AbstractRenderer {
      */
     @Override
     public abstract void end() throws IOException;
+
+    @Override
+    public void flush() {
+        try {
+            super.flush();
+        } finally {
+            closeReport();
+        }
+    }
+
+    /**
+     * Deletes the temporary file of the violations, if any.
+     */
+    private void closeReport() {
+        if (report instanceof SpillingReport) {
+            ((SpillingReport) report).close();
+        }
+    }
 }
@@ -0,0 +1,610 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RuleViolationComparator;
+import net.sourceforge.pmd.ThreadSafeReportListener;
+import net.sourceforge.pmd.lang.dfa.report.ReportTree;
+import net.sourceforge.pmd.stat.Metric;
+
+/**
+ * A report which only keeps a bounded number of violations in memory. When
+ * the threshold is reached, the violations are sorted and written to a
+ * temporary file as a run. Iterating over the report merges the runs and the
+ * violations still in memory, so the violations are still sorted, without
+ * loading all of them.
+ *
+ * <p>The rules and the names shared by many violations (file, package, class,
+ * method and variable names) are kept in memory and written as indexes.
+ *
+ * <p>An iteration reads all the runs through a single channel on the spill
+ * file, which is closed once the iteration completes, or when the report is
+ * closed.
+ */
+final class SpillingReport extends Report {
+
+    private final int threshold;
+    private final List<RuleViolation> buffer = new ArrayList<>();
+    private int size;
+    private Map<Integer, String> linesToSuppress = Collections.emptyMap();
+    private final Map<String, Integer> summary = new HashMap<>();
+
+    private File spillFile;
+    private CountingOutputStream counter;
+    private DataOutputStream out;
+    private final List<Long> runOffsets = new ArrayList<>();
+    private final List<Integer> runSizes = new ArrayList<>();
+    private final Set<FileChannel> openChannels = new HashSet<>();
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<Rule, Integer> ruleIds = new IdentityHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    /**
+     * Creates a report keeping at most the given number of violations in
+     * memory.
+     *
+     * @param threshold the number of violations kept in memory
+     */
+    SpillingReport(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void suppress(Map<Integer, String> lines) {
+        linesToSuppress = lines;
+    }
+
+    @Override
+    public void addRuleViolation(RuleViolation violation) {
+        int line = violation.getBeginLine();
+        if (linesToSuppress.containsKey(line)) {
+            getSuppressedRuleViolations().add(new SuppressedViolation(violation, true, linesToSuppress.get(line)));
+        } else if (violation.isSuppressed()) {
+            getSuppressedRuleViolations().add(new SuppressedViolation(violation, false, null));
+        } else {
+            addViolation(violation);
+            for (ThreadSafeReportListener listener : getListeners()) {
+                listener.ruleViolationAdded(violation);
+            }
+        }
+    }
+
+    @Override
+    public void merge(Report r) {
+        Iterator<ProcessingError> i = r.errors();
+        while (i.hasNext()) {
+            addError(i.next());
+        }
+        Iterator<ConfigurationError> ce = r.configErrors();
+        while (ce.hasNext()) {
+            addConfigError(ce.next());
+        }
+        Iterator<Metric> m = r.metrics();
+        while (m.hasNext()) {
+            addMetric(m.next());
+        }
+        for (RuleViolation violation : r) {
+            addViolation(violation);
+        }
+        getSuppressedRuleViolations().addAll(r.getSuppressedRuleViolations());
+    }
+
+    private void addViolation(RuleViolation violation) {
+        increment(summary, violation.getRule().getName(), 1);
+        buffer.add(violation);
+        size++;
+        if (buffer.size() >= threshold) {
+            spill();
+        }
+    }
+
+    private static void increment(Map<String, Integer> counts, String key, int increment) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? increment : count + increment);
+    }
+
+    /**
+     * Writes the violations in memory as a sorted run.
+     */
+    private void spill() {
+        Collections.sort(buffer, RuleViolationComparator.INSTANCE);
+        try {
+            if (out == null) {
+                spillFile = File.createTempFile("pmd-report", ".tmp");
+                spillFile.deleteOnExit();
+                counter = new CountingOutputStream(new FileOutputStream(spillFile));
+                out = new DataOutputStream(new BufferedOutputStream(counter));
+            }
+            out.flush();
+            runOffsets.add(counter.getByteCount());
+            runSizes.add(buffer.size());
+            for (RuleViolation violation : buffer) {
+                write(violation);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the violations to " + spillFile, e);
+        }
+        buffer.clear();
+    }
+
+    private void write(RuleViolation violation) throws IOException {
+        Integer ruleId = ruleIds.get(violation.getRule());
+        if (ruleId == null) {
+            ruleId = rules.size();
+            rules.add(violation.getRule());
+            ruleIds.put(violation.getRule(), ruleId);
+        }
+        out.writeInt(ruleId);
+        out.writeInt(nameId(violation.getFilename()));
+        out.writeInt(violation.getBeginLine());
+        out.writeInt(violation.getBeginColumn());
+        out.writeInt(violation.getEndLine());
+        out.writeInt(violation.getEndColumn());
+        out.writeInt(nameId(violation.getPackageName()));
+        out.writeInt(nameId(violation.getClassName()));
+        out.writeInt(nameId(violation.getMethodName()));
+        out.writeInt(nameId(violation.getVariableName()));
+        out.writeBoolean(violation.isSuppressed());
+        String description = violation.getDescription();
+        if (description == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private int nameId(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private RuleViolation read(DataInputStream in) throws IOException {
+        Rule rule = rules.get(in.readInt());
+        String filename = name(in.readInt());
+        int beginLine = in.readInt();
+        int beginColumn = in.readInt();
+        int endLine = in.readInt();
+        int endColumn = in.readInt();
+        String packageName = name(in.readInt());
+        String className = name(in.readInt());
+        String methodName = name(in.readInt());
+        String variableName = name(in.readInt());
+        boolean suppressed = in.readBoolean();
+        int length = in.readInt();
+        String description = null;
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            description = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new SpilledRuleViolation(rule, description, suppressed, filename, beginLine, beginColumn,
+                endLine, endColumn, packageName, className, methodName, variableName);
+    }
+
+    private String name(int id) {
+        return id < 0 ? null : names.get(id);
+    }
+
+    /**
+     * Returns the violations sorted, merging the runs written to the spill
+     * file with the violations still in memory.
+     */
+    @Override
+    public Iterator<RuleViolation> iterator() {
+        Collections.sort(buffer, RuleViolationComparator.INSTANCE);
+        if (runOffsets.isEmpty()) {
+            return Collections.unmodifiableList(buffer).iterator();
+        }
+
+        final FileChannel channel;
+        try {
+            out.flush();
+            channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the violations from " + spillFile, e);
+        }
+        openChannels.add(channel);
+        final List<Run> runs = new ArrayList<>(runOffsets.size() + 1);
+        for (int i = 0; i < runOffsets.size(); i++) {
+            runs.add(new FileRun(i, channel, runOffsets.get(i), runSizes.get(i)));
+        }
+        runs.add(new BufferRun(runs.size(), buffer.iterator()));
+        return new MergingIterator(runs, channel);
+    }
+
+    private void closeChannel(FileChannel channel) {
+        openChannels.remove(channel);
+        IOUtils.closeQuietly(channel);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0 && !hasErrors();
+    }
+
+    @Override
+    public Map<String, Integer> getSummary() {
+        return new HashMap<>(summary);
+    }
+
+    /**
+     * Counts the violations like the violation tree does, without building
+     * it: the tree only keeps one violation for each location and variable
+     * of a class, and its classes are iterated in the order in which they
+     * were added.
+     */
+    @Override
+    public Map<String, Integer> getCountSummary() {
+        // the tree of the classes, with their first violation
+        ReportTree classes = new ReportTree();
+        Map<String, Integer> countsByClass = new HashMap<>();
+        // the violations of the current file and line, which are the only possible duplicates
+        Set<String> locations = new HashSet<>();
+        RuleViolation previous = null;
+        for (RuleViolation violation : this) {
+            if (previous == null || !previous.getFilename().equals(violation.getFilename())
+                    || previous.getBeginLine() != violation.getBeginLine()) {
+                locations.clear();
+            }
+            previous = violation;
+            String classKey = classKey(violation);
+            if (locations.add(classKey + ':' + violation.getBeginColumn() + ':' + violation.getEndLine() + ':'
+                    + violation.getEndColumn() + ':' + violation.getVariableName())) {
+                if (!countsByClass.containsKey(classKey)) {
+                    classes.addRuleViolation(violation);
+                }
+                increment(countsByClass, classKey, 1);
+            }
+        }
+
+        Map<String, Integer> summary = new HashMap<>();
+        for (RuleViolation violation : classes) {
+            String key = StringUtils.isNotBlank(violation.getPackageName())
+                    ? violation.getPackageName() + '.' + violation.getClassName() : "";
+            increment(summary, key, countsByClass.get(classKey(violation)));
+        }
+        return summary;
+    }
+
+    private static String classKey(RuleViolation violation) {
+        return violation.getPackageName() + '/' + violation.getClassName();
+    }
+
+    /**
+     * Builds the tree of all the violations: this loads them all in memory.
+     */
+    @Override
+    public ReportTree getViolationTree() {
+        ReportTree tree = new ReportTree();
+        for (RuleViolation violation : this) {
+            tree.addRuleViolation(violation);
+        }
+        return tree;
+    }
+
+    /**
+     * Deletes the spill file. The violations which have been spilled are
+     * lost, and the iterations which are not complete can't go on.
+     */
+    /* default */ void close() {
+        for (FileChannel channel : new ArrayList<>(openChannels)) {
+            closeChannel(channel);
+        }
+        IOUtils.closeQuietly(out);
+        if (spillFile != null && !spillFile.delete()) {
+            spillFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * A sorted sequence of violations.
+     */
+    private abstract static class Run {
+        /** The position of the run, which orders equal violations. */
+        /* default */ final int index;
+        /* default */ RuleViolation current;
+
+        Run(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Moves to the next violation of the run.
+         *
+         * @return <code>false</code> if there are no more violations
+         */
+        /* default */ abstract boolean advance();
+    }
+
+    /**
+     * The violations still in memory.
+     */
+    private static final class BufferRun extends Run {
+        private final Iterator<RuleViolation> violations;
+
+        BufferRun(int index, Iterator<RuleViolation> violations) {
+            super(index);
+            this.violations = violations;
+        }
+
+        @Override
+        /* default */ boolean advance() {
+            current = violations.hasNext() ? violations.next() : null;
+            return current != null;
+        }
+    }
+
+    /**
+     * A run read from the spill file.
+     */
+    private final class FileRun extends Run {
+        private final DataInputStream in;
+        private int remaining;
+
+        FileRun(int index, FileChannel channel, long offset, int size) {
+            super(index);
+            in = new DataInputStream(new BufferedInputStream(new PositionalInputStream(channel, offset)));
+            remaining = size;
+        }
+
+        @Override
+        /* default */ boolean advance() {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            try {
+                current = read(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the violations from " + spillFile, e);
+            }
+            remaining--;
+            return true;
+        }
+    }
+
+    /**
+     * Reads a channel from a position of its own, so that several streams
+     * can share the channel.
+     */
+    private static final class PositionalInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        PositionalInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Merges sorted runs. Equal violations are returned in the order of their
+     * runs, so the order is the same as sorting all the violations at once.
+     */
+    private final class MergingIterator implements Iterator<RuleViolation> {
+        private final PriorityQueue<Run> queue;
+        private final FileChannel channel;
+
+        MergingIterator(List<Run> runs, FileChannel channel) {
+            this.channel = channel;
+            queue = new PriorityQueue<>(runs.size(), new Comparator<Run>() {
+                @Override
+                public int compare(Run r1, Run r2) {
+                    int cmp = RuleViolationComparator.INSTANCE.compare(r1.current, r2.current);
+                    return cmp != 0 ? cmp : r1.index - r2.index;
+                }
+            });
+            try {
+                for (Run run : runs) {
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                }
+            } catch (RuntimeException e) {
+                closeChannel(channel);
+                throw e;
+            }
+            closeIfComplete();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public RuleViolation next() {
+            Run run = queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            RuleViolation violation = run.current;
+            try {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            } catch (RuntimeException e) {
+                closeChannel(channel);
+                throw e;
+            }
+            closeIfComplete();
+            return violation;
+        }
+
+        private void closeIfComplete() {
+            if (queue.isEmpty()) {
+                closeChannel(channel);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A violation read back from the spill file.
+     */
+    private static final class SpilledRuleViolation implements RuleViolation {
+        private final Rule rule;
+        private final String description;
+        private final boolean suppressed;
+        private final String filename;
+        private final int beginLine;
+        private final int beginColumn;
+        private final int endLine;
+        private final int endColumn;
+        private final String packageName;
+        private final String className;
+        private final String methodName;
+        private final String variableName;
+
+        SpilledRuleViolation(Rule rule, String description, boolean suppressed, String filename, int beginLine,
+                int beginColumn, int endLine, int endColumn, String packageName, String className,
+                String methodName, String variableName) {
+            this.rule = rule;
+            this.description = description;
+            this.suppressed = suppressed;
+            this.filename = filename;
+            this.beginLine = beginLine;
+            this.beginColumn = beginColumn;
+            this.endLine = endLine;
+            this.endColumn = endColumn;
+            this.packageName = packageName;
+            this.className = className;
+            this.methodName = methodName;
+            this.variableName = variableName;
+        }
+
+        @Override
+        public Rule getRule() {
+            return rule;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public boolean isSuppressed() {
+            return suppressed;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        @Override
+        public int getBeginColumn() {
+            return beginColumn;
+        }
+
+        @Override
+        public int getEndLine() {
+            return endLine;
+        }
+
+        @Override
+        public int getEndColumn() {
+            return endColumn;
+        }
+
+        @Override
+        public String getPackageName() {
+            return packageName;
+        }
+
+        @Override
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public String getMethodName() {
+            return methodName;
+        }
+
+        @Override
+        public String getVariableName() {
+            return variableName;
+        }
+    }
+}
@@ -11,14 +11,23 @@ import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
 
+import net.sourceforge.pmd.cache.DependencyTracker;
+
 /**
  * Create a ClassLoader which loads classes using a CLASSPATH like String. If
  * the String looks like a URL to a file (e.g. starts with <code>file://</code>)
@@ -29,6 +38,19 @@ import org.apache.commons.lang3.StringUtils;
 public class ClasspathClassLoader extends URLClassLoader {
 
     private static final Logger LOG = Logger.getLogger(ClasspathClassLoader.class.getName());
+
+    private volatile File indexFile;
+
+    /** The classes defined by this class loader, by binary name. */
+    private final ConcurrentMap<String, DefinedClass> definedClasses = new ConcurrentHashMap<>();
+
+    /** The classes being defined by the current thread, the innermost first. */
+    private final ThreadLocal<Deque<DefinedClass>> classesBeingDefined = new ThreadLocal<Deque<DefinedClass>>() {
+        @Override
+        protected Deque<DefinedClass> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
     
     static {
         registerAsParallelCapable();
@@ -95,6 +117,24 @@ public class ClasspathClassLoader extends URLClassLoader {
         return file.getAbsoluteFile().toURI().toURL();
     }
 
+    /**
+     * Returns the file where an index of the classes of this classpath may be
+     * kept between analyses, or null if it shouldn't be persisted.
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Sets the file where an index of the classes of this classpath may be
+     * kept between analyses, e.g. next to the analysis cache.
+     *
+     * @param indexFile the file, or null if the index shouldn't be persisted
+     */
+    public void setIndexFile(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder(getClass().getSimpleName())
@@ -103,6 +143,27 @@ public class ClasspathClassLoader extends URLClassLoader {
                 .append("] parent: ").append(getParent()).append(']').toString();
     }
     
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final DefinedClass definedClass = new DefinedClass(name);
+        final Deque<DefinedClass> outerClasses = classesBeingDefined.get();
+        outerClasses.push(definedClass);
+        final Class<?> c;
+        try {
+            c = super.findClass(name);
+        } finally {
+            outerClasses.pop();
+        }
+        definedClasses.put(name, definedClass);
+        return c;
+    }
+
+    /**
+     * Loads the class with the given name. The uses of the classes defined by
+     * this class loader are reported to the {@link DependencyTracker}, along
+     * with the classes the JVM loaded when defining them, e.g. their
+     * supertypes, as it won't load them again for the next files.
+     */
     @Override
     protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
         synchronized (getClassLoadingLock(name)) {
@@ -115,14 +176,72 @@ public class ClasspathClassLoader extends URLClassLoader {
                 } catch (final ClassNotFoundException | SecurityException e) {
                     // checking parent
                     // This call to loadClass may eventually call findClass again, in case the parent doesn't find anything.
-                    c = super.loadClass(name, resolve);
+                    try {
+                        c = super.loadClass(name, resolve);
+                    } catch (final ClassNotFoundException notFound) {
+                        // a type which may be added to the classpath later on
+                        DependencyTracker.typeLookedUp(name, null);
+                        throw notFound;
+                    }
+                }
+            }
+
+            final DefinedClass definedClass = c.getClassLoader() == this ? definedClasses.get(name) : null;
+            if (definedClass != null) {
+                final DefinedClass outerClass = classesBeingDefined.get().peek();
+                if (outerClass != null) {
+                    // loaded by the JVM to define the outer class
+                    outerClass.dependencies.add(definedClass);
+                } else if (DependencyTracker.isRecording()) {
+                    reportDependencies(definedClass);
                 }
             }
-    
             if (resolve) {
                 resolveClass(c);
             }
             return c;
         }
     }
+
+    private void reportDependencies(final DefinedClass definedClass) {
+        final Set<DefinedClass> reported = Collections.newSetFromMap(new IdentityHashMap<DefinedClass, Boolean>());
+        final Deque<DefinedClass> pending = new ArrayDeque<>();
+        pending.push(definedClass);
+        while (!pending.isEmpty()) {
+            final DefinedClass dependency = pending.pop();
+            if (reported.add(dependency)) {
+                DependencyTracker.typeLookedUp(dependency.name, getLocation(dependency));
+                for (final DefinedClass next : dependency.dependencies) {
+                    pending.push(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the URL of the class file of the given class. It is only
+     * located once a file depending on it is analyzed with the cache enabled.
+     */
+    private String getLocation(final DefinedClass definedClass) {
+        if (definedClass.location == null) {
+            final URL location = findResource(definedClass.name.replace('.', '/') + ".class");
+            definedClass.location = location == null ? "" : location.toString();
+        }
+        return definedClass.location.isEmpty() ? null : definedClass.location;
+    }
+
+    /**
+     * A class defined by this class loader, and the classes defined by this
+     * class loader which the JVM loaded to define it. Those are only modified
+     * while the class is being defined.
+     */
+    private static final class DefinedClass {
+        private final String name;
+        private final List<DefinedClass> dependencies = new ArrayList<>();
+        private volatile String location;
+
+        DefinedClass(final String name) {
+            this.name = name;
+        }
+    }
 }
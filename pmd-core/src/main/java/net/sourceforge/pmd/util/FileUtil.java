@@ -7,26 +7,31 @@ package net.sourceforge.pmd.util;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.comparator.PathFileComparator;
 import org.apache.commons.lang3.StringUtils;
 
 import net.sourceforge.pmd.util.datasource.DataSource;
 import net.sourceforge.pmd.util.datasource.FileDataSource;
 import net.sourceforge.pmd.util.datasource.ZipDataSource;
-import net.sourceforge.pmd.util.filter.AndFilter;
 import net.sourceforge.pmd.util.filter.Filter;
 import net.sourceforge.pmd.util.filter.Filters;
-import net.sourceforge.pmd.util.filter.OrFilter;
 
 /**
  * This is a utility class for working with Files.
@@ -86,14 +91,19 @@ public final class FileUtil {
      */
     public static List<DataSource> collectFiles(String fileLocations, FilenameFilter filenameFilter) {
         List<DataSource> dataSources = new ArrayList<>();
-        for (String fileLocation : fileLocations.split(",")) {
-            collect(dataSources, fileLocation, filenameFilter);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (String fileLocation : fileLocations.split(",")) {
+                collect(dataSources, fileLocation, filenameFilter, pool);
+            }
+        } finally {
+            pool.shutdownNow();
         }
         return dataSources;
     }
 
     private static List<DataSource> collect(List<DataSource> dataSources, String fileLocation,
-            FilenameFilter filenameFilter) {
+            FilenameFilter filenameFilter, ForkJoinPool pool) {
         File file = new File(fileLocation);
         if (!file.exists()) {
             throw new RuntimeException("File " + file.getName() + " doesn't exist");
@@ -117,20 +127,90 @@ public final class FileUtil {
                 dataSources.add(new FileDataSource(file));
             }
         } else {
-            // Match files, or directories which are not excluded.
-            // FUTURE Make the excluded directories be some configurable option
-            Filter<File> filter = new OrFilter<>(Filters.toFileFilter(filenameFilter),
-                    new AndFilter<>(Filters.getDirectoryFilter(), Filters.toNormalizedFileFilter(
-                            Filters.buildRegexFilterExcludeOverInclude(null, Collections.singletonList("SCCS")))));
-            FileFinder finder = new FileFinder();
-            List<File> files = finder.findFilesFrom(file, Filters.toFilenameFilter(filter), true);
-            for (File f : files) {
+            for (File f : findFiles(file, filenameFilter, pool)) {
                 dataSources.add(new FileDataSource(f));
             }
         }
         return dataSources;
     }
 
+    /**
+     * Finds the files accepted by the given filter in the given directory
+     * hierarchy. The directories are listed in parallel, and the filter is
+     * applied while they are listed. The files are returned in the same order
+     * as {@link FileFinder} does: the entries of each directory are sorted by
+     * path, ignoring the case, and the files of a subdirectory take the place
+     * of the subdirectory.
+     *
+     * @param dir the directory to search
+     * @param filenameFilter the filter of the files
+     * @param pool the pool which lists the directories
+     * @return the files found
+     */
+    private static List<File> findFiles(File dir, FilenameFilter filenameFilter, ForkJoinPool pool) {
+        // FUTURE Make the excluded directories be some configurable option
+        Filter<File> directoryFilter = Filters.toNormalizedFileFilter(
+                Filters.buildRegexFilterExcludeOverInclude(null, Collections.singletonList("SCCS")));
+        return pool.invoke(new DirectoryScan(dir, filenameFilter, directoryFilter));
+    }
+
+    /**
+     * Lists a directory, and forks a scan of each of its subdirectories.
+     */
+    private static final class DirectoryScan extends RecursiveTask<List<File>> {
+        private static final long serialVersionUID = 1L;
+
+        private final File dir;
+        private final transient FilenameFilter filenameFilter;
+        private final transient Filter<File> directoryFilter;
+
+        DirectoryScan(File dir, FilenameFilter filenameFilter, Filter<File> directoryFilter) {
+            this.dir = dir;
+            this.filenameFilter = filenameFilter;
+            this.directoryFilter = directoryFilter;
+        }
+
+        @Override
+        protected List<File> compute() {
+            List<File> candidates = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+                for (Path entry : stream) {
+                    candidates.add(new File(dir, entry.getFileName().toString()));
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // an unreadable directory is skipped, like File.listFiles() does
+                return Collections.emptyList();
+            }
+            Collections.sort(candidates, PathFileComparator.PATH_INSENSITIVE_COMPARATOR);
+
+            // a file, or the scan of a subdirectory, for each accepted entry
+            List<Object> entries = new ArrayList<>(candidates.size());
+            for (File candidate : candidates) {
+                boolean accepted = filenameFilter.accept(dir, candidate.getName());
+                if (candidate.isDirectory()) {
+                    // match directories which are not excluded
+                    if (accepted || directoryFilter.filter(candidate)) {
+                        DirectoryScan scan = new DirectoryScan(candidate, filenameFilter, directoryFilter);
+                        scan.fork();
+                        entries.add(scan);
+                    }
+                } else if (accepted) {
+                    entries.add(candidate);
+                }
+            }
+
+            List<File> files = new ArrayList<>();
+            for (Object entry : entries) {
+                if (entry instanceof DirectoryScan) {
+                    files.addAll(((DirectoryScan) entry).join());
+                } else {
+                    files.add((File) entry);
+                }
+            }
+            return files;
+        }
+    }
+
     /**
      * Handy method to find a certain pattern into a file. While this method
      * lives in the FileUtils, it was designed with with unit test in mind (to
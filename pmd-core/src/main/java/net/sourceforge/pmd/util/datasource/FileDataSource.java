@@ -33,6 +33,16 @@ public class FileDataSource implements DataSource {
         return Files.newInputStream(file.toPath());
     }
 
+    /**
+     * Returns the size of the file in bytes, or <code>0</code> if it doesn't
+     * exist.
+     *
+     * @return the size of the file
+     */
+    public long length() {
+        return file.length();
+    }
+
     @Override
     public String getNiceFileName(boolean shortNames, String inputFileName) {
         return glomName(shortNames, inputFileName, file);
@@ -32,6 +32,16 @@ public class ZipDataSource implements DataSource {
         return zipFile.getInputStream(zipEntry);
     }
 
+    /**
+     * Returns the uncompressed size of the zip entry in bytes, or
+     * <code>-1</code> if it is not known.
+     *
+     * @return the size of the entry
+     */
+    public long length() {
+        return zipEntry.getSize();
+    }
+
     @Override
     public String getNiceFileName(boolean shortNames, String inputFileName) {
         // FIXME: this could probably be done better
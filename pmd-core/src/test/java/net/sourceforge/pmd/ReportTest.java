@@ -167,6 +167,51 @@ public class ReportTest implements ThreadSafeReportListener {
         assertEquals(2, treeCount);
     }
 
+    @Test
+    public void testViolationsAreSortedWhenIterated() {
+        Report r = new Report();
+        RuleContext ctx = new RuleContext();
+        ctx.setSourceCodeFilename("foo");
+        Rule rule = new MockRule("name", "desc", "msg", "rulesetname");
+        for (int line = 1000; line > 0; line--) {
+            r.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(line, 5), rule.getMessage()));
+        }
+
+        Report merged = new Report();
+        merged.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(500, 1), rule.getMessage()));
+        merged.merge(r);
+
+        int previousLine = 0;
+        for (RuleViolation violation : merged) {
+            assertTrue(violation.getBeginLine() >= previousLine);
+            previousLine = violation.getBeginLine();
+        }
+        assertEquals(1001, merged.size());
+        assertEquals(1001, merged.treeSize());
+
+        merged.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(2000, 1), rule.getMessage()));
+        assertEquals(1002, merged.treeSize());
+    }
+
+    @Test
+    public void testSortedViolationsAreReadInOrder() {
+        Report r = new Report();
+        RuleContext ctx = new RuleContext();
+        ctx.setSourceCodeFilename("foo");
+        Rule rule = new MockRule("name", "desc", "msg", "rulesetname");
+        r.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(20, 5), rule.getMessage()));
+        r.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, getNode(10, 5), rule.getMessage()));
+        r.sortViolations();
+
+        // iterating doesn't sort again, so iterations may overlap
+        Iterator<RuleViolation> first = r.iterator();
+        assertEquals(10, first.next().getBeginLine());
+        Iterator<RuleViolation> second = r.iterator();
+        assertEquals(10, second.next().getBeginLine());
+        assertEquals(20, first.next().getBeginLine());
+        assertEquals(20, second.next().getBeginLine());
+    }
+
     private static Node getNode(int line, int column) {
         DummyNode s = new DummyNode(2);
         DummyNode parent = new DummyNode(1);
@@ -0,0 +1,90 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.benchmark.TimeTracker.Histogram;
+import net.sourceforge.pmd.benchmark.TimeTracker.TimedResult;
+
+public class TimeTrackerTest {
+
+    @Test
+    public void testMeasuresOfAllThreadsAreMerged() throws InterruptedException {
+        TimeTracker.startGlobalTracking();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                TimeTracker.initThread();
+                measureRules(2);
+                TimeTracker.finishThread();
+            }
+        };
+        thread.start();
+        thread.join();
+        measureRules(3);
+        TimingReport report = TimeTracker.stopGlobalTracking();
+
+        TimedResult rules = report.getUnlabeledMeasurements(TimedOperationCategory.RULE);
+        assertEquals(5, rules.callCount.get());
+        Map<String, TimedResult> labeled = report.getLabeledMeasurements(TimedOperationCategory.RULE);
+        assertEquals(2, labeled.size());
+        assertEquals(5, labeled.get("Foo").callCount.get());
+        assertEquals(10, labeled.get("Bar").callCount.get());
+        assertEquals(10 * 7, labeled.get("Bar").extraDataCounter.get());
+
+        // the self time doesn't include the time of the nested operations
+        assertEquals(rules.totalTimeNanos.get() - labeled.get("Foo").totalTimeNanos.get(),
+                rules.selfTimeNanos.get());
+
+        TimedResult bar = labeled.get("Bar");
+        assertTrue(bar.getPercentileNanos(50) <= bar.getPercentileNanos(99));
+        assertTrue(bar.getPercentileNanos(99) <= bar.maxTimeNanos);
+        assertEquals(0, report.getUnlabeledMeasurements(TimedOperationCategory.UNACCOUNTED).callCount.get());
+
+        // further operations aren't measured
+        TimeTracker.startOperation(TimedOperationCategory.RULE).close();
+        assertNull(TimeTracker.stopGlobalTracking());
+    }
+
+    private static void measureRules(int times) {
+        for (int i = 0; i < times; i++) {
+            try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.RULE)) {
+                try (TimedOperation rto = TimeTracker.startOperation(TimedOperationCategory.RULE, "Foo")) {
+                    for (int j = 0; j < 2; j++) {
+                        try (TimedOperation nested = TimeTracker.startOperation(TimedOperationCategory.RULE, "Bar")) {
+                            nested.close(7);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < Histogram.BUCKET_COUNT; bucket++) {
+            long highest = Histogram.highestValueOf(bucket);
+            if (highest < 0) {
+                // beyond the range of long
+                break;
+            }
+            // the buckets are contiguous, and each value falls into its bucket
+            assertEquals(bucket, Histogram.bucketOf(previousHighest + 1));
+            assertEquals(bucket, Histogram.bucketOf(highest));
+            // with a relative error below 1/8
+            assertTrue(highest - previousHighest - 1 <= Math.max(0, previousHighest + 1) / 8);
+            previousHighest = highest;
+        }
+        assertEquals(Long.MAX_VALUE, previousHighest);
+    }
+}
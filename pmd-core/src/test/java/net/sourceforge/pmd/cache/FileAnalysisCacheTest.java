@@ -13,14 +13,18 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -29,8 +33,12 @@ import org.junit.contrib.java.lang.system.RestoreSystemProperties;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
 
 public class FileAnalysisCacheTest {
     
@@ -96,12 +104,7 @@ public class FileAnalysisCacheTest {
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
         cache.isUpToDate(sourceFile);
 
-        final RuleViolation rv = mock(RuleViolation.class);
-        when(rv.getFilename()).thenReturn(sourceFile.getPath());
-        final net.sourceforge.pmd.Rule rule = mock(net.sourceforge.pmd.Rule.class, Mockito.RETURNS_SMART_NULLS);
-        when(rv.getRule()).thenReturn(rule);
-
-        cache.ruleViolationAdded(rv);
+        cache.ruleViolationAdded(mockViolation(sourceFile));
         cache.persist();
 
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
@@ -112,9 +115,78 @@ public class FileAnalysisCacheTest {
         assertEquals("Cached rule violations count mismatch", 1, cachedViolations.size());
     }
 
+    @Test
+    public void testPersistKeepsUnchangedFilesAndAppendsChangedOnes() throws IOException {
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.isUpToDate(sourceFile);
+        cache.ruleViolationAdded(mockViolation(sourceFile));
+        cache.isUpToDate(otherSourceFile);
+        cache.persist();
+
+        // second run: one file is unchanged, the other one has been edited
+        Files.write(otherSourceFile.toPath(), "some text".getBytes());
+        final FileAnalysisCache secondRunCache = new FileAnalysisCache(newCacheFile);
+        assertTrue(secondRunCache.isUpToDate(sourceFile));
+        for (final RuleViolation rv : secondRunCache.getCachedViolations(sourceFile)) {
+            secondRunCache.ruleViolationAdded(rv);
+        }
+        assertFalse(secondRunCache.isUpToDate(otherSourceFile));
+        secondRunCache.ruleViolationAdded(mockViolation(otherSourceFile));
+        secondRunCache.ruleViolationAdded(mockViolation(otherSourceFile));
+        secondRunCache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        assertTrue("Cache believes unchanged file is not up to date", reloadedCache.isUpToDate(sourceFile));
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFile).size());
+        assertTrue("Cache believes edited file is not up to date", reloadedCache.isUpToDate(otherSourceFile));
+        assertEquals(2, reloadedCache.getCachedViolations(otherSourceFile).size());
+    }
+
+    @Test
+    public void testCompactionKeepsUnchangedFilesAndLeavesNoTemporaryFile() throws IOException {
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.isUpToDate(sourceFile);
+        cache.ruleViolationAdded(mockViolation(sourceFile));
+        cache.isUpToDate(otherSourceFile);
+        for (int i = 0; i < 10; i++) {
+            cache.ruleViolationAdded(mockViolation(otherSourceFile));
+        }
+        cache.persist();
+
+        // the record of the edited file outgrows the live ones, so the mapped file is replaced
+        Files.write(otherSourceFile.toPath(), "some text".getBytes());
+        final long size = newCacheFile.length();
+        final FileAnalysisCache secondRunCache = new FileAnalysisCache(newCacheFile);
+        assertTrue(secondRunCache.isUpToDate(sourceFile));
+        for (final RuleViolation rv : secondRunCache.getCachedViolations(sourceFile)) {
+            secondRunCache.ruleViolationAdded(rv);
+        }
+        assertFalse(secondRunCache.isUpToDate(otherSourceFile));
+        secondRunCache.persist();
+        assertTrue("Cache file was not compacted", newCacheFile.length() < size);
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFile).size());
+        assertTrue(reloadedCache.isUpToDate(otherSourceFile));
+        assertTrue(reloadedCache.getCachedViolations(otherSourceFile).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(newCacheFile.getName(), sourceFile.getName(),
+                otherSourceFile.getName(), emptyCacheFile.getName())),
+                new HashSet<>(Arrays.asList(tempFolder.getRoot().list())));
+    }
+
+    @Test
+    public void testLoadFromMalformedFileShouldntThrow() throws IOException {
+        Files.write(emptyCacheFile.toPath(), "not a cache file at all".getBytes());
+        final FileAnalysisCache cache = new FileAnalysisCache(emptyCacheFile);
+        assertFalse("Cache believes an unknown file is up to date", cache.isUpToDate(sourceFile));
+    }
+
     @Test
     public void testCacheValidityWithNoChanges() {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final ClassLoader cl = mock(ClassLoader.class);
 
         setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
@@ -127,21 +199,68 @@ public class FileAnalysisCacheTest {
 
     @Test
     public void testRulesetChangeInvalidatesCache() {
-        final RuleSets rs = mock(RuleSets.class);
+        final net.sourceforge.pmd.Rule rule = new MockRule("Foo", "desc", "message", "rs");
         final ClassLoader cl = mock(ClassLoader.class);
-        
-        setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
-        
+
+        setupCacheWithFiles(newCacheFile, newRuleSets(rule), cl, sourceFile);
+
+        final net.sourceforge.pmd.Rule addedRule = new MockRule("Bar", "desc", "message", "rs");
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
-        when(rs.getChecksum()).thenReturn(1L);
-        reloadedCache.checkValidity(rs, cl);
-        assertFalse("Cache believes unmodified file is up to date after ruleset changed",
+        reloadedCache.checkValidity(newRuleSets(rule, addedRule), cl);
+        assertTrue("Cache believes unmodified file is not up to date after a rule was added",
+                reloadedCache.isUpToDate(sourceFile));
+        assertTrue("Cache believes unchanged rule is not up to date", reloadedCache.isUpToDate(rule));
+        assertFalse("Cache believes added rule is up to date after ruleset changed",
+                reloadedCache.isUpToDate(addedRule));
+    }
+
+    @Test
+    public void testRuleChangeOnlyDiscardsViolationsOfThatRule() {
+        final net.sourceforge.pmd.Rule unchangedRule = new MockRule("Foo", "desc", "message", "rs");
+        final net.sourceforge.pmd.Rule changedRule = new MockRule("Bar", "desc", "message", "rs");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(newRuleSets(unchangedRule, changedRule), cl);
+        cache.isUpToDate(sourceFile);
+        cache.ruleViolationAdded(mockViolation(sourceFile, unchangedRule));
+        cache.ruleViolationAdded(mockViolation(sourceFile, changedRule));
+        cache.persist();
+
+        final net.sourceforge.pmd.Rule reconfiguredRule = new MockRule("Bar", "desc", "other message", "rs");
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(newRuleSets(unchangedRule, reconfiguredRule), cl);
+        assertTrue("Cache believes unmodified file is not up to date after a rule changed",
                 reloadedCache.isUpToDate(sourceFile));
+        assertFalse("Cache believes changed rule is up to date", reloadedCache.isUpToDate(reconfiguredRule));
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals("Cached violations of the changed rule were not discarded", 1, cachedViolations.size());
+        assertEquals(unchangedRule, cachedViolations.get(0).getRule());
+    }
+
+    @Test
+    public void testRemovedRuleViolationsAreDiscarded() {
+        final net.sourceforge.pmd.Rule rule = new MockRule("Foo", "desc", "message", "rs");
+        final net.sourceforge.pmd.Rule removedRule = new MockRule("Bar", "desc", "message", "rs");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(newRuleSets(rule, removedRule), cl);
+        cache.isUpToDate(sourceFile);
+        cache.ruleViolationAdded(mockViolation(sourceFile, removedRule));
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(newRuleSets(rule), cl);
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+        assertTrue("Cached violations of a removed rule were not discarded",
+                reloadedCache.getCachedViolations(sourceFile).isEmpty());
     }
     
     @Test
     public void testAuxClasspathNonExistingAuxclasspathEntriesIgnored() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] { new File(tempFolder.getRoot(), "non-existing-dir").toURI().toURL(), });
         
@@ -156,7 +275,7 @@ public class FileAnalysisCacheTest {
     
     @Test
     public void testAuxClasspathChangeWithoutDFAorTypeResolutionDoesNotInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] { });
         
@@ -171,7 +290,7 @@ public class FileAnalysisCacheTest {
 
     @Test
     public void testAuxClasspathChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] { });
         
@@ -192,9 +311,19 @@ public class FileAnalysisCacheTest {
                 reloadedCache.isUpToDate(sourceFile));
     }
     
+    @Test
+    public void testAuxClasspathIndexIsKeptNextToCache() throws IOException {
+        final RuleSets rs = mockRuleSets();
+        try (ClasspathClassLoader cl = new ClasspathClassLoader(Collections.<File>emptyList(), null)) {
+            final FileAnalysisCache analysisCache = new FileAnalysisCache(newCacheFile);
+            analysisCache.checkValidity(rs, cl);
+            assertEquals(new File(newCacheFile.getPath() + ".classpath"), cl.getIndexFile());
+        }
+    }
+
     @Test
     public void testAuxClasspathJarContentsChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final URLClassLoader cl = mock(URLClassLoader.class);
         
         final File classpathFile = tempFolder.newFile();
@@ -217,7 +346,7 @@ public class FileAnalysisCacheTest {
 
     @Test
     public void testClasspathChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final ClassLoader cl = mock(ClassLoader.class);
         
         final File classpathFile = tempFolder.newFile();
@@ -236,7 +365,7 @@ public class FileAnalysisCacheTest {
     
     @Test
     public void testClasspathContentsChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final ClassLoader cl = mock(ClassLoader.class);
         
         final File classpathFile = tempFolder.newFile();
@@ -258,7 +387,7 @@ public class FileAnalysisCacheTest {
 
     @Test
     public void testWildcardClasspath() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final ClassLoader cl = mock(ClassLoader.class);
         setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
 
@@ -278,7 +407,7 @@ public class FileAnalysisCacheTest {
 
     @Test
     public void testWildcardClasspathContentsChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = mockRuleSets();
         final ClassLoader cl = mock(ClassLoader.class);
 
         // Prepare two jar files
@@ -309,7 +438,7 @@ public class FileAnalysisCacheTest {
 
     @Test
     public void testFileIsUpToDate() throws IOException {
-        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class), sourceFile);
+        setupCacheWithFiles(newCacheFile, mockRuleSets(), mock(ClassLoader.class), sourceFile);
         
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
         assertTrue("Cache believes a known, unchanged file is not up to date",
@@ -318,7 +447,7 @@ public class FileAnalysisCacheTest {
     
     @Test
     public void testFileIsNotUpToDateWhenEdited() throws IOException {
-        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class), sourceFile);
+        setupCacheWithFiles(newCacheFile, mockRuleSets(), mock(ClassLoader.class), sourceFile);
         
         // Edit the file
         Files.write(Paths.get(sourceFile.getAbsolutePath()), "some text".getBytes());
@@ -328,6 +457,276 @@ public class FileAnalysisCacheTest {
                 cache.isUpToDate(sourceFile));
     }
 
+    @Test
+    public void testUnchangedSizeAndModificationTimeSkipChecksum() throws IOException {
+        Files.write(sourceFile.toPath(), "some text".getBytes());
+        final long lastModified = System.currentTimeMillis() - 60000;
+        assertTrue(sourceFile.setLastModified(lastModified));
+        setupCacheWithFiles(newCacheFile, mockRuleSets(), mock(ClassLoader.class), sourceFile);
+
+        // same size and modification time, the contents are not read again
+        Files.write(sourceFile.toPath(), "SOME TEXT".getBytes());
+        assertTrue(sourceFile.setLastModified(lastModified));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        assertTrue("Cache didn't trust the size and modification time of the file",
+                cache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testTouchedFileIsUpToDate() throws IOException {
+        Files.write(sourceFile.toPath(), "some text".getBytes());
+        assertTrue(sourceFile.setLastModified(System.currentTimeMillis() - 60000));
+        setupCacheWithFiles(newCacheFile, mockRuleSets(), mock(ClassLoader.class), sourceFile);
+
+        // modification time changed, but the contents are the same
+        assertTrue(sourceFile.setLastModified(System.currentTimeMillis() - 30000));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        assertTrue("Cache believes a touched, unchanged file is not up to date",
+                cache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsChecksummed() throws IOException {
+        Files.write(sourceFile.toPath(), "some text".getBytes());
+        setupCacheWithFiles(newCacheFile, mockRuleSets(), mock(ClassLoader.class), sourceFile);
+
+        // the modification time might not change for edits made right after the analysis
+        final long lastModified = sourceFile.lastModified();
+        Files.write(sourceFile.toPath(), "SOME TEXT".getBytes());
+        assertTrue(sourceFile.setLastModified(lastModified));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        assertFalse("Cache believes a recently edited file is up to date",
+                cache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testUnchangedAuxClasspathEntriesAreNotReadAgain() throws IOException {
+        final RuleSets rs = mockRuleSets();
+        final URLClassLoader cl = mock(URLClassLoader.class);
+        final File classpathFile = tempFolder.newFile();
+        Files.write(classpathFile.toPath(), "some text".getBytes());
+        final long lastModified = System.currentTimeMillis() - 60000;
+        assertTrue(classpathFile.setLastModified(lastModified));
+        when(cl.getURLs()).thenReturn(new URL[] { classpathFile.toURI().toURL(), });
+
+        final net.sourceforge.pmd.Rule r = mock(net.sourceforge.pmd.Rule.class);
+        when(r.isDfa()).thenReturn(true);
+        when(rs.getAllRules()).thenReturn(Collections.singleton(r));
+
+        setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
+
+        // same size and modification time, the previous checksum is reused
+        Files.write(classpathFile.toPath(), "SOME TEXT".getBytes());
+        assertTrue(classpathFile.setLastModified(lastModified));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertTrue("Cache didn't reuse the fingerprint of an unchanged auxclasspath entry",
+                reloadedCache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    public void testAuxClasspathClassChangeOnlyInvalidatesDependentFiles() throws IOException {
+        final RuleSets rs = mockRuleSets();
+        final File classpathDir = tempFolder.newFolder();
+        final File classFile = new File(classpathDir, "Foo.class");
+        Files.write(classFile.toPath(), "some text".getBytes());
+        assertTrue(classFile.setLastModified(System.currentTimeMillis() - 60000));
+        final ClasspathClassLoader cl = new ClasspathClassLoader(Collections.singletonList(classpathDir), null);
+        mockTypeResolutionRule(rs);
+
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl);
+        cache.isUpToDate(sourceFile);
+        DependencyTracker.typeLookedUp("Foo", classFile.toURI().toURL().toString());
+        DependencyTracker.stopRecording();
+        cache.isUpToDate(otherSourceFile);
+        DependencyTracker.stopRecording();
+        cache.persist();
+
+        // Change the class the source file depends on
+        Files.write(classFile.toPath(), "other text".getBytes());
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertFalse("Cache believes cache is up to date when a class the file depends on changed",
+                reloadedCache.isUpToDate(sourceFile));
+        assertTrue("Cache believes a file which doesn't depend on the changed class is not up to date",
+                reloadedCache.isUpToDate(otherSourceFile));
+        DependencyTracker.stopRecording();
+    }
+
+    @Test
+    public void testAuxClasspathAddedClassInvalidatesFilesLookingItUp() throws IOException {
+        final RuleSets rs = mockRuleSets();
+        final File classpathDir = tempFolder.newFolder();
+        final File classFile = new File(classpathDir, "Foo.class");
+        Files.write(classFile.toPath(), "some text".getBytes());
+        assertTrue(classFile.setLastModified(System.currentTimeMillis() - 60000));
+        final ClasspathClassLoader cl = new ClasspathClassLoader(Collections.singletonList(classpathDir), null);
+        mockTypeResolutionRule(rs);
+
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl);
+        cache.isUpToDate(sourceFile);
+        // the type doesn't exist yet
+        DependencyTracker.typeLookedUp("pkg.Bar", null);
+        DependencyTracker.stopRecording();
+        cache.isUpToDate(otherSourceFile);
+        DependencyTracker.stopRecording();
+        cache.persist();
+
+        // Add a new class to the auxclasspath directory
+        final File packageDir = new File(classpathDir, "pkg");
+        assertTrue(packageDir.mkdir());
+        Files.write(new File(packageDir, "Bar.class").toPath(), "other text".getBytes());
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertFalse("Cache believes cache is up to date when a type the file looked up has been added",
+                reloadedCache.isUpToDate(sourceFile));
+        assertTrue("Cache believes a file which doesn't depend on the added class is not up to date",
+                reloadedCache.isUpToDate(otherSourceFile));
+        DependencyTracker.stopRecording();
+    }
+
+    @Test
+    public void testAuxClasspathClassChangeInvalidatesFilesLoadingDependentClasses() throws Exception {
+        final RuleSets rs = mockRuleSets();
+        final File classpathDir = tempFolder.newFolder();
+        final File baseClassFile = copyClassFile(BaseType.class, classpathDir);
+        copyClassFile(DerivedType.class, classpathDir);
+        mockTypeResolutionRule(rs);
+
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        final File unrelatedSourceFile = tempFolder.newFile("Unrelated.java");
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        try (ClasspathClassLoader cl = new ClasspathClassLoader(Collections.singletonList(classpathDir), null)) {
+            cache.checkValidity(rs, cl);
+            // loads the base type too, without it being looked up
+            cache.isUpToDate(sourceFile);
+            cl.loadClass(DerivedType.class.getName());
+            DependencyTracker.stopRecording();
+            // the base type is already loaded
+            cache.isUpToDate(otherSourceFile);
+            cl.loadClass(DerivedType.class.getName());
+            DependencyTracker.stopRecording();
+            cache.isUpToDate(unrelatedSourceFile);
+            DependencyTracker.stopRecording();
+        }
+        cache.persist();
+
+        // Change the class the loaded class depends on
+        Files.write(baseClassFile.toPath(), "other text".getBytes());
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        try (ClasspathClassLoader cl = new ClasspathClassLoader(Collections.singletonList(classpathDir), null)) {
+            reloadedCache.checkValidity(rs, cl);
+        }
+        assertFalse("Cache believes cache is up to date when a class loaded with the class the file uses changed",
+                reloadedCache.isUpToDate(sourceFile));
+        DependencyTracker.stopRecording();
+        assertFalse("Cache believes cache is up to date when a class previously loaded with the class the file uses changed",
+                reloadedCache.isUpToDate(otherSourceFile));
+        DependencyTracker.stopRecording();
+        assertTrue("Cache believes a file which doesn't load classes is not up to date",
+                reloadedCache.isUpToDate(unrelatedSourceFile));
+        DependencyTracker.stopRecording();
+    }
+
+    @Test
+    public void testAuxClasspathClassChangeDoesNotInvalidateFilesLoadingOtherClasses() throws Exception {
+        final RuleSets rs = mockRuleSets();
+        final File classpathDir = tempFolder.newFolder();
+        final File baseClassFile = copyClassFile(BaseType.class, classpathDir);
+        copyClassFile(DerivedType.class, classpathDir);
+        copyClassFile(OtherType.class, classpathDir);
+        mockTypeResolutionRule(rs);
+
+        final File otherSourceFile = tempFolder.newFile("Other.java");
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        final AtomicInteger lookups = new AtomicInteger();
+        try (ClasspathClassLoader cl = new ClasspathClassLoader(Collections.singletonList(classpathDir), null) {
+            @Override
+            public URL findResource(final String name) {
+                lookups.incrementAndGet();
+                return super.findResource(name);
+            }
+        }) {
+            cache.checkValidity(rs, cl);
+            // the class files are only located for the files depending on them
+            cl.loadClass(OtherType.class.getName());
+            assertEquals(0, lookups.get());
+
+            cache.isUpToDate(sourceFile);
+            cl.loadClass(DerivedType.class.getName());
+            DependencyTracker.stopRecording();
+            // the classes defined before don't matter
+            cache.isUpToDate(otherSourceFile);
+            cl.loadClass(OtherType.class.getName());
+            DependencyTracker.stopRecording();
+        }
+        cache.persist();
+
+        Files.write(baseClassFile.toPath(), "other text".getBytes());
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        try (ClasspathClassLoader cl = new ClasspathClassLoader(Collections.singletonList(classpathDir), null)) {
+            reloadedCache.checkValidity(rs, cl);
+        }
+        assertFalse("Cache believes cache is up to date when a class loaded with the class the file uses changed",
+                reloadedCache.isUpToDate(sourceFile));
+        DependencyTracker.stopRecording();
+        assertTrue("Cache believes a file is not up to date when a class it doesn't use changed",
+                reloadedCache.isUpToDate(otherSourceFile));
+        DependencyTracker.stopRecording();
+    }
+
+    @Test
+    public void testAuxClasspathChangeOfOtherClassLoadersInvalidatesCache() throws IOException {
+        final RuleSets rs = mockRuleSets();
+        final URLClassLoader cl = mock(URLClassLoader.class);
+        final File classpathDir = tempFolder.newFolder();
+        final File classFile = new File(classpathDir, "Foo.class");
+        Files.write(classFile.toPath(), "some text".getBytes());
+        assertTrue(classFile.setLastModified(System.currentTimeMillis() - 60000));
+        when(cl.getURLs()).thenReturn(new URL[] { classpathDir.toURI().toURL(), });
+        mockTypeResolutionRule(rs);
+
+        setupCacheWithFiles(newCacheFile, rs, cl, sourceFile);
+
+        // the classes loaded by the class loader aren't known
+        Files.write(classFile.toPath(), "other text".getBytes());
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl);
+        assertFalse("Cache believes cache is up to date when a class of an unknown class loader changed",
+                reloadedCache.isUpToDate(sourceFile));
+        DependencyTracker.stopRecording();
+    }
+
+    private File copyClassFile(final Class<?> clazz, final File classpathDir) throws IOException {
+        final String path = clazz.getName().replace('.', '/') + ".class";
+        final File classFile = new File(classpathDir, path);
+        assertTrue(classFile.getParentFile().isDirectory() || classFile.getParentFile().mkdirs());
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(path)) {
+            Files.copy(in, classFile.toPath());
+        }
+        assertTrue(classFile.setLastModified(System.currentTimeMillis() - 60000));
+        return classFile;
+    }
+
+    private void mockTypeResolutionRule(final RuleSets rs) {
+        final net.sourceforge.pmd.Rule r = mock(net.sourceforge.pmd.Rule.class);
+        when(r.isTypeResolution()).thenReturn(true);
+        when(rs.getAllRules()).thenReturn(Collections.singleton(r));
+    }
+
     private void setupCacheWithFiles(final File cacheFile, final RuleSets ruleSets,
             final ClassLoader classLoader, final File... files) {
         // Setup a cache file with an entry for an empty Source.java with no violations
@@ -339,4 +738,35 @@ public class FileAnalysisCacheTest {
         }
         cache.persist();
     }
+
+    private RuleViolation mockViolation(final File file) {
+        return mockViolation(file, mock(net.sourceforge.pmd.Rule.class, Mockito.RETURNS_SMART_NULLS));
+    }
+
+    private RuleViolation mockViolation(final File file, final net.sourceforge.pmd.Rule rule) {
+        final RuleViolation rv = mock(RuleViolation.class);
+        when(rv.getFilename()).thenReturn(file.getPath());
+        when(rv.getRule()).thenReturn(rule);
+        return rv;
+    }
+
+    private RuleSets mockRuleSets() {
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getAllRuleSets()).thenReturn(new RuleSet[0]);
+        return rs;
+    }
+
+    private RuleSets newRuleSets(final net.sourceforge.pmd.Rule... rules) {
+        return new RuleSets(new RuleSetFactory().createNewRuleSet("rs", "desc", null,
+                Collections.<String>emptyList(), Collections.<String>emptyList(), Arrays.asList(rules)));
+    }
+
+    public static class BaseType {
+    }
+
+    public static class DerivedType extends BaseType {
+    }
+
+    public static class OtherType {
+    }
 }
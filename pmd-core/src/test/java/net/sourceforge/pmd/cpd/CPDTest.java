@@ -5,13 +5,19 @@
 package net.sourceforge.pmd.cpd;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Unit test for {@link CPD}
@@ -21,6 +27,9 @@ public class CPDTest {
     private static final String BASE_TEST_RESOURCE_PATH = "src/test/resources/net/sourceforge/pmd/cpd/files/";
     private static final String TARGET_TEST_RESOURCE_PATH = "target/classes/net/sourceforge/pmd/cpd/files/";
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private CPD cpd;
 
     // Symlinks are not well supported under Windows - so the tests are
@@ -130,6 +139,116 @@ public class CPDTest {
         }
     }
 
+    /**
+     * Tokenizing the files concurrently must find the same duplicates as
+     * tokenizing them one by one, in the order the files are added.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentTokenizationKeepsFileOrder() throws Exception {
+        assertConcurrentTokenizationFindsSameMatches(new AnyLanguage("any"), cpd);
+    }
+
+    /**
+     * The tokenizers derived from {@link AbstractTokenizer} are shared by the
+     * threads.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentTokenizationWithAbstractTokenizer() throws Exception {
+        Language language = new AbstractLanguage("Script", "script", new AbstractTokenizer() {
+            {
+                stringToken = Arrays.asList("\"", "'");
+                ignorableCharacter = Arrays.asList(";", "{", "}", "(", ")");
+                ignorableStmt = new ArrayList<>();
+                oneLineCommentChar = '/';
+            }
+        }, "java", "txt") {
+        };
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(language);
+        configuration.setMinimumTileSize(10);
+        configuration.postContruct();
+        assertConcurrentTokenizationFindsSameMatches(language, new CPD(configuration));
+    }
+
+    private void assertConcurrentTokenizationFindsSameMatches(Language language, CPD cpd) throws Exception {
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(language);
+        configuration.setMinimumTileSize(10);
+        configuration.setThreads(4);
+        configuration.postContruct();
+        CPD concurrentCpd = new CPD(configuration);
+
+        List<File> files = Arrays.asList(new File(BASE_TEST_RESOURCE_PATH, "dup2.java"),
+                new File(BASE_TEST_RESOURCE_PATH, "real-file.txt"),
+                new File(BASE_TEST_RESOURCE_PATH, "dup1.java"));
+        concurrentCpd.add(files);
+        concurrentCpd.go();
+        for (File file : files) {
+            cpd.add(file);
+        }
+        cpd.go();
+
+        Assert.assertEquals(concurrentCpd.getSourcePaths(), cpd.getSourcePaths());
+        Iterator<Match> expected = cpd.getMatches();
+        Iterator<Match> matches = concurrentCpd.getMatches();
+        Assert.assertTrue(matches.hasNext());
+        while (expected.hasNext()) {
+            Match expectedMatch = expected.next();
+            Match match = matches.next();
+            Assert.assertEquals(expectedMatch.getTokenCount(), match.getTokenCount());
+            Assert.assertEquals(expectedMatch.getFirstMark().getFilename(), match.getFirstMark().getFilename());
+            Assert.assertEquals(expectedMatch.getSecondMark().getFilename(), match.getSecondMark().getFilename());
+            Assert.assertEquals(expectedMatch.getSourceCodeSlice(), match.getSourceCodeSlice());
+        }
+        Assert.assertFalse(matches.hasNext());
+    }
+
+    @Test
+    public void testCachedTokensAreReused() throws Exception {
+        File dup1 = tempFolder.newFile("dup1.java");
+        File dup2 = tempFolder.newFile("dup2.java");
+        FileUtils.copyFile(new File(BASE_TEST_RESOURCE_PATH, "dup1.java"), dup1);
+        FileUtils.copyFile(new File(BASE_TEST_RESOURCE_PATH, "dup2.java"), dup2);
+        File cacheFile = new File(tempFolder.getRoot(), "cpd.cache");
+
+        List<Match> firstRun = runWithCache(cacheFile, Arrays.asList(dup1, dup2), false);
+        Assert.assertFalse(firstRun.isEmpty());
+        Assert.assertTrue(cacheFile.isFile());
+
+        // the tokens are read from the cache
+        List<Match> secondRun = runWithCache(cacheFile, Arrays.asList(dup1, dup2), false);
+        Assert.assertEquals(firstRun.size(), secondRun.size());
+        Assert.assertEquals(firstRun.get(0).getSourceCodeSlice(), secondRun.get(0).getSourceCodeSlice());
+        Assert.assertEquals(firstRun.get(0).getFirstMark().getBeginLine(),
+                secondRun.get(0).getFirstMark().getBeginLine());
+        Assert.assertTrue(runWithCache(cacheFile, Arrays.asList(dup1, dup2), true).isEmpty());
+
+        // only the changed file is reported
+        FileUtils.write(dup2, FileUtils.readFileToString(dup2, "UTF-8") + "\n// changed\n", "UTF-8");
+        List<Match> changedRun = runWithCache(cacheFile, Arrays.asList(dup1, dup2), true);
+        Assert.assertEquals(firstRun.size(), changedRun.size());
+    }
+
+    private List<Match> runWithCache(File cacheFile, List<File> files, boolean changedFilesOnly) throws Exception {
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(new AnyLanguage("any"));
+        configuration.setMinimumTileSize(10);
+        configuration.setCacheLocation(cacheFile.getPath());
+        configuration.setChangedFilesOnly(changedFilesOnly);
+        configuration.postContruct();
+        CPD cachedCpd = new CPD(configuration);
+        cachedCpd.add(files);
+        cachedCpd.go();
+
+        List<Match> matches = new ArrayList<>();
+        for (Iterator<Match> i = cachedCpd.getMatches(); i.hasNext();) {
+            matches.add(i.next());
+        }
+        return matches;
+    }
+
     /**
      * Simple listener that fails, if too many files were added and not skipped.
      */
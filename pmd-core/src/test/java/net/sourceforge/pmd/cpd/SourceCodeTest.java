@@ -7,14 +7,22 @@ package net.sourceforge.pmd.cpd;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.cpd.SourceCode.FileCodeLoader;
 
 public class SourceCodeTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private static final String BASE_RESOURCE_PATH = "src/test/resources/net/sourceforge/pmd/cpd/files/";
 
     private static final String SAMPLE_CODE = "Line 1\n" + "Line 2\n" + "Line 3\n" + "Line 4\n";
@@ -37,6 +45,48 @@ public class SourceCodeTest {
         assertEquals("Line 1" + PMD.EOL + "Line 2", sourceCode.getSlice(1, 2));
     }
 
+    @Test
+    public void testSliceWithoutLoadedCode() {
+        SourceCode sourceCode = new SourceCode(new SourceCode.StringCodeLoader(SAMPLE_CODE, "Foo.java"));
+
+        assertEquals("Line 2", sourceCode.getSlice(2, 2));
+        assertEquals("Line 2" + PMD.EOL + "Line 3", sourceCode.getSlice(2, 3));
+    }
+
+    @Test
+    public void testLineTerminatorsAreNormalized() {
+        SourceCode sourceCode = new SourceCode(new SourceCode.StringCodeLoader("Line 1\r\nLine 2\rLine 3", "Foo.java"));
+
+        assertEquals(Arrays.asList("Line 1", "Line 2", "Line 3"), sourceCode.getCode());
+        assertEquals("Line 1" + PMD.EOL + "Line 2" + PMD.EOL + "Line 3" + PMD.EOL,
+                sourceCode.getCodeBuffer().toString());
+        assertEquals("Line 2" + PMD.EOL + "Line 3", sourceCode.getSlice(2, 3));
+    }
+
+    @Test
+    public void testBOMIsSkippedWhenLoading() throws Exception {
+        FileCodeLoader loader = new SourceCode.FileCodeLoader(new File(BASE_RESOURCE_PATH + "file_with_utf8_bom.java"),
+                "ISO-8859-1");
+        SourceCode sourceCode = new SourceCode(loader);
+
+        assertEquals("/**", sourceCode.getCode().get(0));
+        assertEquals("UTF-8", loader.getEncoding());
+    }
+
+    @Test
+    public void testLargeFile() throws Exception {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; code.length() < 200 * 1024; i++) {
+            code.append("int field").append(i).append(" = \u00e9;\n");
+        }
+        File file = tempFolder.newFile("Large.java");
+        Files.write(file.toPath(), code.toString().getBytes(StandardCharsets.UTF_8));
+
+        SourceCode sourceCode = new SourceCode(new SourceCode.FileCodeLoader(file, "UTF-8"));
+        assertEquals(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8), sourceCode.getCode());
+        assertEquals("int field1000 = \u00e9;", sourceCode.getSlice(1001, 1001));
+    }
+
     @Test
     public void testEncodingDetectionFromBOM() throws Exception {
         FileCodeLoader loader = new SourceCode.FileCodeLoader(new File(BASE_RESOURCE_PATH + "file_with_utf8_bom.java"),
@@ -0,0 +1,98 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SuffixArrayMatcherTest {
+
+    @Before
+    public void setUp() {
+        TokenEntry.clearImages();
+    }
+
+    @Test
+    public void testSameMatchesAsHashing() {
+        Tokens tokens = tokenize("a b c d e f x a b c d e f y", "z a b c d e f");
+
+        assertEquals(findMatches(tokens, 5, false), findMatches(tokens, 5, true));
+        assertEquals("[6 tokens: 0 7 16]", findMatches(tokens, 5, true).toString());
+    }
+
+    @Test
+    public void testRepeatedFiles() {
+        String[] files = new String[50];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = "p q r s t u v w";
+        }
+        Tokens tokens = tokenize(files);
+
+        List<String> matches = findMatches(tokens, 3, true);
+        assertEquals(findMatches(tokens, 3, false), matches);
+        assertEquals(1, matches.size());
+    }
+
+    @Test
+    public void testRandomTokens() {
+        Random random = new Random(42);
+        for (int run = 0; run < 300; run++) {
+            TokenEntry.clearImages();
+            int alphabet = 1 + random.nextInt(4);
+            String[] files = new String[1 + random.nextInt(4)];
+            for (int f = 0; f < files.length; f++) {
+                StringBuilder file = new StringBuilder();
+                int length = random.nextInt(40);
+                for (int t = 0; t < length; t++) {
+                    file.append((char) ('a' + random.nextInt(alphabet))).append(' ');
+                }
+                files[f] = file.toString();
+            }
+            Tokens tokens = tokenize(files);
+            int min = 2 + random.nextInt(5);
+
+            assertEquals("run " + run, findMatches(tokens, min, false), findMatches(tokens, min, true));
+        }
+    }
+
+    private static Tokens tokenize(String... files) {
+        Tokens tokens = new Tokens();
+        for (int f = 0; f < files.length; f++) {
+            for (String image : files[f].split(" ")) {
+                if (!image.isEmpty()) {
+                    tokens.add(new TokenEntry(image, "File" + f + ".java", 1));
+                }
+            }
+            tokens.add(TokenEntry.getEOF());
+        }
+        return tokens;
+    }
+
+    private static List<String> findMatches(Tokens tokens, int min, boolean suffixArray) {
+        MatchAlgorithm matchAlgorithm = new MatchAlgorithm(Collections.<String, SourceCode>emptyMap(), tokens, min);
+        matchAlgorithm.setSuffixArray(suffixArray);
+        matchAlgorithm.findMatches();
+
+        List<String> result = new ArrayList<>();
+        for (Iterator<Match> matches = matchAlgorithm.matches(); matches.hasNext();) {
+            Match match = matches.next();
+            StringBuilder builder = new StringBuilder().append(match.getTokenCount()).append(" tokens:");
+            for (Mark mark : match) {
+                builder.append(' ').append(mark.getToken().getIndex());
+                assertEquals(match.getFirstMark().getToken().hashCode(), mark.getToken().hashCode());
+            }
+            result.add(builder.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokensTest {
+
+    @Before
+    public void setUp() {
+        TokenEntry.clearImages();
+    }
+
+    @Test
+    public void testTokensView() {
+        Tokens tokens = new Tokens();
+        tokens.add(new TokenEntry("public", "Foo.java", 1));
+        tokens.add(new TokenEntry("class", "Foo.java", 1));
+        tokens.add(TokenEntry.getEOF());
+        tokens.add(new TokenEntry("public", "Bar.java", 3));
+        tokens.add(TokenEntry.getEOF());
+
+        List<TokenEntry> entries = tokens.getTokens();
+        assertEquals(5, entries.size());
+        assertEquals("Foo.java", entries.get(1).getTokenSrcID());
+        assertEquals(1, entries.get(1).getIndex());
+        assertSame(TokenEntry.EOF, entries.get(2));
+        assertEquals("Bar.java", entries.get(3).getTokenSrcID());
+        assertEquals(3, entries.get(3).getBeginLine());
+        assertEquals(entries.get(0).getIdentifier(), entries.get(3).getIdentifier());
+        assertEquals("public", entries.get(3).toString());
+    }
+
+    @Test
+    public void testTruncate() {
+        Tokens tokens = new Tokens();
+        tokens.add(new TokenEntry("public", "Foo.java", 1));
+        tokens.add(TokenEntry.getEOF());
+        int savedTokenCount = tokens.size();
+        for (int i = 0; i < 2000; i++) {
+            tokens.add(new TokenEntry("x" + i, "Bar.java", i + 1));
+        }
+        tokens.truncate(savedTokenCount);
+        tokens.add(new TokenEntry("class", "Baz.java", 2));
+
+        assertEquals(3, tokens.size());
+        assertEquals("Baz.java", tokens.getTokens().get(2).getTokenSrcID());
+        assertEquals(2, tokens.getTokens().get(2).getBeginLine());
+    }
+
+    @Test
+    public void testSetImage() {
+        Tokens tokens = new Tokens();
+        tokens.add(new TokenEntry("Foo", "Foo.java", 1));
+        tokens.add(new TokenEntry("Bar", "Foo.java", 1));
+        tokens.setImage(1, "Foo");
+
+        assertEquals(tokens.getTokens().get(0).getIdentifier(), tokens.getTokens().get(1).getIdentifier());
+    }
+
+    @Test
+    public void testTokensViewCanBeAppendedAndCleared() {
+        Tokens tokens = new Tokens();
+        List<TokenEntry> entries = tokens.getTokens();
+        entries.add(new TokenEntry("public", "Foo.java", 1));
+        entries.add(new TokenEntry("class", "Foo.java", 1));
+        entries.add(TokenEntry.getEOF());
+        assertEquals(3, tokens.size());
+
+        entries.subList(1, 3).clear();
+        assertEquals(1, tokens.size());
+        entries.clear();
+        assertEquals(0, tokens.size());
+    }
+
+    @Test
+    public void testTableCapacity() {
+        assertEquals(2, MatchAlgorithm.MarkGroups.capacityFor(0));
+        assertEquals(2, MatchAlgorithm.MarkGroups.capacityFor(1));
+        assertEquals(2048, MatchAlgorithm.MarkGroups.capacityFor(1024));
+        assertEquals(2048, MatchAlgorithm.MarkGroups.capacityFor(1536));
+        assertEquals(4096, MatchAlgorithm.MarkGroups.capacityFor(1537));
+        assertEquals(1 << 30, MatchAlgorithm.MarkGroups.capacityFor(1 << 29));
+        assertEquals(1 << 30, MatchAlgorithm.MarkGroups.capacityFor(1 << 30));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTableCapacityOverflow() {
+        MatchAlgorithm.MarkGroups.capacityFor((1 << 30) + 1);
+    }
+}
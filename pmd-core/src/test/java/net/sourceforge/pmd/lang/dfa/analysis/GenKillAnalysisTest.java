@@ -0,0 +1,136 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.dfa.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+import net.sourceforge.pmd.lang.dfa.StartOrEndDataFlowNode;
+import net.sourceforge.pmd.lang.dfa.VariableAccess;
+
+public class GenKillAnalysisTest {
+
+    private final List<DataFlowNode> flow = new ArrayList<>();
+
+    private DataFlowNode node(int line, VariableAccess... accesses) {
+        DataFlowNode node = new StartOrEndDataFlowNode(flow, line, flow.isEmpty());
+        node.setVariableAccess(new ArrayList<>(Arrays.asList(accesses)));
+        return node;
+    }
+
+    private static VariableAccess def(String name) {
+        return new VariableAccess(VariableAccess.DEFINITION, name);
+    }
+
+    private static VariableAccess ref(String name) {
+        return new VariableAccess(VariableAccess.REFERENCING, name);
+    }
+
+    private static VariableAccess undef(String name) {
+        return new VariableAccess(VariableAccess.UNDEFINITION, name);
+    }
+
+    @Test
+    public void testReachingDefinitionsOfBranches() {
+        node(1);
+        DataFlowNode first = node(2, def("x"));
+        DataFlowNode second = node(3, def("x"));
+        DataFlowNode use = node(4, ref("x"));
+        // the second definition may be skipped
+        first.addPathToChild(use);
+
+        AccessTable table = new AccessTable(flow);
+        ReachingDefinitions reaching = new ReachingDefinitions(table);
+        reaching.solve();
+
+        Access useAccess = table.getAccesses(use).get(0);
+        List<Access> definitions = reaching.getReachingDefinitions(useAccess);
+        assertEquals(Arrays.asList(table.getAccesses(first).get(0), table.getAccesses(second).get(0)), definitions);
+
+        DefUseChains chains = new DefUseChains(table, reaching);
+        assertEquals(definitions, chains.getDefinitions(useAccess));
+        assertEquals(Collections.singletonList(useAccess), chains.getUses(table.getAccesses(second).get(0)));
+    }
+
+    @Test
+    public void testUndefinitionKillsDefinitions() {
+        node(1);
+        node(2, def("x"), undef("x"));
+        DataFlowNode use = node(3, ref("x"));
+
+        AccessTable table = new AccessTable(flow);
+        ReachingDefinitions reaching = new ReachingDefinitions(table);
+        reaching.solve();
+
+        assertTrue(reaching.getReachingDefinitions(table.getAccesses(use).get(0)).isEmpty());
+    }
+
+    @Test
+    public void testLiveVariablesInLoop() {
+        node(1);
+        DataFlowNode head = node(2, ref("i"));
+        DataFlowNode body = node(3, def("i"), def("y"));
+        DataFlowNode end = node(4);
+        body.addPathToChild(head);
+        head.addPathToChild(end);
+
+        AccessTable table = new AccessTable(flow);
+        LiveVariables live = new LiveVariables(table);
+        live.solve();
+
+        assertTrue(live.isLiveAfter(body, "i"));
+        assertFalse(live.isLiveAfter(body, "y"));
+        assertFalse(live.isLiveAfter(table.getAccesses(body).get(1)));
+        assertTrue(live.isLiveBefore(head, "i"));
+        assertFalse(live.isLiveAfter(end, "i"));
+        assertFalse(live.isLiveAfter(end, "unknown"));
+    }
+
+    @Test
+    public void testPrecedingAccessesAcrossLoop() {
+        node(1, def("x"));
+        DataFlowNode head = node(2, ref("x"));
+        DataFlowNode body = node(3, def("x"));
+        node(4);
+        body.addPathToChild(head);
+
+        AccessTable table = new AccessTable(flow);
+        LastAccesses last = new LastAccesses(table);
+        last.solve();
+
+        List<Access> preceding = last.getPrecedingAccesses(table.getAccesses(head).get(0));
+        assertEquals(2, preceding.size());
+        assertEquals(1, preceding.get(0).getNode().getLine());
+        assertEquals(3, preceding.get(1).getNode().getLine());
+        assertEquals(Collections.singletonList(table.getAccesses(head).get(0)),
+                last.getPrecedingAccesses(table.getAccesses(body).get(0)));
+    }
+
+    @Test
+    public void testUnreachableNodes() {
+        node(1);
+        DataFlowNode end = node(2);
+        DataFlowNode dead = new StartOrEndDataFlowNode(flow, 3, false);
+        end.removePathToChild(dead);
+        dead.setVariableAccess(new ArrayList<>(Collections.singletonList(def("x"))));
+
+        AccessTable table = new AccessTable(flow);
+        LastAccesses last = new LastAccesses(table);
+        last.solve();
+
+        assertTrue(last.isReachable(end));
+        assertFalse(last.isReachable(dead));
+        assertTrue(last.getOut(dead).isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.Node;
+
+public class AbstractRuleChainVisitorTest {
+
+    @Test
+    public void testVisitsIndexedNodesWithUnderlyingRule() {
+        final CollectingRule rule = new CollectingRule("dummyNode", "otherNode");
+        final RuleReference reference = new RuleReference(rule, null);
+        final AbstractRuleChainVisitor visitor = newVisitor(reference);
+
+        final Node root = newTree(150, 3);
+        final RuleContext ctx = newContext();
+        visitor.visitAll(Collections.singletonList(root), ctx);
+
+        // the root and its 150 children, then the 3 other nodes
+        assertEquals(154, rule.visited.size());
+        assertEquals("dummyNode", rule.visited.get(0).getXPathNodeName());
+        assertEquals("otherNode", rule.visited.get(153).getXPathNodeName());
+    }
+
+    @Test
+    public void testNodesAreClearedBetweenVisits() {
+        final CollectingRule rule = new CollectingRule("otherNode");
+        final AbstractRuleChainVisitor visitor = newVisitor(rule);
+
+        final RuleContext ctx = newContext();
+        visitor.visitAll(Collections.singletonList(newTree(0, 5)), ctx);
+        assertEquals(5, rule.visited.size());
+
+        rule.visited.clear();
+        visitor.visitAll(Collections.singletonList(newTree(10, 2)), ctx);
+        assertEquals(2, rule.visited.size());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testNodesAddedToDeprecatedMapAreVisited() {
+        final CollectingRule rule = new CollectingRule("otherNode");
+        final AbstractRuleChainVisitor visitor = new DummyLanguageModule.DummyRuleChainVisitor() {
+            @Override
+            protected void indexNodes(List<Node> nodes, RuleContext ctx) {
+                for (final Node node : nodes) {
+                    for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                        final List<Node> indexed = nodeNameToNodes.get(node.jjtGetChild(i).getXPathNodeName());
+                        if (indexed != null) {
+                            indexed.add(node.jjtGetChild(i));
+                        }
+                    }
+                }
+            }
+        };
+        visitor.add(new RuleSetFactory().createSingleRuleRuleSet(rule), rule);
+
+        visitor.visitAll(Collections.singletonList(newTree(2, 150)), newContext());
+        assertEquals(150, rule.visited.size());
+    }
+
+    private static AbstractRuleChainVisitor newVisitor(final net.sourceforge.pmd.Rule rule) {
+        final RuleSet ruleSet = new RuleSetFactory().createSingleRuleRuleSet(rule);
+        final AbstractRuleChainVisitor visitor = new DummyLanguageModule.DummyRuleChainVisitor();
+        visitor.add(ruleSet, rule);
+        return visitor;
+    }
+
+    private static RuleContext newContext() {
+        final RuleContext ctx = new RuleContext();
+        ctx.setReport(new Report());
+        ctx.setLanguageVersion(LanguageRegistry.getLanguage(DummyLanguageModule.NAME).getDefaultVersion());
+        return ctx;
+    }
+
+    private static Node newTree(final int dummyNodes, final int otherNodes) {
+        final DummyNode root = new DummyNode(0);
+        int index = 0;
+        for (int i = 0; i < dummyNodes; i++) {
+            addChild(root, new DummyNode(1), index++);
+        }
+        for (int i = 0; i < otherNodes; i++) {
+            addChild(root, new DummyNode(2) {
+                @Override
+                public String getXPathNodeName() {
+                    return "otherNode";
+                }
+            }, index++);
+        }
+        return root;
+    }
+
+    private static void addChild(final Node parent, final Node child, final int index) {
+        parent.jjtAddChild(child, index);
+        child.jjtSetParent(parent);
+    }
+
+    private static class CollectingRule extends MockRule {
+        private final List<Node> visited = new ArrayList<>();
+
+        CollectingRule(final String... nodeNames) {
+            for (final String nodeName : nodeNames) {
+                addRuleChainVisit(nodeName);
+            }
+        }
+
+        @Override
+        public void apply(final List<? extends Node> nodes, final RuleContext ctx) {
+            visited.addAll(nodes);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.processor;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.Parser;
+
+public class AnalysisSessionTest {
+
+    private final LanguageVersion dummy12 = LanguageRegistry.findLanguageVersionByTerseName("dummy 1.2");
+    private final LanguageVersion dummy13 = LanguageRegistry.findLanguageVersionByTerseName("dummy 1.3");
+
+    @Test
+    public void testParserIsReusedPerLanguageVersion() {
+        AnalysisSession session = new AnalysisSession(new PMDConfiguration());
+
+        Parser parser = session.getParser(dummy12);
+        assertSame(parser, session.getParser(dummy12));
+        assertNotSame(parser, session.getParser(dummy13));
+    }
+
+    @Test
+    public void testResetDropsPooledInstances() {
+        AnalysisSession session = new AnalysisSession(new PMDConfiguration());
+
+        Parser parser = session.getParser(dummy12);
+        session.reset();
+        assertNotSame(parser, session.getParser(dummy12));
+    }
+}
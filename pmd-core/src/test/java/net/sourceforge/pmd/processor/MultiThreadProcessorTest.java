@@ -8,6 +8,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -39,9 +40,14 @@ public class MultiThreadProcessorTest {
     private SimpleReportListener reportListener;
     
     public void setUpForTest(final String ruleset) {
+        setUpForTest(ruleset, false);
+    }
+
+    public void setUpForTest(final String ruleset, final boolean boundedScheduling) {
         PMDConfiguration configuration = new PMDConfiguration();
         configuration.setRuleSets(ruleset);
         configuration.setThreads(2);
+        configuration.setBoundedScheduling(boundedScheduling);
         files = new ArrayList<>();
         files.add(new StringDataSource("file1-violation.dummy", "ABC"));
         files.add(new StringDataSource("file2-foo.dummy", "DEF"));
@@ -85,6 +91,72 @@ public class MultiThreadProcessorTest {
         Assert.assertEquals("Missing violation", 1, reportListener.violations.get());
     }
 
+    @Test
+    public void testBoundedSchedulingRendersAllReports() throws IOException {
+        setUpForTest("rulesets/MultiThreadProcessorTest/dysfunctional.xml", true);
+        for (int i = 0; i < 50; i++) {
+            files.add(new StringDataSource("file" + i + ".dummy", "GHI"));
+        }
+        final CountingRenderer renderer = new CountingRenderer();
+        renderer.start();
+        processor.processFiles(ruleSetFactory, files, ctx, Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+
+        // one report per file plus the base report
+        Assert.assertEquals("Not all reports have been rendered", files.size() + 1, renderer.fileReports);
+    }
+
+    @Test
+    public void testReportsAreRenderedOnRendererThread() throws IOException {
+        setUpForTest("rulesets/MultiThreadProcessorTest/dysfunctional.xml");
+        final CountingRenderer renderer = new CountingRenderer();
+        renderer.start();
+        processor.processFiles(ruleSetFactory, files, ctx, Collections.<Renderer>singletonList(renderer));
+        renderer.end();
+
+        Assert.assertEquals(files.size() + 1, renderer.fileReports);
+        Assert.assertNotSame(Thread.currentThread(), renderer.renderingThread);
+    }
+
+    @Test
+    public void testEachRendererReadsItsOwnReport() throws IOException {
+        setUpForTest("rulesets/MultiThreadProcessorTest/dysfunctional.xml");
+        final CountingRenderer first = new CountingRenderer();
+        final CountingRenderer second = new CountingRenderer();
+        first.start();
+        second.start();
+        processor.processFiles(ruleSetFactory, files, ctx, Arrays.<Renderer>asList(first, second));
+        first.end();
+        second.end();
+
+        Assert.assertEquals(files.size() + 1, first.renderedReports.size());
+        Assert.assertEquals(files.size() + 1, second.renderedReports.size());
+        for (int i = 0; i < first.renderedReports.size(); i++) {
+            Report report = first.renderedReports.get(i);
+            Report copy = second.renderedReports.get(i);
+            Assert.assertNotSame(report, copy);
+            Assert.assertEquals(report.size(), copy.size());
+        }
+    }
+
+    @Test
+    public void testRendererFailureIsPropagated() throws IOException {
+        setUpForTest("rulesets/MultiThreadProcessorTest/dysfunctional.xml");
+        final CountingRenderer renderer = new CountingRenderer() {
+            @Override
+            public void renderFileReport(Report report) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        renderer.start();
+        try {
+            processor.processFiles(ruleSetFactory, files, ctx, Collections.<Renderer>singletonList(renderer));
+            Assert.fail("The failure of the renderer has not been propagated");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("disk full", e.getCause().getMessage());
+        }
+    }
+
     private static class StringDataSource implements DataSource {
         private final String data;
         private final String name;
@@ -184,4 +256,22 @@ public class MultiThreadProcessorTest {
             return report;
         }
     }
+
+    private static class CountingRenderer extends SimpleRenderer {
+        private int fileReports;
+        private Thread renderingThread;
+        private final List<Report> renderedReports = new ArrayList<>();
+
+        /* default */ CountingRenderer() {
+            super(null, null);
+        }
+
+        @Override
+        public void renderFileReport(Report report) throws IOException {
+            fileReports++;
+            renderingThread = Thread.currentThread();
+            renderedReports.add(report);
+            super.renderFileReport(report);
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+
+public class SpillingReportTest {
+
+    @Test
+    public void testSpilledViolationsAreMergedInOrder() {
+        Random random = new Random(42);
+        Rule rule = new FooRule();
+        Report expected = new Report();
+        SpillingReport spilling = new SpillingReport(7);
+        try {
+            for (int file = 0; file < 20; file++) {
+                Report fileReport = new Report();
+                RuleContext ctx = new RuleContext();
+                ctx.setSourceCodeFilename("File" + random.nextInt(10) + ".java");
+                for (int i = random.nextInt(10); i > 0; i--) {
+                    Node node = createNode(random.nextInt(100) + 1, random.nextInt(80) + 1);
+                    fileReport.addRuleViolation(
+                            new ParametricRuleViolation<>(rule, ctx, node, "violation " + random.nextInt(3)));
+                }
+                expected.merge(fileReport);
+                spilling.merge(fileReport);
+            }
+
+            assertEquals(expected.size(), spilling.size());
+            assertEquals(expected.getSummary(), spilling.getSummary());
+            assertEquals(expected.getCountSummary(), spilling.getCountSummary());
+            assertEquals(describe(expected), describe(spilling));
+            // the report may be iterated again
+            assertEquals(describe(expected), describe(spilling));
+            assertFalse(spilling.isEmpty());
+        } finally {
+            spilling.close();
+        }
+    }
+
+    @Test
+    public void testManyRunsAreReadThroughOneChannel() {
+        Rule rule = new FooRule();
+        RuleContext ctx = new RuleContext();
+        ctx.setSourceCodeFilename("Foo.java");
+        // a run per violation, which used to open a file per run
+        SpillingReport spilling = new SpillingReport(1);
+        try {
+            for (int line = 5000; line > 0; line--) {
+                spilling.addRuleViolation(new ParametricRuleViolation<>(rule, ctx, createNode(line, 1), "violation"));
+            }
+
+            // an iteration which is given up is closed with the report
+            Iterator<RuleViolation> abandoned = spilling.iterator();
+            assertEquals(1, abandoned.next().getBeginLine());
+
+            int previousLine = 0;
+            for (RuleViolation violation : spilling) {
+                assertEquals(previousLine + 1, violation.getBeginLine());
+                previousLine = violation.getBeginLine();
+            }
+            assertEquals(5000, previousLine);
+        } finally {
+            spilling.close();
+        }
+    }
+
+    private static List<String> describe(Report report) {
+        List<String> descriptions = new ArrayList<>();
+        for (RuleViolation violation : report) {
+            descriptions.add(violation.getFilename() + ":" + violation.getBeginLine() + ":"
+                    + violation.getBeginColumn() + " " + violation.getDescription() + " " + violation.getRule().getName());
+        }
+        return descriptions;
+    }
+
+    private static Node createNode(int line, int column) {
+        DummyNode node = new DummyNode(1);
+        node.testingOnlySetBeginLine(line);
+        node.testingOnlySetBeginColumn(column);
+        node.testingOnlySetEndLine(line);
+        node.testingOnlySetEndColumn(column + 1);
+        return node;
+    }
+}
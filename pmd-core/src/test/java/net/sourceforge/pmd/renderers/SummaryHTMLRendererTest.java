@@ -109,6 +109,17 @@ public class SummaryHTMLRendererTest extends AbstractRendererTst {
                 + "</table></tr></table></body></html>" + PMD.EOL;
     }
 
+    @Test
+    public void testSpilledViolations() throws Exception {
+        Report rep = new Report();
+        rep.addRuleViolation(newRuleViolation(2));
+        rep.addRuleViolation(newRuleViolation(1));
+        Renderer renderer = getRenderer();
+        renderer.setProperty(AbstractAccumulatingRenderer.SPILL_THRESHOLD, 1);
+        String actual = ReportTest.render(renderer, rep);
+        assertEquals(getExpectedMultiple(), actual);
+    }
+
     @Test
     public void testShowSuppressions() throws Exception {
         Report rep = createEmptyReportWithSuppression();
@@ -0,0 +1,52 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.FileDataSource;
+
+public class FileUtilTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testCollectFilesInPathOrder() throws IOException {
+        File root = tempFolder.newFolder("src");
+        for (String path : new String[] { "b/Foo.java", "a/c/Bar.java", "a/Baz.java", "a/notes.txt", "A.java",
+            "d/e/f/Deep.java", "C/Upper.java", "empty/readme.txt", }) {
+            File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+        FilenameFilter javaFiles = new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".java");
+            }
+        };
+
+        // sorted by path ignoring the case, depth first
+        List<DataSource> expected = new ArrayList<>();
+        for (String path : new String[] { "a/Baz.java", "a/c/Bar.java", "A.java", "b/Foo.java", "C/Upper.java",
+            "d/e/f/Deep.java", }) {
+            expected.add(new FileDataSource(new File(root, path)));
+        }
+
+        assertEquals(expected, FileUtil.collectFiles(root.getPath(), javaFiles));
+    }
+}
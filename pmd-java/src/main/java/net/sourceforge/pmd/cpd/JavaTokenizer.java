@@ -5,7 +5,6 @@
 package net.sourceforge.pmd.cpd;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.Properties;
@@ -28,7 +27,8 @@ public class JavaTokenizer extends JavaCCTokenizer {
     private boolean ignoreLiterals;
     private boolean ignoreIdentifiers;
 
-    private ConstructorDetector constructorDetector;
+    // the tokenizer may be used by several threads at once
+    private final ThreadLocal<ConstructorDetector> constructorDetector = new ThreadLocal<>();
 
     public void setProperties(Properties properties) {
         ignoreAnnotations = Boolean.parseBoolean(properties.getProperty(IGNORE_ANNOTATIONS, "false"));
@@ -38,14 +38,17 @@ public class JavaTokenizer extends JavaCCTokenizer {
 
     @Override
     public void tokenize(SourceCode sourceCode, Tokens tokenEntries) throws IOException {
-        constructorDetector = new ConstructorDetector(ignoreIdentifiers);
-        super.tokenize(sourceCode, tokenEntries);
+        constructorDetector.set(new ConstructorDetector(ignoreIdentifiers));
+        try {
+            super.tokenize(sourceCode, tokenEntries);
+        } finally {
+            constructorDetector.remove();
+        }
     }
 
     @Override
     protected TokenManager getLexerForSource(SourceCode sourceCode) {
-        final StringBuilder stringBuilder = sourceCode.getCodeBuffer();
-        return new JavaTokenManager(new StringReader(stringBuilder.toString()));
+        return new JavaTokenManager(sourceCode.getCodeReader());
     }
 
     @Override
@@ -58,7 +61,8 @@ public class JavaTokenizer extends JavaCCTokenizer {
         String image = currentToken.getImage();
         Token javaToken = (Token) currentToken;
 
-        constructorDetector.restoreConstructorToken(tokenEntries, javaToken);
+        ConstructorDetector detector = constructorDetector.get();
+        detector.restoreConstructorToken(tokenEntries, javaToken);
 
         if (ignoreLiterals && (javaToken.kind == JavaParserConstants.STRING_LITERAL
                 || javaToken.kind == JavaParserConstants.CHARACTER_LITERAL
@@ -70,7 +74,7 @@ public class JavaTokenizer extends JavaCCTokenizer {
             image = String.valueOf(javaToken.kind);
         }
 
-        constructorDetector.processToken(javaToken);
+        detector.processToken(javaToken);
 
         return new TokenEntry(image, fileName, currentToken.getBeginLine());
     }
@@ -282,8 +286,7 @@ public class JavaTokenizer extends JavaCCTokenizer {
                 if (!classMembersIndentations.isEmpty()
                         && classMembersIndentations.peek().name.equals(prevIdentifier)) {
                     int lastTokenIndex = tokenEntries.size() - 1;
-                    TokenEntry lastToken = tokenEntries.getTokens().get(lastTokenIndex);
-                    lastToken.setImage(prevIdentifier);
+                    tokenEntries.setImage(lastTokenIndex, prevIdentifier);
                 }
             }
         }
@@ -48,15 +48,21 @@ import net.sf.saxon.sxpath.IndependentContext;
  * Implementation of LanguageVersionHandler for the Java AST. It uses anonymous
  * classes as adapters of the visitors to the VisitorStarter interface.
  *
+ * <p>The visitor starters of the analysis facades reuse the same visitors for
+ * each started node, so that an analysis thread which keeps them doesn't
+ * create new ones for each file. A visitor starter must thus not be used by
+ * several threads at once.
+ *
  * @author pieter_van_raemdonck - Application Engineers NV/SA - www.ae.be
  */
 public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler {
 
     private final LanguageMetricsProvider<ASTAnyTypeDeclaration, MethodLikeNode> myMetricsProvider = new JavaMetricsProvider();
+    private final DataFlowHandler dataFlowHandler = new JavaDataFlowHandler();
 
     @Override
     public DataFlowHandler getDataFlowHandler() {
-        return new JavaDataFlowHandler();
+        return dataFlowHandler;
     }
 
     @Override
@@ -86,9 +92,11 @@ public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler
     @Override
     public VisitorStarter getDataFlowFacade() {
         return new VisitorStarter() {
+            private final DataFlowFacade dataFlowFacade = new DataFlowFacade();
+
             @Override
             public void start(Node rootNode) {
-                new DataFlowFacade().initializeWith(getDataFlowHandler(), (ASTCompilationUnit) rootNode);
+                dataFlowFacade.initializeWith(getDataFlowHandler(), (ASTCompilationUnit) rootNode);
             }
         };
     }
@@ -96,9 +104,11 @@ public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler
     @Override
     public VisitorStarter getSymbolFacade() {
         return new VisitorStarter() {
+            private final SymbolFacade symbolFacade = new SymbolFacade();
+
             @Override
             public void start(Node rootNode) {
-                new SymbolFacade().initializeWith(null, (ASTCompilationUnit) rootNode);
+                symbolFacade.initializeWith(null, (ASTCompilationUnit) rootNode);
             }
         };
     }
@@ -106,9 +116,11 @@ public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler
     @Override
     public VisitorStarter getSymbolFacade(final ClassLoader classLoader) {
         return new VisitorStarter() {
+            private final SymbolFacade symbolFacade = new SymbolFacade();
+
             @Override
             public void start(Node rootNode) {
-                new SymbolFacade().initializeWith(classLoader, (ASTCompilationUnit) rootNode);
+                symbolFacade.initializeWith(classLoader, (ASTCompilationUnit) rootNode);
             }
         };
     }
@@ -116,9 +128,11 @@ public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler
     @Override
     public VisitorStarter getTypeResolutionFacade(final ClassLoader classLoader) {
         return new VisitorStarter() {
+            private final TypeResolutionFacade typeResolutionFacade = new TypeResolutionFacade();
+
             @Override
             public void start(Node rootNode) {
-                new TypeResolutionFacade().initializeWith(classLoader, (ASTCompilationUnit) rootNode);
+                typeResolutionFacade.initializeWith(classLoader, (ASTCompilationUnit) rootNode);
             }
         };
     }
@@ -136,9 +150,11 @@ public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler
     @Override
     public VisitorStarter getMultifileFacade() {
         return new VisitorStarter() {
+            private final MultifileVisitorFacade multifileFacade = new MultifileVisitorFacade();
+
             @Override
             public void start(Node rootNode) {
-                new MultifileVisitorFacade().initializeWith((ASTCompilationUnit) rootNode);
+                multifileFacade.initializeWith((ASTCompilationUnit) rootNode);
             }
         };
     }
@@ -147,9 +163,11 @@ public abstract class AbstractJavaHandler extends AbstractLanguageVersionHandler
     @Override
     public VisitorStarter getQualifiedNameResolutionFacade(final ClassLoader classLoader) {
         return new VisitorStarter() {
+            private final QualifiedNameResolver qualifiedNameResolver = new QualifiedNameResolver();
+
             @Override
             public void start(Node rootNode) {
-                new QualifiedNameResolver().initializeWith(classLoader, (ASTCompilationUnit) rootNode);
+                qualifiedNameResolver.initializeWith(classLoader, (ASTCompilationUnit) rootNode);
             }
         };
     }
@@ -4,12 +4,16 @@
 
 package net.sourceforge.pmd.lang.java.ast;
 
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.dfa.DataFlowNode;
+import net.sourceforge.pmd.lang.java.dfa.DataFlowFacade;
 import net.sourceforge.pmd.lang.java.multifile.signature.JavaOperationSignature;
 
 
 public abstract class AbstractMethodOrConstructorDeclaration extends AbstractMethodLikeNode implements ASTMethodOrConstructorDeclaration {
 
     private JavaOperationSignature signature;
+    private DataFlowFacade dataFlowFacade;
 
 
     AbstractMethodOrConstructorDeclaration(int i) {
@@ -30,4 +34,29 @@ public abstract class AbstractMethodOrConstructorDeclaration extends AbstractMet
 
         return signature;
     }
+
+
+    /**
+     * Returns the data flow of this method or constructor. It is built the
+     * first time it's asked for, if a data flow facade was set.
+     */
+    @Override
+    public DataFlowNode getDataFlowNode() {
+        if (dataFlowFacade != null) {
+            // cleared first, building the data flow asks for it again
+            DataFlowFacade facade = dataFlowFacade;
+            dataFlowFacade = null;
+            facade.buildDataFlowFor(this);
+        }
+        return super.getDataFlowNode();
+    }
+
+
+    /**
+     * Sets the facade which builds the data flow of this node on demand.
+     */
+    @InternalApi
+    public void setDataFlowFacade(DataFlowFacade dataFlowFacade) {
+        this.dataFlowFacade = dataFlowFacade;
+    }
 }
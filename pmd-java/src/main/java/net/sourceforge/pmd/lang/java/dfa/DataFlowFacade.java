@@ -4,40 +4,70 @@
 
 package net.sourceforge.pmd.lang.java.dfa;
 
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.DataFlowHandler;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.ASTConstructorDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.AbstractMethodOrConstructorDeclaration;
 import net.sourceforge.pmd.lang.java.ast.JavaParserVisitorAdapter;
 
 /**
- * TODO What about initializers? This only processes methods and
+ * Sets up the data flow of the methods and constructors of a compilation
+ * unit. The data flow of each one is only built the first time a rule asks
+ * for it, with {@link AbstractMethodOrConstructorDeclaration#getDataFlowNode()},
+ * so that the methods no rule looks at cost nothing.
+ *
+ * <p>The facade may be reused for the next compilation units with the same
+ * data flow handler, once the data flow of the previous ones isn't needed
+ * anymore. It must not be used by several threads at once.
+ *
+ * <p>TODO What about initializers? This only processes methods and
  * constructors.
  *
  * @author raik
  */
 public class DataFlowFacade extends JavaParserVisitorAdapter {
 
+    private DataFlowHandler dataFlowHandler;
     private StatementAndBraceFinder sbf;
-    private VariableAccessVisitor vav;
+    private final VariableAccessVisitor vav = new VariableAccessVisitor();
 
     public void initializeWith(DataFlowHandler dataFlowHandler, ASTCompilationUnit node) {
-        sbf = new StatementAndBraceFinder(dataFlowHandler);
-        vav = new VariableAccessVisitor();
+        if (sbf == null || this.dataFlowHandler != dataFlowHandler) {
+            sbf = new StatementAndBraceFinder(dataFlowHandler);
+            this.dataFlowHandler = dataFlowHandler;
+        }
         node.jjtAccept(this, null);
     }
 
     @Override
     public Object visit(ASTMethodDeclaration node, Object data) {
-        sbf.buildDataFlowFor(node);
-        vav.compute(node);
+        node.setDataFlowFacade(this);
         return data;
     }
 
     @Override
     public Object visit(ASTConstructorDeclaration node, Object data) {
-        sbf.buildDataFlowFor(node);
-        vav.compute(node);
+        node.setDataFlowFacade(this);
         return data;
     }
+
+    /**
+     * Builds the data flow of the given method or constructor.
+     *
+     * @param node a method or constructor of the compilation unit
+     */
+    public void buildDataFlowFor(AbstractMethodOrConstructorDeclaration node) {
+        try (TimedOperation to = TimeTracker.startOperation(TimedOperationCategory.DFA)) {
+            sbf.buildDataFlowFor(node);
+            if (node instanceof ASTMethodDeclaration) {
+                vav.compute((ASTMethodDeclaration) node);
+            } else {
+                vav.compute((ASTConstructorDeclaration) node);
+            }
+        }
+    }
 }
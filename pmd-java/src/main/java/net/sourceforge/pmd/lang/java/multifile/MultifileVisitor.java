@@ -7,6 +7,7 @@ package net.sourceforge.pmd.lang.java.multifile;
 import java.util.Stack;
 
 import net.sourceforge.pmd.lang.java.ast.ASTAnyTypeDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodOrConstructorDeclaration;
 import net.sourceforge.pmd.lang.java.ast.JavaParserVisitorReducedAdapter;
@@ -28,6 +29,14 @@ public class MultifileVisitor extends JavaParserVisitorReducedAdapter {
     }
 
 
+    @Override
+    public Object visit(ASTCompilationUnit node, Object data) {
+        // the visitor may be reused, after a compilation unit which failed
+        stack.clear();
+        return super.visit(node, data);
+    }
+
+
     @Override
     public Object visit(ASTAnyTypeDeclaration node, Object data) {
         stack.push(toplevel.getClassStats(node.getQualifiedName(), true));
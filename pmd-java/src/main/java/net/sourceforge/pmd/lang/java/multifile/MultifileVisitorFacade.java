@@ -13,9 +13,9 @@ import net.sourceforge.pmd.lang.java.ast.JavaParserVisitorAdapter;
  */
 public final class MultifileVisitorFacade extends JavaParserVisitorAdapter {
 
+    private final MultifileVisitor visitor = new MultifileVisitor(PackageStats.INSTANCE);
+
     public void initializeWith(ASTCompilationUnit rootNode) {
-        PackageStats projectMirror = PackageStats.INSTANCE;
-        MultifileVisitor visitor = new MultifileVisitor(projectMirror);
         rootNode.jjtAccept(visitor, null);
     }
 
@@ -129,7 +129,9 @@ public class QualifiedNameResolver extends JavaParserVisitorReducedAdapter {
         localIndices = ListFactory.emptyList();
         classNames = ListFactory.emptyList();
         anonymousCounters.clear();
+        lambdaCounters.clear();
         currentLocalIndices.clear();
+        innermostEnclosingTypeName.clear();
 
         return super.visit(node, data);
     }
@@ -4,98 +4,37 @@
 
 package net.sourceforge.pmd.lang.java.rule;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-
 import net.sourceforge.pmd.RuleContext;
-import net.sourceforge.pmd.lang.dfa.DataFlowNode;
-import net.sourceforge.pmd.lang.dfa.VariableAccess;
-import net.sourceforge.pmd.lang.dfa.pathfinder.CurrentPath;
-import net.sourceforge.pmd.lang.dfa.pathfinder.DAAPathFinder;
-import net.sourceforge.pmd.lang.dfa.pathfinder.Executable;
+import net.sourceforge.pmd.lang.dfa.analysis.Access;
+import net.sourceforge.pmd.lang.dfa.analysis.AccessTable;
+import net.sourceforge.pmd.lang.dfa.analysis.LastAccesses;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 
 //FUTURE This is not referenced by any RuleSet?
-public class UselessAssignment extends AbstractJavaRule implements Executable {
-
-    private RuleContext rc;
+public class UselessAssignment extends AbstractJavaRule {
 
     @Override
     public Object visit(ASTMethodDeclaration node, Object data) {
-        this.rc = (RuleContext) data;
-
-        /*
-         * IDataFlowNode n1 = node.getDataFlowNode(); List f = n1.getFlow(); for
-         * (Iterator i = f.iterator(); i.hasNext();) { DataFlowNode dfan =
-         * (DataFlowNode)i.next(); System.out.println(dfan); List va =
-         * dfan.getVariableAccess(); for (Iterator j = va.iterator();
-         * j.hasNext();) { VariableAccess o = (VariableAccess)j.next();
-         * System.out.println(o); } }
-         */
-
-        DAAPathFinder a = new DAAPathFinder(node.getDataFlowNode().getFlow().get(0), this);
-        a.run();
-
-        return data;
-    }
-
-    private static class Usage {
-        public int accessType;
-        public DataFlowNode node;
+        RuleContext rc = (RuleContext) data;
 
-        Usage(int accessType, DataFlowNode node) {
-            this.accessType = accessType;
-            this.node = node;
-        }
-
-        @Override
-        public String toString() {
-            return "accessType = " + accessType + ", line = " + node.getLine();
-        }
-    }
+        AccessTable accessTable = new AccessTable(node.getDataFlowNode().getFlow());
+        LastAccesses lastAccesses = new LastAccesses(accessTable);
+        lastAccesses.solve();
 
-    @Override
-    public void execute(CurrentPath path) {
-        Map<String, Usage> hash = new HashMap<>();
-        // System.out.println("path size is " + path.size());
-        for (Iterator<DataFlowNode> i = path.iterator(); i.hasNext();) {
-            // System.out.println("i = " + i);
-            DataFlowNode inode = i.next();
-            if (inode.getVariableAccess() == null) {
+        for (int id = 0; id < accessTable.getAccessCount(); id++) {
+            Access access = accessTable.getAccess(id);
+            if (!access.getVariableAccess().isDefinition() || !lastAccesses.isReachable(access.getNode())) {
                 continue;
             }
-            for (int j = 0; j < inode.getVariableAccess().size(); j++) {
-                VariableAccess va = inode.getVariableAccess().get(j);
-                // System.out.println("inode = " + inode + ", va = " + va);
-                Usage u = hash.get(va.getVariableName());
-                if (u != null) {
-                    // At some point investigate and possibly reintroduce this
-                    // line2 thing
-                    // int line2 = ((Integer) array.get(1)).intValue();
-
-                    // DD - definition followed by another definition
-                    // FIXME need to check for assignment as well!
-                    if (va.isDefinition() && va.accessTypeMatches(u.accessType)) {
-                        // System.out.println(va.getVariableName() + ":" + u);
-                        addViolation(rc, u.node.getNode(), va.getVariableName());
-                    }
-                    /*
-                     * // UR - ?? else if (last == VariableAccess.UNDEFINITION
-                     * && va.isReference()) {
-                     * //this.rc.getReport().addRuleViolation(
-                     * createRuleViolation(rc, inode.getNode(),
-                     * va.getVariableName(), "UR")); } // DU - variable is
-                     * defined and then goes out of scope // i.e., unused
-                     * parameter else if (last == VariableAccess.DEFINITION &&
-                     * va.isUndefinition()) { if (inode.getNode() != null) {
-                     * this.rc.getReport().addRuleViolation(createRuleViolation(
-                     * rc, tmp, va.getVariableName(), "DU")); } }
-                     */
+            for (Access lastAccess : lastAccesses.getPrecedingAccesses(access)) {
+                // DD - definition followed by another definition
+                // FIXME need to check for assignment as well!
+                if (lastAccess.getVariableAccess().isDefinition()) {
+                    addViolation(rc, lastAccess.getNode().getNode(), access.getVariableName());
                 }
-                u = new Usage(va.getAccessType(), inode);
-                hash.put(va.getVariableName(), u);
             }
         }
+
+        return data;
     }
 }
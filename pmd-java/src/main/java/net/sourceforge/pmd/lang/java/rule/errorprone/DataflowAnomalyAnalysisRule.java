@@ -8,17 +8,15 @@ import static net.sourceforge.pmd.properties.constraints.NumericConstraints.inRa
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.dfa.DataFlowNode;
 import net.sourceforge.pmd.lang.dfa.VariableAccess;
-import net.sourceforge.pmd.lang.dfa.pathfinder.CurrentPath;
-import net.sourceforge.pmd.lang.dfa.pathfinder.DAAPathFinder;
-import net.sourceforge.pmd.lang.dfa.pathfinder.Executable;
+import net.sourceforge.pmd.lang.dfa.analysis.Access;
+import net.sourceforge.pmd.lang.dfa.analysis.AccessTable;
+import net.sourceforge.pmd.lang.dfa.analysis.LastAccesses;
 import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
@@ -27,15 +25,17 @@ import net.sourceforge.pmd.properties.PropertyFactory;
 
 
 /**
- * Starts path search for each method and runs code if found.
+ * Checks each pair of consecutive accesses to a variable in each method, on
+ * all the paths through its data flow.
  *
  * @author raik
  * @author Sven Jacob
  */
-public class DataflowAnomalyAnalysisRule extends AbstractJavaRule implements Executable {
+public class DataflowAnomalyAnalysisRule extends AbstractJavaRule {
+    // no longer used, all the paths are checked
     private static final PropertyDescriptor<Integer> MAX_PATH_DESCRIPTOR
             = PropertyFactory.intProperty("maxPaths")
-                             .desc("Maximum number of checked paths per method. A lower value will increase the performance of the rule but may decrease anomalies found.")
+                             .desc("Deprecated: ignored, all the paths of a method are checked.")
                              .require(inRange(100, 8000))
                              .defaultValue(1000)
                              .build();
@@ -51,21 +51,6 @@ public class DataflowAnomalyAnalysisRule extends AbstractJavaRule implements Exe
     private int currentRuleViolationCount;
 
 
-    private static class Usage {
-        public int accessType;
-        public DataFlowNode node;
-
-        Usage(int accessType, DataFlowNode node) {
-            this.accessType = accessType;
-            this.node = node;
-        }
-
-        @Override
-        public String toString() {
-            return "accessType = " + accessType + ", line = " + node.getLine();
-        }
-    }
-
     public DataflowAnomalyAnalysisRule() {
         definePropertyDescriptor(MAX_PATH_DESCRIPTOR);
         definePropertyDescriptor(MAX_VIOLATIONS_DESCRIPTOR);
@@ -83,57 +68,45 @@ public class DataflowAnomalyAnalysisRule extends AbstractJavaRule implements Exe
         rc = (RuleContext) data;
         daaRuleViolations = new ArrayList<>();
 
-        final DataFlowNode node = methodDeclaration.getDataFlowNode().getFlow().get(0);
-
-        final DAAPathFinder pathFinder = new DAAPathFinder(node, this, getProperty(MAX_PATH_DESCRIPTOR));
-        pathFinder.run();
+        final AccessTable accessTable = new AccessTable(methodDeclaration.getDataFlowNode().getFlow());
+        final LastAccesses lastAccesses = new LastAccesses(accessTable);
+        lastAccesses.solve();
+        checkAccesses(accessTable, lastAccesses);
 
         super.visit(methodDeclaration, data);
         return data;
     }
 
-    @Override
-    public void execute(CurrentPath path) {
-
-        if (maxNumberOfViolationsReached()) {
-            return;
-        }
-
-        Map<String, Usage> usagesByVarName = new HashMap<>();
-
-        for (DataFlowNode inode : path) {
-            if (inode.getVariableAccess() != null) {
-                // iterate all variables of this node
-                for (VariableAccess va : inode.getVariableAccess()) {
-
-                    // get the last usage of the current variable
-                    Usage lastUsage = usagesByVarName.get(va.getVariableName());
-                    if (lastUsage != null) {
-                        // there was a usage to this variable before
-                        checkVariableAccess(inode, va, lastUsage);
+    private void checkAccesses(AccessTable accessTable, LastAccesses lastAccesses) {
+        for (DataFlowNode inode : accessTable.getFlow()) {
+            if (!lastAccesses.isReachable(inode)) {
+                continue;
+            }
+            for (Access access : accessTable.getAccesses(inode)) {
+                for (Access lastAccess : lastAccesses.getPrecedingAccesses(access)) {
+                    if (maxNumberOfViolationsReached()) {
+                        return;
                     }
-
-                    Usage newUsage = new Usage(va.getAccessType(), inode);
-                    // put the new usage for the variable
-                    usagesByVarName.put(va.getVariableName(), newUsage);
+                    checkVariableAccess(inode, access.getVariableAccess(), lastAccess);
                 }
             }
         }
     }
 
-    private void checkVariableAccess(DataFlowNode inode, VariableAccess va, final Usage u) {
+    private void checkVariableAccess(DataFlowNode inode, VariableAccess va, final Access u) {
         // get the start and end line
-        int startLine = u.node.getLine();
+        int startLine = u.getNode().getLine();
         int endLine = inode.getLine();
 
         Node lastNode = inode.getNode();
-        Node firstNode = u.node.getNode();
+        Node firstNode = u.getNode().getNode();
+        int lastAccessType = u.getVariableAccess().getAccessType();
 
-        if (va.accessTypeMatches(u.accessType) && va.isDefinition()) { // DD
+        if (va.accessTypeMatches(lastAccessType) && va.isDefinition()) { // DD
             addDaaViolation(rc, lastNode, "DD", va.getVariableName(), startLine, endLine);
-        } else if (u.accessType == VariableAccess.UNDEFINITION && va.isReference()) { // UR
+        } else if (lastAccessType == VariableAccess.UNDEFINITION && va.isReference()) { // UR
             addDaaViolation(rc, lastNode, "UR", va.getVariableName(), startLine, endLine);
-        } else if (u.accessType == VariableAccess.DEFINITION && va.isUndefinition()) { // DU
+        } else if (lastAccessType == VariableAccess.DEFINITION && va.isUndefinition()) { // DU
             addDaaViolation(rc, firstNode, "DU", va.getVariableName(), startLine, endLine);
         }
     }
@@ -166,8 +139,8 @@ public class DataflowAnomalyAnalysisRule extends AbstractJavaRule implements Exe
     }
 
     /**
-     * Checks if a violation already exists. This is needed because on the
-     * different paths same anomalies can occur.
+     * Checks if a violation already exists. This is needed because the
+     * same anomaly can occur between different nodes of the same lines.
      *
      * @param type
      * @param var
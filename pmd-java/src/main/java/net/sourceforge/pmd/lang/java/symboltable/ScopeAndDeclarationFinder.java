@@ -161,6 +161,8 @@ public class ScopeAndDeclarationFinder extends JavaParserVisitorAdapter {
 
     @Override
     public Object visit(ASTCompilationUnit node, Object data) {
+        // the finder may be reused, after a compilation unit which failed
+        scopes.clear();
         createSourceFileScope(node);
         cont(node);
         return data;
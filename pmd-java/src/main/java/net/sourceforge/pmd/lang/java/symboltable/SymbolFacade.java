@@ -6,15 +6,26 @@ package net.sourceforge.pmd.lang.java.symboltable;
 
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 
+/**
+ * Builds the scopes of a compilation unit and finds the occurrences of its
+ * declarations. The visitors are reused for each compilation unit, so an
+ * instance must not be used by several threads at once.
+ */
 public class SymbolFacade {
+    private ScopeAndDeclarationFinder scopeFinder;
+    private ClassLoader scopeFinderClassLoader;
+    private final OccurrenceFinder occurrenceFinder = new OccurrenceFinder();
+
     public void initializeWith(ASTCompilationUnit node) {
         initializeWith(SymbolFacade.class.getClassLoader(), node);
     }
 
     public void initializeWith(ClassLoader classLoader, ASTCompilationUnit node) {
-        ScopeAndDeclarationFinder sc = new ScopeAndDeclarationFinder(classLoader);
-        node.jjtAccept(sc, null);
-        OccurrenceFinder of = new OccurrenceFinder();
-        node.jjtAccept(of, null);
+        if (scopeFinder == null || scopeFinderClassLoader != classLoader) {
+            scopeFinder = new ScopeAndDeclarationFinder(classLoader);
+            scopeFinderClassLoader = classLoader;
+        }
+        node.jjtAccept(scopeFinder, null);
+        node.jjtAccept(occurrenceFinder, null);
     }
 }
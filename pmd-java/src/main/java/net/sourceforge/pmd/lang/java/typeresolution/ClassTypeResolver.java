@@ -1347,10 +1347,9 @@ public class ClassTypeResolver extends JavaParserVisitorAdapter {
         String qualifiedName = className;
         Class<?> myType = PRIMITIVE_TYPES.get(className);
         if (myType == null && importedClasses != null) {
+            // a name which isn't imported is looked up as is, it may be fully qualified
             if (importedClasses.containsKey(className)) {
                 qualifiedName = importedClasses.get(className);
-            } else if (importedClasses.containsValue(className)) {
-                qualifiedName = className;
             }
             if (qualifiedName != null) {
                 try {
@@ -1359,7 +1358,11 @@ public class ClassTypeResolver extends JavaParserVisitorAdapter {
                      * use a map of classname/class then we don't have to hit
                      * the class loader for every type - much faster
                      */
-                    myType = pmdClassLoader.loadClass(qualifiedName);
+                    if (pmdClassLoader.classExists(qualifiedName)) {
+                        myType = pmdClassLoader.loadClass(qualifiedName);
+                    } else {
+                        myType = processOnDemand(qualifiedName);
+                    }
                 } catch (ClassNotFoundException e) {
                     myType = processOnDemand(qualifiedName);
                 } catch (LinkageError e) {
@@ -1377,7 +1380,9 @@ public class ClassTypeResolver extends JavaParserVisitorAdapter {
             String qualifiedNameInner = qualifiedName.substring(0, qualifiedName.lastIndexOf('.')) + "$"
                     + qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
             try {
-                myType = pmdClassLoader.loadClass(qualifiedNameInner);
+                if (pmdClassLoader.classExists(qualifiedNameInner)) {
+                    myType = pmdClassLoader.loadClass(qualifiedNameInner);
+                }
             } catch (ClassNotFoundException ignored) {
                 // ignored, we'll try again with a different package name/fqcn
             } catch (LinkageError e) {
@@ -1392,7 +1397,9 @@ public class ClassTypeResolver extends JavaParserVisitorAdapter {
         if (myType == null && qualifiedName != null && !qualifiedName.contains(".")) {
             // try again with java.lang....
             try {
-                myType = pmdClassLoader.loadClass("java.lang." + qualifiedName);
+                if (pmdClassLoader.classExists("java.lang." + qualifiedName)) {
+                    myType = pmdClassLoader.loadClass("java.lang." + qualifiedName);
+                }
             } catch (Exception ignored) {
                 // ignored, we'll try again with generics
             }
@@ -1437,18 +1444,10 @@ public class ClassTypeResolver extends JavaParserVisitorAdapter {
     }
 
     /**
-     * Check whether the supplied class name exists.
+     * Check whether the supplied class name exists. The class is not loaded.
      */
     public boolean classNameExists(String fullyQualifiedClassName) {
-        try {
-            pmdClassLoader.loadClass(fullyQualifiedClassName);
-            return true; // Class found
-        } catch (ClassNotFoundException e) {
-            return false;
-        } catch (LinkageError e2) {
-            // Class exists, but may be invalid (see https://github.com/pmd/pmd/issues/1131)
-            return true;
-        }
+        return pmdClassLoader.classExists(fullyQualifiedClassName);
     }
 
     public Class<?> loadClass(String fullyQualifiedClassName) {
@@ -1468,6 +1467,10 @@ public class ClassTypeResolver extends JavaParserVisitorAdapter {
     private Class<?> processOnDemand(String qualifiedName) {
         for (String entry : importedOnDemand) {
             String fullClassName = entry + "." + qualifiedName;
+            if (!pmdClassLoader.classExists(fullClassName)) {
+                // probed without loading, most on demand imports don't have the class
+                continue;
+            }
             try {
                 return pmdClassLoader.loadClass(fullClassName);
             } catch (ClassNotFoundException ignored) {
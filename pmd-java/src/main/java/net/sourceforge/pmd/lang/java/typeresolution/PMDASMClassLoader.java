@@ -6,6 +6,7 @@ package net.sourceforge.pmd.lang.java.typeresolution;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +15,9 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.objectweb.asm.ClassReader;
 
+import net.sourceforge.pmd.cache.DependencyTracker;
+import net.sourceforge.pmd.lang.java.typeresolution.symbols.ClassSymbol;
+import net.sourceforge.pmd.lang.java.typeresolution.symbols.SymbolTable;
 import net.sourceforge.pmd.lang.java.typeresolution.visitors.PMDASMVisitor;
 
 /*
@@ -43,12 +47,26 @@ public final class PMDASMClassLoader extends ClassLoader {
      */
     private final ConcurrentMap<String, Boolean> dontBother = new ConcurrentHashMap<>();
 
+    /**
+     * Caches the locations of the class files of the classes looked up while
+     * dependencies are recorded for the analysis cache. The empty string
+     * denotes a class which doesn't exist.
+     */
+    private final ConcurrentMap<String, String> classLocations = new ConcurrentHashMap<>();
+
+    /**
+     * The symbols of the classes of the parent class loader, which allow to
+     * look classes up without loading them.
+     */
+    private final SymbolTable symbolTable;
+
     static {
         registerAsParallelCapable();
     }
 
     private PMDASMClassLoader(ClassLoader parent) {
         super(parent);
+        symbolTable = new SymbolTable(parent);
     }
 
     /**
@@ -67,6 +85,7 @@ public final class PMDASMClassLoader extends ClassLoader {
 
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
+        recordLookup(name);
         if (dontBother.containsKey(name)) {
             throw new ClassNotFoundException(name);
         }
@@ -99,7 +118,39 @@ public final class PMDASMClassLoader extends ClassLoader {
         return !dontBother.containsKey(name);
     }
 
-    public synchronized Map<String, String> getImportedClasses(String name) throws ClassNotFoundException {
+    /**
+     * Checks whether the given class exists, by looking its class file up.
+     * Unlike {@link #loadClass(String)}, the class is not loaded, and the
+     * lookup of a missing class doesn't throw.
+     *
+     * @param name the binary name of the class
+     * @return whether the class exists
+     */
+    public boolean classExists(String name) {
+        recordLookup(name);
+        return !dontBother.containsKey(name) && symbolTable.classExists(name);
+    }
+
+    /**
+     * Returns the symbol of the given class, read from its class file,
+     * without loading the class.
+     *
+     * @param name the binary name of the class
+     * @return the symbol, or null if the class doesn't exist or can't be read
+     */
+    public ClassSymbol getClassSymbol(String name) {
+        recordLookup(name);
+        return dontBother.containsKey(name) ? null : symbolTable.getClassSymbol(name);
+    }
+
+    /**
+     * Returns the names of the classes referenced by the given class and its
+     * inner classes, by their simple names. The class file is read on each
+     * call, with a visitor of its own, so it may be called by several
+     * threads at once.
+     */
+    public Map<String, String> getImportedClasses(String name) throws ClassNotFoundException {
+        recordLookup(name);
         if (dontBother.containsKey(name)) {
             throw new ClassNotFoundException(name);
         }
@@ -127,4 +178,22 @@ public final class PMDASMClassLoader extends ClassLoader {
             throw new ClassNotFoundException(name, e);
         }
     }
+
+    /**
+     * Reports the lookup of the given class to the {@link DependencyTracker},
+     * so that the analysis cache knows which classpath entries the file being
+     * analyzed depends on.
+     */
+    private void recordLookup(String name) {
+        if (!DependencyTracker.isRecording()) {
+            return;
+        }
+        String location = classLocations.get(name);
+        if (location == null) {
+            URL url = getResource(name.replace('.', '/') + ".class");
+            location = url == null ? "" : url.toString();
+            classLocations.putIfAbsent(name, location);
+        }
+        DependencyTracker.typeLookedUp(name, location.isEmpty() ? null : location);
+    }
 }
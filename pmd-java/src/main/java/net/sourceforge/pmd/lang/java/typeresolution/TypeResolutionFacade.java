@@ -8,12 +8,23 @@ import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.JavaParserVisitorAdapter;
 
 /**
+ * Resolves the types of a compilation unit. The resolver is reused for each
+ * compilation unit analyzed with the same class loader, so an instance must
+ * not be used by several threads at once.
+ *
  * @author Allan Caplan
  */
 public class TypeResolutionFacade extends JavaParserVisitorAdapter {
 
+    private ClassTypeResolver classTypeResolver;
+    private ClassLoader classLoader;
+
     public void initializeWith(ClassLoader classLoader, ASTCompilationUnit node) {
-        ClassTypeResolver classTypeResolver = new ClassTypeResolver(classLoader);
+        if (classTypeResolver == null || this.classLoader != classLoader) {
+            // the resolver resets its state for each compilation unit
+            classTypeResolver = new ClassTypeResolver(classLoader);
+            this.classLoader = classLoader;
+        }
         node.setClassTypeResolver(classTypeResolver);
         node.jjtAccept(classTypeResolver, null);
     }
@@ -0,0 +1,173 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The declaration of a class, interface, enum or annotation, read from its
+ * class file. Unlike a {@link Class}, a symbol is never defined in the JVM,
+ * so reading it doesn't run any static initializer, and it only references
+ * other types by their names. Symbols are immutable, and can be shared
+ * across threads.
+ *
+ * <p>The names of the types are binary names, as returned by {@link Class#getName()},
+ * e.g. {@code java.util.Map$Entry}.
+ *
+ * @see SymbolTable
+ */
+public final class ClassSymbol {
+
+    private final String binaryName;
+    private final int access;
+    private final String superName;
+    private final List<String> interfaceNames;
+    private final String signature;
+    private final List<String> typeParameterNames;
+    private final String outerName;
+    private final List<String> memberClassNames;
+    private final List<FieldSymbol> fields;
+    private final List<MethodSymbol> methods;
+
+    /* default */ ClassSymbol(String binaryName, int access, String superName, List<String> interfaceNames,
+                              String signature, List<String> typeParameterNames, String outerName,
+                              List<String> memberClassNames, List<FieldSymbol> fields, List<MethodSymbol> methods) {
+        this.binaryName = binaryName;
+        this.access = access;
+        this.superName = superName;
+        this.interfaceNames = Collections.unmodifiableList(interfaceNames);
+        this.signature = signature;
+        this.typeParameterNames = Collections.unmodifiableList(typeParameterNames);
+        this.outerName = outerName;
+        this.memberClassNames = Collections.unmodifiableList(memberClassNames);
+        this.fields = Collections.unmodifiableList(fields);
+        this.methods = Collections.unmodifiableList(methods);
+    }
+
+    public String getBinaryName() {
+        return binaryName;
+    }
+
+    /**
+     * Returns the name of the package of the class, empty for the default
+     * package.
+     */
+    public String getPackageName() {
+        int lastDot = binaryName.lastIndexOf('.');
+        return lastDot < 0 ? "" : binaryName.substring(0, lastDot);
+    }
+
+    /**
+     * Returns the access flags of the class, whose modifier bits are those
+     * of {@link Modifier}. The flags of a member class are the ones of its
+     * declaration, e.g. it may be static or private.
+     */
+    public int getAccess() {
+        return access;
+    }
+
+    public boolean isInterface() {
+        return Modifier.isInterface(access);
+    }
+
+    public boolean isAnnotation() {
+        return (access & Opcodes.ACC_ANNOTATION) != 0;
+    }
+
+    public boolean isEnum() {
+        return (access & Opcodes.ACC_ENUM) != 0;
+    }
+
+    /**
+     * Returns the name of the superclass, or null for {@code java.lang.Object}.
+     * The superclass of an interface is {@code java.lang.Object}.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * Returns the generic signature of the class, or null if it has no type
+     * parameters and no generic supertypes.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    public List<String> getTypeParameterNames() {
+        return typeParameterNames;
+    }
+
+    public boolean isGeneric() {
+        return !typeParameterNames.isEmpty();
+    }
+
+    /**
+     * Returns the name of the class declaring this member class, or null if
+     * this isn't a member class.
+     */
+    public String getOuterName() {
+        return outerName;
+    }
+
+    /**
+     * Returns the names of the member classes declared by this class.
+     */
+    public List<String> getMemberClassNames() {
+        return memberClassNames;
+    }
+
+    public List<FieldSymbol> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the field declared by this class with the given name, or null
+     * if there is none. Inherited fields aren't considered.
+     */
+    public FieldSymbol getField(String name) {
+        for (FieldSymbol field : fields) {
+            if (field.getName().equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the methods and constructors declared by this class, excluding
+     * its static initializer.
+     */
+    public List<MethodSymbol> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns the methods declared by this class with the given name.
+     */
+    public List<MethodSymbol> getMethods(String name) {
+        List<MethodSymbol> result = new ArrayList<>();
+        for (MethodSymbol method : methods) {
+            if (method.getName().equals(name)) {
+                result.add(method);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassSymbol(" + binaryName + ")";
+    }
+}
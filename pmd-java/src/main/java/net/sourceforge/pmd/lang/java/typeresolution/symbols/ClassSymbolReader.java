@@ -0,0 +1,109 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+/**
+ * Builds a {@link ClassSymbol} from a class file. Only the declarations are
+ * read, the code of the methods is skipped.
+ */
+final class ClassSymbolReader extends ClassVisitor {
+
+    private static final int PARSING_OPTIONS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    private String internalName;
+    private int access;
+    private String superName;
+    private final List<String> interfaceNames = new ArrayList<>();
+    private String signature;
+    private final List<String> typeParameterNames = new ArrayList<>();
+    private String outerName;
+    private final List<String> memberClassNames = new ArrayList<>();
+    private final List<FieldSymbol> fields = new ArrayList<>();
+    private final List<MethodSymbol> methods = new ArrayList<>();
+
+    private ClassSymbolReader() {
+        super(Opcodes.ASM7);
+    }
+
+    /**
+     * Reads the symbol of the class in the given class file.
+     *
+     * @param reader the class file
+     * @return the symbol of the class
+     */
+    static ClassSymbol read(ClassReader reader) {
+        ClassSymbolReader visitor = new ClassSymbolReader();
+        reader.accept(visitor, PARSING_OPTIONS);
+        return visitor.toSymbol();
+    }
+
+    private ClassSymbol toSymbol() {
+        return new ClassSymbol(toBinaryName(internalName), access, toBinaryName(superName), interfaceNames,
+                signature, typeParameterNames, outerName, memberClassNames, fields, methods);
+    }
+
+    private static String toBinaryName(String internalName) {
+        return internalName == null ? null : internalName.replace('/', '.');
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+                      String[] interfaces) {
+        this.internalName = name;
+        this.access = access;
+        this.superName = superName;
+        this.signature = signature;
+        if (interfaces != null) {
+            for (String interfaceName : interfaces) {
+                interfaceNames.add(toBinaryName(interfaceName));
+            }
+        }
+        if (signature != null) {
+            new SignatureReader(signature).accept(new SignatureVisitor(Opcodes.ASM7) {
+                @Override
+                public void visitFormalTypeParameter(String name) {
+                    typeParameterNames.add(name);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        if (name.equals(internalName)) {
+            // the access flags of the declaration, e.g. static, are only there
+            this.access = access;
+            this.outerName = toBinaryName(outerName);
+        } else if (internalName.equals(outerName)) {
+            memberClassNames.add(toBinaryName(name));
+        }
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        fields.add(new FieldSymbol(name, access, descriptor, signature));
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                     String[] exceptions) {
+        if (!"<clinit>".equals(name)) {
+            methods.add(new MethodSymbol(name, access, descriptor, signature));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.lang.reflect.Modifier;
+
+import org.objectweb.asm.Type;
+
+/**
+ * A field of a {@link ClassSymbol}, as declared in its class file.
+ */
+public final class FieldSymbol {
+
+    private final String name;
+    private final int access;
+    private final String descriptor;
+    private final String signature;
+
+    /* default */ FieldSymbol(String name, int access, String descriptor, String signature) {
+        this.name = name;
+        this.access = access;
+        this.descriptor = descriptor;
+        this.signature = signature;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the access flags of the field, whose modifier bits are those
+     * of {@link Modifier}.
+     */
+    public int getAccess() {
+        return access;
+    }
+
+    public boolean isStatic() {
+        return Modifier.isStatic(access);
+    }
+
+    /**
+     * Returns the type descriptor of the field, e.g. {@code Ljava/lang/String;}.
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Returns the generic signature of the field, or null if its type isn't
+     * generic.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Returns the name of the erased type of the field, as returned by
+     * {@link Class#getName()} for non array types, e.g. {@code java.util.Map$Entry}
+     * or {@code int}.
+     */
+    public String getTypeName() {
+        return Type.getType(descriptor).getClassName();
+    }
+
+    @Override
+    public String toString() {
+        return "FieldSymbol(" + name + " " + descriptor + ")";
+    }
+}
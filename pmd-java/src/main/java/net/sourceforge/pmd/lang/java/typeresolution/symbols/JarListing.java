@@ -0,0 +1,236 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * The classes of each package of a jar, and the jars its manifest references.
+ * A listing is identified by the path, size and last modification time of the
+ * jar, so that the listings of the jars which didn't change can be read back
+ * from an index file instead of reading the directory of each jar again.
+ */
+final class JarListing {
+
+    private static final int MAGIC = 0x504D444A;
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Jars modified less than this many milliseconds ago may be modified again
+     * without the modification time changing, so their listing isn't stored.
+     */
+    private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final Map<String, Set<String>> classesByPackage;
+    private final String classPath;
+
+    private JarListing(String path, long size, long lastModified, Map<String, Set<String>> classesByPackage,
+            String classPath) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.classesByPackage = classesByPackage;
+        this.classPath = classPath;
+    }
+
+    /**
+     * Reads the directory and the manifest of the given jar.
+     */
+    static JarListing read(File jar) throws IOException {
+        long size = jar.length();
+        long lastModified = jar.lastModified();
+        Map<String, Set<String>> classesByPackage = new HashMap<>();
+        String classPath;
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry jarEntry = jarEntries.nextElement();
+                if (!jarEntry.isDirectory() && !jarEntry.getName().startsWith("META-INF/")) {
+                    addClassFile(jarEntry.getName(), classesByPackage);
+                }
+            }
+            Manifest manifest = jarFile.getManifest();
+            classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        }
+        return new JarListing(jar.getPath(), size, lastModified, classesByPackage, classPath);
+    }
+
+    /**
+     * Adds the class of the given class file to the given classes by package,
+     * if it is a class file.
+     *
+     * @param path the path of the file, relative to the root of the classpath entry, separated by slashes
+     */
+    static void addClassFile(String path, Map<String, Set<String>> classesByPackage) {
+        if (!path.endsWith(CLASS_SUFFIX)) {
+            return;
+        }
+        int lastSlash = path.lastIndexOf('/');
+        String packageName = lastSlash < 0 ? "" : path.substring(0, lastSlash).replace('/', '.');
+        String className = path.substring(lastSlash + 1, path.length() - CLASS_SUFFIX.length());
+        Set<String> classes = classesByPackage.get(packageName);
+        if (classes == null) {
+            classes = new HashSet<>();
+            classesByPackage.put(packageName, classes);
+        }
+        classes.add(className);
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    Map<String, Set<String>> getClassesByPackage() {
+        return classesByPackage;
+    }
+
+    /**
+     * Returns the Class-Path attribute of the manifest of the jar, or null.
+     */
+    String getClassPath() {
+        return classPath;
+    }
+
+    /**
+     * Returns whether this listing is still the one of the given jar.
+     */
+    boolean isUpToDate(File jar) {
+        return jar.getPath().equals(path) && jar.length() == size && jar.lastModified() == lastModified;
+    }
+
+    private boolean isStorable() {
+        return lastModified != 0 && System.currentTimeMillis() - lastModified >= MODIFICATION_TIME_GRANULARITY;
+    }
+
+    /**
+     * Reads the listings stored in the given index file. A missing, truncated
+     * or outdated index file is ignored.
+     *
+     * @return the listings, by path of their jar
+     */
+    static Map<String, JarListing> readIndex(File indexFile) {
+        Map<String, JarListing> listings = new HashMap<>();
+        if (!indexFile.isFile()) {
+            return listings;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return listings;
+            }
+            int jarCount = in.readInt();
+            for (int i = 0; i < jarCount; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String classPath = in.readBoolean() ? readLongString(in) : null;
+                int packageCount = in.readInt();
+                Map<String, Set<String>> classesByPackage = new HashMap<>();
+                for (int j = 0; j < packageCount; j++) {
+                    String packageName = in.readUTF();
+                    int classCount = in.readInt();
+                    Set<String> classes = new HashSet<>();
+                    for (int k = 0; k < classCount; k++) {
+                        classes.add(in.readUTF());
+                    }
+                    classesByPackage.put(packageName, classes);
+                }
+                listings.put(path, new JarListing(path, size, lastModified, classesByPackage, classPath));
+            }
+        } catch (IOException | RuntimeException e) {
+            // the listings are read from the jars again
+            listings.clear();
+        }
+        return listings;
+    }
+
+    /**
+     * Replaces the given index file with one storing the given listings, but
+     * the ones of the jars which were modified too recently.
+     */
+    static void writeIndex(File indexFile, Collection<JarListing> listings) throws IOException {
+        // a file of its own, as other analyses may write the index at the same time
+        File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                int count = 0;
+                for (JarListing listing : listings) {
+                    if (listing.isStorable()) {
+                        count++;
+                    }
+                }
+                out.writeInt(count);
+                for (JarListing listing : listings) {
+                    if (listing.isStorable()) {
+                        listing.write(out);
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeUTF(path);
+        out.writeLong(size);
+        out.writeLong(lastModified);
+        out.writeBoolean(classPath != null);
+        if (classPath != null) {
+            writeLongString(out, classPath);
+        }
+        out.writeInt(classesByPackage.size());
+        for (Map.Entry<String, Set<String>> entry : classesByPackage.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (String className : entry.getValue()) {
+                out.writeUTF(className);
+            }
+        }
+    }
+
+    /**
+     * Writes a string which may not fit the 64 KB of {@link DataOutputStream#writeUTF(String)},
+     * e.g. the Class-Path of a pathing jar.
+     */
+    private static void writeLongString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * A method or constructor of a {@link ClassSymbol}, as declared in its class
+ * file. Constructors are named {@code <init>}.
+ */
+public final class MethodSymbol {
+
+    private final String name;
+    private final int access;
+    private final String descriptor;
+    private final String signature;
+
+    /* default */ MethodSymbol(String name, int access, String descriptor, String signature) {
+        this.name = name;
+        this.access = access;
+        this.descriptor = descriptor;
+        this.signature = signature;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the access flags of the method, whose modifier bits are those
+     * of {@link Modifier}.
+     */
+    public int getAccess() {
+        return access;
+    }
+
+    public boolean isStatic() {
+        return Modifier.isStatic(access);
+    }
+
+    public boolean isConstructor() {
+        return "<init>".equals(name);
+    }
+
+    public boolean isVarargs() {
+        return (access & Opcodes.ACC_VARARGS) != 0;
+    }
+
+    /**
+     * Returns whether the method was generated by the compiler, e.g. a
+     * bridge method.
+     */
+    public boolean isSynthetic() {
+        return (access & Opcodes.ACC_SYNTHETIC) != 0;
+    }
+
+    /**
+     * Returns the method descriptor, e.g. {@code (I)Ljava/lang/String;}.
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Returns the generic signature of the method, or null if it doesn't
+     * involve generic types.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    public int getParameterCount() {
+        return Type.getArgumentTypes(descriptor).length;
+    }
+
+    /**
+     * Returns the names of the erased parameter types, as returned by
+     * {@link Class#getName()} for non array types.
+     */
+    public List<String> getParameterTypeNames() {
+        Type[] types = Type.getArgumentTypes(descriptor);
+        List<String> names = new ArrayList<>(types.length);
+        for (Type type : types) {
+            names.add(type.getClassName());
+        }
+        return names;
+    }
+
+    /**
+     * Returns the name of the erased return type, {@code void} for
+     * constructors.
+     */
+    public String getReturnTypeName() {
+        return Type.getReturnType(descriptor).getClassName();
+    }
+
+    @Override
+    public String toString() {
+        return "MethodSymbol(" + name + descriptor + ")";
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sourceforge.pmd.util.ClasspathClassLoader;
+
+/**
+ * Lists the classes of each package of the classpath of a class loader, by
+ * reading the directory of each jar and walking each class directory once.
+ * Whether a class exists can then be answered without asking the class
+ * loader, which would look the class file up in each jar in turn.
+ *
+ * <p>The index only covers the jars and directories of the {@link URLClassLoader}s
+ * of the class loader hierarchy, of the system class loader, and the jars
+ * they reference in their manifests. The classes of the JDK aren't indexed,
+ * so the index only knows about the packages of the indexed classes, apart
+ * from the packages some JDK classes may be in. If any class loader of the
+ * hierarchy can't be indexed, the index doesn't know about any package.
+ *
+ * <p>If a {@link ClasspathClassLoader} of the hierarchy has an
+ * {@link ClasspathClassLoader#getIndexFile() index file}, the listings of
+ * the jars are kept in it, and only the jars which changed since the
+ * previous analysis are read again.
+ */
+final class PackageIndex {
+
+    private static final Logger LOG = Logger.getLogger(PackageIndex.class.getName());
+
+    /** The packages whose classes may be in the JDK as well as in the classpath. */
+    private static final String[] PLATFORM_PACKAGE_PREFIXES = {
+        "java.", "javax.", "jdk.", "sun.", "com.sun.", "com.oracle.", "netscape.", "org.graalvm.", "org.ietf.",
+        "org.jcp.", "org.omg.", "org.w3c.", "org.xml.",
+    };
+
+    private final Map<String, Set<String>> classesByPackage = new HashMap<>();
+    private boolean complete = true;
+
+    private Map<String, JarListing> previousListings = Collections.emptyMap();
+    private final Map<String, JarListing> currentListings = new LinkedHashMap<>();
+    private boolean listingsChanged;
+
+    private PackageIndex() {
+        // use build
+    }
+
+    /**
+     * Indexes the classpath of the given class loader.
+     */
+    static PackageIndex build(ClassLoader classLoader) {
+        PackageIndex index = new PackageIndex();
+        File indexFile = findIndexFile(classLoader);
+        if (indexFile != null) {
+            index.previousListings = JarListing.readIndex(indexFile);
+        }
+        Deque<File> entries = new ArrayDeque<>(index.collectEntries(classLoader));
+        Set<File> indexed = new HashSet<>();
+        while (!entries.isEmpty()) {
+            File entry = entries.pop();
+            if (indexed.add(entry)) {
+                index.indexEntry(entry, entries);
+            }
+        }
+        if (indexFile != null && (index.listingsChanged
+                || !index.previousListings.keySet().equals(index.currentListings.keySet()))) {
+            index.store(indexFile);
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Indexed " + index.classesByPackage.size() + " packages in " + indexed.size()
+                    + " classpath entries, complete: " + index.complete);
+        }
+        return index;
+    }
+
+    private static File findIndexFile(ClassLoader classLoader) {
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader instanceof ClasspathClassLoader && ((ClasspathClassLoader) loader).getIndexFile() != null) {
+                return ((ClasspathClassLoader) loader).getIndexFile();
+            }
+        }
+        return null;
+    }
+
+    private void store(File indexFile) {
+        try {
+            JarListing.writeIndex(indexFile, currentListings.values());
+        } catch (IOException e) {
+            // the jars are read again by the next analysis
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Could not store the classpath index " + indexFile, e);
+            }
+        }
+    }
+
+    private Set<File> collectEntries(ClassLoader classLoader) {
+        Set<File> entries = new LinkedHashSet<>();
+        ClassLoader systemClassLoader = ClassLoader.getSystemClassLoader();
+        ClassLoader platformClassLoader = systemClassLoader.getParent();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    addEntry(url, entries);
+                }
+            } else if (loader == systemClassLoader) {
+                StringTokenizer classpath = new StringTokenizer(System.getProperty("java.class.path", ""),
+                        File.pathSeparator);
+                while (classpath.hasMoreTokens()) {
+                    entries.add(new File(classpath.nextToken()).getAbsoluteFile());
+                }
+            } else if (loader != platformClassLoader) {
+                // only loads JDK classes
+                complete = false;
+            }
+        }
+        return entries;
+    }
+
+    private void addEntry(URL url, Set<File> entries) {
+        if (!"file".equals(url.getProtocol())) {
+            complete = false;
+            return;
+        }
+        try {
+            entries.add(new File(url.toURI()).getAbsoluteFile());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            complete = false;
+        }
+    }
+
+    private void indexEntry(File entry, Deque<File> entries) {
+        try {
+            if (entry.isDirectory()) {
+                indexDirectory(entry.toPath());
+            } else if (entry.isFile()) {
+                indexJar(entry, entries);
+            }
+            // a missing entry is ignored by the class loaders too
+        } catch (IOException e) {
+            complete = false;
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Could not index the classpath entry " + entry, e);
+            }
+        }
+    }
+
+    private void indexDirectory(final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                JarListing.addClassFile(directory.relativize(file).toString().replace(File.separatorChar, '/'),
+                        classesByPackage);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void indexJar(File jar, Deque<File> entries) throws IOException {
+        JarListing listing = previousListings.get(jar.getPath());
+        if (listing == null || !listing.isUpToDate(jar)) {
+            listing = JarListing.read(jar);
+            listingsChanged = true;
+        }
+        currentListings.put(listing.getPath(), listing);
+
+        for (Map.Entry<String, Set<String>> entry : listing.getClassesByPackage().entrySet()) {
+            Set<String> classes = classesByPackage.get(entry.getKey());
+            if (classes == null) {
+                classes = new HashSet<>();
+                classesByPackage.put(entry.getKey(), classes);
+            }
+            classes.addAll(entry.getValue());
+        }
+
+        if (listing.getClassPath() != null) {
+            // the class loaders load the classes of the referenced jars as well
+            URL base = jar.toURI().toURL();
+            StringTokenizer references = new StringTokenizer(listing.getClassPath());
+            Set<File> referenced = new LinkedHashSet<>();
+            while (references.hasMoreTokens()) {
+                addEntry(new URL(base, references.nextToken()), referenced);
+            }
+            for (File file : referenced) {
+                entries.push(file);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the index knows all the classes of the given package,
+     * so that {@link #contains(String)} is exact for them. Only the packages
+     * of the indexed classes are known: the other ones may be provided by the
+     * JDK modules or the boot classpath, which aren't indexed.
+     */
+    boolean knowsPackage(String packageName) {
+        if (!complete || !classesByPackage.containsKey(packageName)) {
+            return false;
+        }
+        for (String prefix : PLATFORM_PACKAGE_PREFIXES) {
+            if (packageName.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the given class is in the classpath.
+     *
+     * @param binaryName the binary name of the class, e.g. {@code foo.Bar$Inner}
+     */
+    boolean contains(String binaryName) {
+        int lastDot = binaryName.lastIndexOf('.');
+        String packageName = lastDot < 0 ? "" : binaryName.substring(0, lastDot);
+        Set<String> classes = classesByPackage.get(packageName);
+        return classes != null && classes.contains(binaryName.substring(lastDot + 1));
+    }
+}
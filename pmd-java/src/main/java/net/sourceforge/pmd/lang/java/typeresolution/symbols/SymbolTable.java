@@ -0,0 +1,211 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.typeresolution.symbols;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Reads the {@link ClassSymbol symbols} of the classes available through a
+ * class loader, from their class files. The classes are never loaded, so
+ * looking a symbol up doesn't fill the metaspace nor run static initializers.
+ *
+ * <p>The symbols, and the names of the classes which don't exist, are cached,
+ * up to a maximum number of classes. The table is thread-safe, and meant to
+ * be shared by all the files analyzed with the same auxclasspath.
+ *
+ * <p>Whether a class exists is answered by a {@link PackageIndex} of the
+ * classpath when possible, which avoids probing the class loader for the
+ * classes of on demand imports.
+ */
+public final class SymbolTable {
+
+    private static final Logger LOG = Logger.getLogger(SymbolTable.class.getName());
+
+    /** Cached for the classes which don't exist. */
+    private static final ClassSymbol NOT_FOUND = placeholder();
+    /** Cached for the classes whose class file can't be read, e.g. because it's too recent for ASM. */
+    private static final ClassSymbol UNREADABLE = placeholder();
+
+    /** The default maximum number of cached classes. */
+    public static final int DEFAULT_MAX_SIZE = 50000;
+
+    private final ClassLoader classLoader;
+    private final int maxSize;
+    private final ConcurrentMap<String, ClassSymbol> symbols = new ConcurrentHashMap<>();
+    private volatile PackageIndex packageIndex;
+
+    /**
+     * @param classLoader the class loader whose resources are the class files
+     */
+    public SymbolTable(ClassLoader classLoader) {
+        this(classLoader, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param classLoader the class loader whose resources are the class files
+     * @param maxSize the maximum number of cached classes
+     */
+    public SymbolTable(ClassLoader classLoader, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maxSize);
+        }
+        this.classLoader = classLoader;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the symbol of the given class.
+     *
+     * @param binaryName the binary name of the class, e.g. {@code java.util.Map$Entry}
+     * @return the symbol, or null if the class doesn't exist or its class file can't be read
+     */
+    public ClassSymbol getClassSymbol(String binaryName) {
+        ClassSymbol symbol = lookup(binaryName);
+        return symbol == NOT_FOUND || symbol == UNREADABLE ? null : symbol;
+    }
+
+    /**
+     * Returns whether the given class exists, without loading it.
+     *
+     * @param binaryName the binary name of the class
+     */
+    public boolean classExists(String binaryName) {
+        ClassSymbol symbol = symbols.get(binaryName);
+        if (symbol == null) {
+            PackageIndex index = getPackageIndex();
+            int lastDot = binaryName.lastIndexOf('.');
+            if (index.knowsPackage(lastDot < 0 ? "" : binaryName.substring(0, lastDot))) {
+                return index.contains(binaryName);
+            }
+        }
+        return lookup(binaryName) != NOT_FOUND;
+    }
+
+    private PackageIndex getPackageIndex() {
+        PackageIndex index = packageIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = packageIndex;
+                if (index == null) {
+                    index = PackageIndex.build(classLoader);
+                    packageIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private ClassSymbol lookup(String binaryName) {
+        ClassSymbol symbol = symbols.get(binaryName);
+        if (symbol == null) {
+            symbol = readClassSymbol(binaryName);
+            ClassSymbol previous = symbols.putIfAbsent(binaryName, symbol);
+            if (previous != null) {
+                symbol = previous;
+            } else if (symbols.size() > maxSize) {
+                evict();
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * Removes some classes from the cache, so that it's back to three
+     * quarters of its maximum size. They are read again if needed.
+     */
+    private void evict() {
+        int target = maxSize - maxSize / 4;
+        Iterator<String> names = symbols.keySet().iterator();
+        while (symbols.size() > target && names.hasNext()) {
+            names.next();
+            names.remove();
+        }
+    }
+
+    /**
+     * Returns the number of classes currently cached.
+     */
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * Returns whether the given class is the given supertype, or extends or
+     * implements it, directly or not. The supertypes which don't exist are
+     * ignored.
+     *
+     * @param binaryName the binary name of the class
+     * @param superTypeName the binary name of the supertype
+     */
+    public boolean isSubtype(String binaryName, String superTypeName) {
+        if (binaryName.equals(superTypeName)) {
+            return true;
+        }
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(binaryName);
+        while (!toVisit.isEmpty()) {
+            ClassSymbol symbol = getClassSymbol(toVisit.pop());
+            if (symbol == null) {
+                continue;
+            }
+            if (symbol.getSuperName() != null && visit(symbol.getSuperName(), superTypeName, visited, toVisit)) {
+                return true;
+            }
+            for (String interfaceName : symbol.getInterfaceNames()) {
+                if (visit(interfaceName, superTypeName, visited, toVisit)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean visit(String name, String superTypeName, Set<String> visited, Deque<String> toVisit) {
+        if (name.equals(superTypeName)) {
+            return true;
+        }
+        if (visited.add(name)) {
+            toVisit.push(name);
+        }
+        return false;
+    }
+
+    private ClassSymbol readClassSymbol(String binaryName) {
+        if (binaryName.isEmpty() || binaryName.indexOf('/') >= 0 || binaryName.startsWith("[")) {
+            return NOT_FOUND;
+        }
+        try (InputStream classFile = classLoader.getResourceAsStream(binaryName.replace('.', '/') + ".class")) {
+            if (classFile == null) {
+                return NOT_FOUND;
+            }
+            return ClassSymbolReader.read(new ClassReader(classFile));
+        } catch (IOException | RuntimeException e) {
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Could not read the class file of " + binaryName, e);
+            }
+            return UNREADABLE;
+        }
+    }
+
+    private static ClassSymbol placeholder() {
+        return new ClassSymbol("", 0, null, Collections.<String>emptyList(), null, Collections.<String>emptyList(),
+                null, Collections.<String>emptyList(), Collections.<FieldSymbol>emptyList(),
+                Collections.<MethodSymbol>emptyList());
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.VisitorStarter;
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclaratorId;
+import net.sourceforge.pmd.lang.java.symboltable.SourceFileScope;
+
+public class JavaHandlerTest {
+
+    private final AbstractJavaHandler handler = ParserTstUtil.getDefaultLanguageVersionHandler();
+    private final ClassLoader classLoader = JavaHandlerTest.class.getClassLoader();
+
+    @Test
+    public void testVisitorStartersCanBeReusedForSeveralFiles() {
+        VisitorStarter qualifiedNames = handler.getQualifiedNameResolutionFacade(classLoader);
+        VisitorStarter symbols = handler.getSymbolFacade(classLoader);
+        VisitorStarter dataFlow = handler.getDataFlowFacade();
+        VisitorStarter typeResolution = handler.getTypeResolutionFacade(classLoader);
+        VisitorStarter multifile = handler.getMultifileFacade();
+
+        ASTCompilationUnit first = parse("package foo; class First { void bar() { String s = \"\"; } }");
+        ASTCompilationUnit second = parse("package baz; class Second { void bar() { Integer i = 0; } }");
+        for (ASTCompilationUnit acu : new ASTCompilationUnit[] {first, second}) {
+            qualifiedNames.start(acu);
+            symbols.start(acu);
+            dataFlow.start(acu);
+            typeResolution.start(acu);
+            multifile.start(acu);
+        }
+
+        ASTClassOrInterfaceDeclaration secondClass = second.getFirstDescendantOfType(ASTClassOrInterfaceDeclaration.class);
+        assertEquals("baz.Second", secondClass.getQualifiedName().toString());
+        assertEquals("baz", ((SourceFileScope) second.getScope()).getPackageName());
+        assertEquals(Integer.class, second.getFirstDescendantOfType(ASTVariableDeclaratorId.class).getType());
+        assertNotNull(second.getFirstDescendantOfType(ASTMethodDeclaration.class).getDataFlowNode());
+        // the resolver is reused
+        assertSame(first.getClassTypeResolver(), second.getClassTypeResolver());
+    }
+
+    private ASTCompilationUnit parse(String code) {
+        return (ASTCompilationUnit) handler.getParser(handler.getDefaultParserOptions())
+                .parse(null, new StringReader(code));
+    }
+}
@@ -6,8 +6,11 @@ package net.sourceforge.pmd.lang.java.dfa;
 
 import static net.sourceforge.pmd.lang.java.ParserTstUtil.getOrderedNodes;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import net.sourceforge.pmd.PMD;
@@ -69,6 +72,16 @@ public class StatementAndBraceFinderTest {
         assertTrue(dfn.isType(NodeType.FOR_END));
     }
 
+    @Test
+    public void testDataFlowIsBuiltPerMethodOnDemand() {
+        List<ASTStatementExpression> statements = getOrderedNodes(ASTStatementExpression.class, TEST6);
+        // asking a statement builds the data flow of its method only
+        DataFlowNode second = statements.get(1).getDataFlowNode();
+        assertEquals(statements.get(1), second.getNode());
+        assertFalse(second.getFlow().contains(statements.get(0).getDataFlowNode()));
+        assertEquals(statements.get(0), statements.get(0).getDataFlowNode().getNode());
+    }
+
     @Test(expected = RuntimeException.class)
     public void testOnlyWorksForMethodsAndConstructors() {
         StatementAndBraceFinder sbf = new StatementAndBraceFinder(LanguageRegistry.getLanguage(JavaLanguageModule.NAME)
@@ -92,4 +105,7 @@ public class StatementAndBraceFinderTest {
 
     private static final String TEST5 = "class Foo {" + PMD.EOL + " void bar() {" + PMD.EOL
             + "  for (int i=0; i<10; i++) {}" + PMD.EOL + " }" + PMD.EOL + "}";
+
+    private static final String TEST6 = "class Foo {" + PMD.EOL + " void bar() {" + PMD.EOL + "  x = 2;" + PMD.EOL
+            + " }" + PMD.EOL + " Foo() {" + PMD.EOL + "  y = 3;" + PMD.EOL + " }" + PMD.EOL + "}";
 }
@@ -5,8 +5,10 @@
 package net.sourceforge.pmd.lang.java.rule;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -100,6 +102,27 @@ public class XPathRuleTest extends RuleTst {
     }
 
 
+    @Test
+    public void testRuleChainWithXPath2() throws Exception {
+        rule.setXPath("//VariableDeclaratorId[starts-with(@Image, 'forbid')]"
+                + " | //ClassOrInterfaceDeclaration[@Image='Foo']");
+        rule.setVersion(XPathRuleQuery.XPATH_2_0);
+        assertEquals(Arrays.asList("VariableDeclaratorId", "ClassOrInterfaceDeclaration"), rule.getRuleChainVisits());
+
+        Report report = getReportForTestString(rule, TEST3);
+        assertEquals(4, report.size());
+    }
+
+    @Test
+    public void testNoRuleChainForPositionalXPath2() throws Exception {
+        rule.setXPath("//VariableDeclaratorId[1]");
+        rule.setVersion(XPathRuleQuery.XPATH_2_0);
+        assertTrue(rule.getRuleChainVisits().isEmpty());
+
+        Report report = getReportForTestString(rule, TEST3);
+        assertEquals(3, report.size());
+    }
+
     /**
      * Test for problem reported in bug #1219 PrimarySuffix/@Image does not work
      * in some cases in xpath 2.0
@@ -186,6 +209,29 @@ public class XPathRuleTest extends RuleTst {
         assertEquals(5, nodes.get(1).getBeginLine());
     }
 
+    @Test
+    public void testDocumentNodeOfEachFile() throws Exception {
+        LanguageVersion language = LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getDefaultVersion();
+        ParserOptions parserOptions = language.getLanguageVersionHandler().getDefaultParserOptions();
+        Parser parser = language.getLanguageVersionHandler().getParser(parserOptions);
+        ASTCompilationUnit cu1 = (ASTCompilationUnit) parser.parse("test1", new StringReader(TEST1));
+        ASTCompilationUnit cu2 = (ASTCompilationUnit) parser.parse("test2", new StringReader(TEST2));
+        RuleContext ruleContext = new RuleContext();
+        ruleContext.setLanguageVersion(language);
+
+        XPathRuleQuery xpathRuleQuery = new SaxonXPathRuleQuery();
+        xpathRuleQuery.setXPath("//VariableDeclaratorId");
+        xpathRuleQuery.setProperties(new HashMap<PropertyDescriptor<?>, Object>());
+        xpathRuleQuery.setVersion(XPathRuleQuery.XPATH_2_0);
+
+        assertEquals(1, xpathRuleQuery.evaluate(cu1, ruleContext).size());
+        assertEquals(2, xpathRuleQuery.evaluate(cu2, ruleContext).size());
+        SaxonXPathRuleQuery.releaseDocumentNode();
+        List<Node> nodes = xpathRuleQuery.evaluate(cu1, ruleContext);
+        assertEquals(1, nodes.size());
+        assertEquals("a", nodes.get(0).getImage());
+    }
+
     private static Report getReportForTestString(Rule r, String test) throws PMDException {
         PMD p = new PMD();
         RuleContext ctx = new RuleContext();
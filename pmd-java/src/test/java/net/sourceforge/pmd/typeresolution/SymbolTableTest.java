@@ -0,0 +1,268 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.typeresolution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.lang.java.typeresolution.symbols.ClassSymbol;
+import net.sourceforge.pmd.lang.java.typeresolution.symbols.FieldSymbol;
+import net.sourceforge.pmd.lang.java.typeresolution.symbols.MethodSymbol;
+import net.sourceforge.pmd.lang.java.typeresolution.symbols.SymbolTable;
+import net.sourceforge.pmd.util.ClasspathClassLoader;
+
+public class SymbolTableTest {
+
+    private static boolean initialized;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SymbolTable symbolTable = new SymbolTable(getClass().getClassLoader());
+
+    @Test
+    public void testReadsDeclarations() {
+        ClassSymbol symbol = symbolTable.getClassSymbol(GenericList.class.getName());
+
+        assertNotNull(symbol);
+        assertEquals("net.sourceforge.pmd.typeresolution.SymbolTableTest$GenericList", symbol.getBinaryName());
+        assertEquals("net.sourceforge.pmd.typeresolution", symbol.getPackageName());
+        assertEquals(ArrayList.class.getName(), symbol.getSuperName());
+        assertEquals(Collections.singletonList(Comparable.class.getName()), symbol.getInterfaceNames());
+        assertEquals(Arrays.asList("T", "U"), symbol.getTypeParameterNames());
+        assertTrue(symbol.isGeneric());
+        assertEquals(SymbolTableTest.class.getName(), symbol.getOuterName());
+        assertTrue(Modifier.isStatic(symbol.getAccess()));
+
+        FieldSymbol field = symbol.getField("count");
+        assertEquals("int", field.getTypeName());
+        assertTrue(field.isStatic());
+        assertNull(symbol.getField("missing"));
+
+        MethodSymbol method = null;
+        for (MethodSymbol candidate : symbol.getMethods("compareTo")) {
+            if (!candidate.isSynthetic()) {
+                // skips the bridge method
+                method = candidate;
+            }
+        }
+        assertNotNull(method);
+        assertEquals(Collections.singletonList(GenericList.class.getName()), method.getParameterTypeNames());
+        assertEquals("int", method.getReturnTypeName());
+    }
+
+    @Test
+    public void testDoesNotInitializeClasses() {
+        ClassSymbol symbol = symbolTable.getClassSymbol(SymbolTableTest.class.getName() + "$Initialized");
+
+        assertNotNull(symbol);
+        assertFalse(initialized);
+    }
+
+    @Test
+    public void testMemberClasses() {
+        ClassSymbol symbol = symbolTable.getClassSymbol(SymbolTableTest.class.getName());
+
+        assertTrue(symbol.getMemberClassNames().contains(GenericList.class.getName()));
+        assertNull(symbol.getOuterName());
+    }
+
+    @Test
+    public void testMissingClass() {
+        assertNull(symbolTable.getClassSymbol("that.clazz.doesnot.Exist"));
+        assertFalse(symbolTable.classExists("that.clazz.doesnot.Exist"));
+        assertFalse(symbolTable.classExists("java.util.Map.Entry"));
+    }
+
+    @Test
+    public void testSymbolsAreCached() {
+        assertSame(symbolTable.getClassSymbol(GenericList.class.getName()),
+                symbolTable.getClassSymbol(GenericList.class.getName()));
+    }
+
+    @Test
+    public void testIsSubtype() {
+        String name = GenericList.class.getName();
+
+        assertTrue(symbolTable.isSubtype(name, name));
+        assertTrue(symbolTable.isSubtype(name, "java.util.Collection"));
+        assertTrue(symbolTable.isSubtype(name, "java.lang.Comparable"));
+        assertTrue(symbolTable.isSubtype(name, "java.lang.Object"));
+        assertFalse(symbolTable.isSubtype(name, "java.util.Map"));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        SymbolTable table = new SymbolTable(getClass().getClassLoader(), 4);
+        for (String name : Arrays.asList("java.util.List", "java.util.Set", "java.util.Map", "java.util.Queue",
+                "java.util.Deque", "java.util.Iterator")) {
+            assertTrue(table.classExists(name));
+            assertTrue(table.size() <= 4);
+        }
+        assertNotNull(table.getClassSymbol("java.util.List"));
+    }
+
+    @Test
+    public void testClassesOfIndexedJarsAreNotProbed() throws IOException {
+        File referenced = createJar("referenced.jar", null, "bar/Baz.class");
+        File jar = createJar("lib.jar", referenced.getName(), "foo/Bar.class", "foo/Bar$Inner.class", "Default.class");
+
+        try (CountingClassLoader classLoader = new CountingClassLoader(jar.toURI().toURL())) {
+            SymbolTable table = new SymbolTable(classLoader);
+
+            assertTrue(table.classExists("foo.Bar"));
+            assertTrue(table.classExists("foo.Bar$Inner"));
+            assertTrue(table.classExists("bar.Baz"));
+            assertTrue(table.classExists("Default"));
+            assertFalse(table.classExists("foo.Missing"));
+            assertEquals(0, classLoader.lookups);
+
+            // the packages which aren't indexed are looked up, they may be provided by the JDK
+            assertFalse(table.classExists("foo.Bar.Inner"));
+            assertFalse(table.classExists("missing.Bar"));
+            assertEquals(2, classLoader.lookups);
+            assertTrue(table.classExists("java.lang.String"));
+            assertEquals(3, classLoader.lookups);
+        }
+    }
+
+    @Test
+    public void testUnchangedJarsAreNotReadAgain() throws IOException {
+        File jar = createJar("lib.jar", null, "foo/Bar.class");
+        File other = createJar("other.jar", null, "foo/Baz.class");
+        File indexFile = new File(folder.getRoot(), "pmd.cache.classpath");
+        assertTrue(classExists(Arrays.asList(jar, other), indexFile, "foo.Bar"));
+        assertTrue(indexFile.isFile());
+
+        // the listing is read from the index file, not from the jar
+        long lastModified = jar.lastModified();
+        byte[] garbage = new byte[(int) jar.length()];
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(garbage);
+        }
+        assertTrue(jar.setLastModified(lastModified));
+        assertTrue(classExists(Arrays.asList(jar, other), indexFile, "foo.Bar"));
+        assertTrue(classExists(Arrays.asList(jar, other), indexFile, "foo.Baz"));
+        assertFalse(classExists(Arrays.asList(jar, other), indexFile, "foo.Missing"));
+    }
+
+    @Test
+    public void testLongClassPathIsStoredInIndexFile() throws IOException {
+        File referenced = createJar("referenced.jar", null, "bar/Baz.class");
+        // a pathing jar, whose Class-Path doesn't fit in 64 KB
+        StringBuilder classPath = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            classPath.append("missing/library-").append(i).append(".jar ");
+        }
+        classPath.append(referenced.getName());
+        File jar = createJar("pathing.jar", classPath.toString(), "foo/Bar.class");
+        File indexFile = new File(folder.getRoot(), "pmd.cache.classpath");
+        assertTrue(classExists(Collections.singletonList(jar), indexFile, "bar.Baz"));
+        assertTrue(indexFile.isFile());
+
+        // the Class-Path is read from the index file, not from the jar
+        long lastModified = jar.lastModified();
+        byte[] garbage = new byte[(int) jar.length()];
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(garbage);
+        }
+        assertTrue(jar.setLastModified(lastModified));
+        assertTrue(classExists(Collections.singletonList(jar), indexFile, "bar.Baz"));
+
+        // no temporary file is left next to the index file
+        assertEquals(new HashSet<>(Arrays.asList(referenced.getName(), jar.getName(), indexFile.getName())),
+                new HashSet<>(Arrays.asList(folder.getRoot().list())));
+    }
+
+    @Test
+    public void testChangedJarsAreReadAgain() throws IOException {
+        File indexFile = new File(folder.getRoot(), "pmd.cache.classpath");
+        File jar = createJar("lib.jar", null, "foo/Bar.class");
+        assertTrue(classExists(Collections.singletonList(jar), indexFile, "foo.Bar"));
+
+        jar = createJar("lib.jar", null, "foo/Bar.class", "foo/Baz.class");
+        assertTrue(classExists(Collections.singletonList(jar), indexFile, "foo.Baz"));
+    }
+
+    private boolean classExists(List<File> jars, File indexFile, String binaryName) throws IOException {
+        try (ClasspathClassLoader classLoader = new ClasspathClassLoader(jars, null)) {
+            classLoader.setIndexFile(indexFile);
+            return new SymbolTable(classLoader).classExists(binaryName);
+        }
+    }
+
+    private File createJar(String name, String classPath, String... entries) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        File jar = new File(folder.getRoot(), name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            for (String entry : entries) {
+                // the index only needs the names
+                out.putNextEntry(new JarEntry(entry));
+                out.closeEntry();
+            }
+        }
+        // jars modified too recently aren't kept in the index file
+        assertTrue(jar.setLastModified(System.currentTimeMillis() - 10000));
+        return jar;
+    }
+
+    private static class CountingClassLoader extends URLClassLoader {
+        private int lookups;
+
+        CountingClassLoader(URL url) {
+            super(new URL[] {url}, null);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            lookups++;
+            return super.getResourceAsStream(name);
+        }
+    }
+
+    private static class GenericList<T, U extends Number> extends ArrayList<T> implements Comparable<GenericList<T, U>> {
+        private static int count;
+
+        @Override
+        public int compareTo(GenericList<T, U> o) {
+            return count;
+        }
+    }
+
+    private static class Initialized {
+        static {
+            initialized = true;
+        }
+    }
+}
@@ -6,7 +6,6 @@ package net.sourceforge.pmd.cpd;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersionHandler;
@@ -23,11 +22,10 @@ public class VfTokenizer implements Tokenizer {
 
     @Override
     public void tokenize(SourceCode sourceCode, Tokens tokenEntries) {
-        StringBuilder buffer = sourceCode.getCodeBuffer();
         LanguageVersionHandler languageVersionHandler = LanguageRegistry.getLanguage(VfLanguageModule.NAME)
                 .getDefaultVersion().getLanguageVersionHandler();
 
-        try (Reader reader = IOUtil.skipBOM(new StringReader(buffer.toString()))) {
+        try (Reader reader = IOUtil.skipBOM(sourceCode.getCodeReader())) {
             TokenManager tokenMgr = languageVersionHandler.getParser(languageVersionHandler.getDefaultParserOptions())
                     .getTokenManager(sourceCode.getFileName(), reader);
             Token currentToken = (Token) tokenMgr.getNextToken();
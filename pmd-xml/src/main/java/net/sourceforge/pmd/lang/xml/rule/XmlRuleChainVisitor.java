@@ -33,6 +33,12 @@ public class XmlRuleChainVisitor extends AbstractRuleChainVisitor {
         }
     }
 
+    @Override
+    protected boolean hasNodeNamesByClass() {
+        // the name of a node is the name of its element
+        return false;
+    }
+
     @Override
     protected void visit(Rule rule, Node node, RuleContext ctx) {
         // Rule better be a XPathRule